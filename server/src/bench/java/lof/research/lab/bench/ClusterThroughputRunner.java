@@ -0,0 +1,444 @@
+package lof.research.lab.bench;
+
+import com.rpl.rama.*;
+import com.rpl.rama.module.*;
+import com.rpl.rama.test.*;
+import lof.research.lab.RecordSeederModule;
+import lof.research.lab.SyntheticBibliography;
+import lof.research.lab.SyntheticBibliography.Zipf;
+import lof.research.lab.SyntheticBibliographyConfig;
+import lof.research.lab.data.Record;
+import rama.examples.aggregators.TopNSketchConfig;
+import rama.examples.aggregators.TopNWordsModule;
+import rama.examples.query.ReachModule;
+import rama.examples.ramaspace.RamaSpaceModule;
+import rama.examples.ramaspace.data.Post;
+import rama.examples.ramaspace.data.UserRegistration;
+import rama.examples.wordcount.BatchedWordCountModule;
+import rama.examples.wordcount.WordCountModule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end throughput of the example modules in InProcessCluster, for sizing tasks and threads before deploying.
+ *
+ * Every scenario is run once per LaunchConfig on a fresh cluster. Clients append the load either as fast as they can
+ * or paced to a fixed total rate, recording the latency of each append. Then the runner times how long the
+ * scenario's microbatch topology takes to catch up (waitForMicrobatchProcessedCount) and runs a fixed number of
+ * queries, recording their latencies. The report has one row per scenario and LaunchConfig.
+ *
+ * Run from the server directory with:
+ *   mvn -Pbench compile exec:java -Dexec.classpathScope=compile \
+ *       -Dexec.mainClass=lof.research.lab.bench.ClusterThroughputRunner \
+ *       -Dexec.args="--records 20000 --rate 0 --clients 4 --configs 2x1,4x2,8x4 --scenarios wordCount,reach"
+ *
+ * IPC runs everything in one JVM, so absolute numbers are lower than on a real cluster; compare rows with each other.
+ */
+public class ClusterThroughputRunner {
+  public abstract static class Scenario {
+    protected InProcessCluster _cluster;
+    protected String _moduleName;
+
+    public abstract RamaModule module();
+
+    // Called once the module is launched, before the load. Not timed.
+    public void setup(InProcessCluster cluster, String moduleName) throws Exception {
+      _cluster = cluster;
+      _moduleName = moduleName;
+    }
+
+    // Appends the i-th record of the load. Called concurrently from all clients.
+    public abstract void append(long i) throws Exception;
+
+    // The microbatch topology the load feeds, or null if it only feeds stream topologies, whose appends already
+    // wait for processing.
+    public String microbatchTopology() {
+      return null;
+    }
+
+    // Runs the i-th query against the loaded module.
+    public abstract void query(long i) throws Exception;
+  }
+
+  // Word frequencies in natural language are roughly Zipfian, which is what makes word counting skewed.
+  private static final Zipf WORDS = new Zipf(10000, 1.0);
+
+  private static String word(Random random) {
+    return "w" + WORDS.sample(random);
+  }
+
+  // Records come from SyntheticBibliography, duplicates and ID collisions included. Queries resolve references to
+  // records sampled during the load.
+  static class RecordSeederScenario extends Scenario {
+    private static final int QUERY_SAMPLES = 1000;
+    private final SyntheticBibliography _bibliography = new SyntheticBibliography(new SyntheticBibliographyConfig());
+    private final List<Record> _samples = new ArrayList<>();
+    private Depot _recordsDepot;
+    private QueryTopologyClient<Object> _resolveReference;
+
+    @Override
+    public RamaModule module() {
+      return new RecordSeederModule();
+    }
+
+    @Override
+    public void setup(InProcessCluster cluster, String moduleName) throws Exception {
+      super.setup(cluster, moduleName);
+      _recordsDepot = cluster.clusterDepot(moduleName, "*recordsDepot");
+      _resolveReference = cluster.clusterQuery(moduleName, "resolveReference");
+    }
+
+    @Override
+    public void append(long i) {
+      Record record;
+      synchronized (_bibliography) {
+        record = _bibliography.next();
+        if (_samples.size() < QUERY_SAMPLES) _samples.add(record);
+      }
+      _recordsDepot.append(record);
+    }
+
+    @Override
+    public String microbatchTopology() {
+      return "recordSeeder";
+    }
+
+    @Override
+    public void query(long i) {
+      Record r = _samples.get((int) (i % _samples.size()));
+      String author = r.authors.isEmpty() ? "Anonymous" : r.authors.get(0);
+      _resolveReference.invoke(author + " (" + (r.year != null ? r.year : "n.d.") + "). " + r.title + ".");
+    }
+  }
+
+  static class WordCountScenario extends Scenario {
+    private Depot _sentenceDepot;
+    private PState _wordCounts;
+
+    @Override
+    public RamaModule module() {
+      return new WordCountModule();
+    }
+
+    @Override
+    public void setup(InProcessCluster cluster, String moduleName) throws Exception {
+      super.setup(cluster, moduleName);
+      _sentenceDepot = cluster.clusterDepot(moduleName, "*sentenceDepot");
+      _wordCounts = cluster.clusterPState(moduleName, "$$wordCounts");
+    }
+
+    @Override
+    public void append(long i) {
+      Random random = new Random(i);
+      StringBuilder sb = new StringBuilder();
+      for (int w = 0; w < 8; w++) {
+        if (w > 0) sb.append(' ');
+        sb.append(word(random));
+      }
+      _sentenceDepot.append(sb.toString());
+    }
+
+    @Override
+    public void query(long i) {
+      _wordCounts.selectOne(Path.key(word(new Random(i))));
+    }
+  }
+
+  // Same load as wordCount, counted per microbatch with each partition's words combined before the shuffle.
+  static class BatchedWordCountScenario extends WordCountScenario {
+    @Override
+    public RamaModule module() {
+      return new BatchedWordCountModule();
+    }
+
+    @Override
+    public String microbatchTopology() {
+      return "batchedWordCount";
+    }
+  }
+
+  // TopNWordsModule prints every captured count, so its numbers include console output.
+  static class TopNWordsScenario extends Scenario {
+    private Depot _depot;
+    private PState _topWords;
+
+    @Override
+    public RamaModule module() {
+      return new TopNWordsModule();
+    }
+
+    @Override
+    public void setup(InProcessCluster cluster, String moduleName) throws Exception {
+      super.setup(cluster, moduleName);
+      _depot = cluster.clusterDepot(moduleName, "*depot");
+      _topWords = cluster.clusterPState(moduleName, "$$topWords");
+    }
+
+    @Override
+    public void append(long i) {
+      _depot.append(word(new Random(i)));
+    }
+
+    @Override
+    public String microbatchTopology() {
+      return "topWords";
+    }
+
+    @Override
+    public void query(long i) {
+      _topWords.selectOne(Path.stay());
+    }
+  }
+
+  // Sketch mode sends at most candidatesPerPartition estimates per task per microbatch to the global partition.
+  static class TopNWordsSketchScenario extends TopNWordsScenario {
+    @Override
+    public RamaModule module() {
+      return new TopNWordsModule(new TopNSketchConfig());
+    }
+  }
+
+  static class RamaSpaceScenario extends Scenario {
+    private static final int USERS = 1000;
+    private Depot _postsDepot;
+    private QueryTopologyClient<Object> _resolvePosts;
+
+    @Override
+    public RamaModule module() {
+      return new RamaSpaceModule();
+    }
+
+    @Override
+    public void setup(InProcessCluster cluster, String moduleName) throws Exception {
+      super.setup(cluster, moduleName);
+      Depot registrations = cluster.clusterDepot(moduleName, "*userRegistrationsDepot");
+      for (int u = 0; u < USERS; u++) {
+        registrations.append(new UserRegistration("user" + u, "user" + u + "@example.org", "User " + u, u, "uuid-" + u));
+      }
+      _postsDepot = cluster.clusterDepot(moduleName, "*postsDepot");
+      _resolvePosts = cluster.clusterQuery(moduleName, "resolvePosts");
+    }
+
+    @Override
+    public void append(long i) {
+      Random random = new Random(i);
+      _postsDepot.append(new Post("user" + random.nextInt(USERS), "user" + WORDS.sample(random) % USERS,
+                                  "post " + i));
+    }
+
+    @Override
+    public String microbatchTopology() {
+      return "posts";
+    }
+
+    @Override
+    public void query(long i) {
+      _resolvePosts.invoke("user" + (i % USERS), 0L);
+    }
+  }
+
+  // Even appends are follows and odd appends are URL shares; both feed the "core" microbatch topology.
+  static class ReachScenario extends Scenario {
+    private static final int USERS = 5000;
+    private static final int URLS = 500;
+    private Depot _urlsDepot;
+    private Depot _followsDepot;
+    private QueryTopologyClient<Object> _reach;
+
+    @Override
+    public RamaModule module() {
+      return new ReachModule();
+    }
+
+    @Override
+    public void setup(InProcessCluster cluster, String moduleName) throws Exception {
+      super.setup(cluster, moduleName);
+      _urlsDepot = cluster.clusterDepot(moduleName, "*urlsDepot");
+      _followsDepot = cluster.clusterDepot(moduleName, "*followsDepot");
+      _reach = cluster.clusterQuery(moduleName, "reach");
+    }
+
+    @Override
+    public void append(long i) {
+      Random random = new Random(i);
+      if (i % 2 == 0) {
+        _followsDepot.append(Arrays.asList("user" + WORDS.sample(random) % USERS, "user" + random.nextInt(USERS)));
+      } else {
+        _urlsDepot.append(Arrays.asList("url" + WORDS.sample(random) % URLS + ".com", "user" + random.nextInt(USERS)));
+      }
+    }
+
+    @Override
+    public String microbatchTopology() {
+      return "core";
+    }
+
+    @Override
+    public void query(long i) {
+      _reach.invoke("url" + (i % URLS) + ".com");
+    }
+  }
+
+  public static Map<String, Class<? extends Scenario>> scenarios() {
+    Map<String, Class<? extends Scenario>> ret = new LinkedHashMap<>();
+    ret.put("recordSeeder", RecordSeederScenario.class);
+    ret.put("wordCount", WordCountScenario.class);
+    ret.put("batchedWordCount", BatchedWordCountScenario.class);
+    ret.put("topNWords", TopNWordsScenario.class);
+    ret.put("topNWordsSketch", TopNWordsSketchScenario.class);
+    ret.put("ramaSpace", RamaSpaceScenario.class);
+    ret.put("reach", ReachScenario.class);
+    return ret;
+  }
+
+  public static class Options {
+    public long records = 10000;
+    // Total appends per second across all clients; 0 appends as fast as possible.
+    public double rate = 0;
+    public int clients = 4;
+    public int queries = 1000;
+    public List<int[]> configs = new ArrayList<>(Arrays.asList(new int[] {2, 1}, new int[] {4, 2}, new int[] {8, 4}));
+    public List<String> scenarios = new ArrayList<>(scenarios().keySet());
+
+    public static Options parse(String[] args) {
+      Options ret = new Options();
+      for (int i = 0; i + 1 < args.length; i += 2) {
+        String value = args[i + 1];
+        switch (args[i]) {
+          case "--records": ret.records = Long.parseLong(value); break;
+          case "--rate": ret.rate = Double.parseDouble(value); break;
+          case "--clients": ret.clients = Integer.parseInt(value); break;
+          case "--queries": ret.queries = Integer.parseInt(value); break;
+          case "--configs":
+            ret.configs.clear();
+            for (String config : value.split(",")) {
+              String[] parts = config.split("x");
+              ret.configs.add(new int[] {Integer.parseInt(parts[0]), Integer.parseInt(parts[1])});
+            }
+            break;
+          case "--scenarios": ret.scenarios = Arrays.asList(value.split(",")); break;
+          default: throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+      }
+      return ret;
+    }
+  }
+
+  public static class Result {
+    public String scenario;
+    public int tasks;
+    public int threads;
+    public long records;
+    public double appendSeconds;
+    public double catchUpSeconds;
+    public LatencyRecorder appendLatency = new LatencyRecorder();
+    public LatencyRecorder queryLatency = new LatencyRecorder();
+
+    public double recordsPerSecond() {
+      return records / (appendSeconds + catchUpSeconds);
+    }
+  }
+
+  private interface Step {
+    void run(long i) throws Exception;
+  }
+
+  // Splits [0, count) between the clients, each pacing itself to its share of the rate.
+  private static void drive(int clients, long count, double rate, Step step) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(clients);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int c = 0; c < clients; c++) {
+        final int client = c;
+        futures.add(executor.submit(() -> {
+          long intervalNanos = rate > 0 ? (long) (1e9 * clients / rate) : 0;
+          long next = System.nanoTime();
+          for (long i = client; i < count; i += clients) {
+            if (intervalNanos > 0) {
+              long wait = next - System.nanoTime();
+              if (wait > 0) LockSupport.parkNanos(wait);
+              next += intervalNanos;
+            }
+            step.run(i);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> f : futures) f.get();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public static Result run(Scenario scenario, int tasks, int threads, Options options) throws Exception {
+    Result ret = new Result();
+    ret.tasks = tasks;
+    ret.threads = threads;
+    ret.records = options.records;
+    try (InProcessCluster cluster = InProcessCluster.create()) {
+      RamaModule module = scenario.module();
+      String moduleName = module.getClass().getName();
+      cluster.launchModule(module, new LaunchConfig(tasks, threads));
+      scenario.setup(cluster, moduleName);
+
+      long start = System.nanoTime();
+      drive(options.clients, options.records, options.rate, i -> {
+        long t0 = System.nanoTime();
+        scenario.append(i);
+        ret.appendLatency.record(System.nanoTime() - t0);
+      });
+      long appended = System.nanoTime();
+      if (scenario.microbatchTopology() != null) {
+        cluster.waitForMicrobatchProcessedCount(moduleName, scenario.microbatchTopology(), (int) options.records);
+      }
+      long caughtUp = System.nanoTime();
+      ret.appendSeconds = (appended - start) / 1e9;
+      ret.catchUpSeconds = (caughtUp - appended) / 1e9;
+
+      drive(options.clients, options.queries, 0, i -> {
+        long t0 = System.nanoTime();
+        scenario.query(i);
+        ret.queryLatency.record(System.nanoTime() - t0);
+      });
+    }
+    return ret;
+  }
+
+  public static void printReport(List<Result> results) {
+    System.out.println();
+    System.out.println(String.format("%-13s %-7s %9s %9s %10s  %-44s %s",
+                                     "scenario", "config", "append s", "catchup s", "records/s", "append latency",
+                                     "query latency"));
+    for (Result r : results) {
+      System.out.println(String.format("%-13s %-7s %9.2f %9.2f %10.0f  %-44s %s",
+                                       r.scenario, r.tasks + "x" + r.threads, r.appendSeconds, r.catchUpSeconds,
+                                       r.recordsPerSecond(), r.appendLatency.summary(), r.queryLatency.summary()));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = Options.parse(args);
+    Map<String, Class<? extends Scenario>> available = scenarios();
+    List<Result> results = new ArrayList<>();
+    for (String name : options.scenarios) {
+      Class<? extends Scenario> scenarioClass = available.get(name);
+      if (scenarioClass == null) throw new IllegalArgumentException("Unknown scenario " + name + ", expected one of " + available.keySet());
+      for (int[] config : options.configs) {
+        System.err.println("Running " + name + " with " + config[0] + " tasks, " + config[1] + " threads");
+        Result result = run(scenarioClass.getDeclaredConstructor().newInstance(), config[0], config[1], options);
+        result.scenario = name;
+        results.add(result);
+      }
+    }
+    printReport(results);
+  }
+}
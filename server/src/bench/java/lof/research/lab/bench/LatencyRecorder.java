@@ -0,0 +1,38 @@
+package lof.research.lab.bench;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples from any number of threads and reports percentiles. Samples are kept exactly, which is
+ * fine at benchmark sizes.
+ */
+public class LatencyRecorder {
+  private long[] _nanos = new long[1024];
+  private int _count = 0;
+
+  public synchronized void record(long nanos) {
+    if (_count == _nanos.length) _nanos = Arrays.copyOf(_nanos, _count * 2);
+    _nanos[_count++] = nanos;
+  }
+
+  public synchronized int count() {
+    return _count;
+  }
+
+  /**
+   * The latency at percentile p (0-100) in microseconds, or 0 with no samples.
+   */
+  public synchronized double percentileMicros(double p) {
+    if (_count == 0) return 0;
+    long[] sorted = Arrays.copyOf(_nanos, _count);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(p / 100.0 * _count) - 1;
+    return sorted[Math.max(0, Math.min(_count - 1, index))] / 1000.0;
+  }
+
+  public String summary() {
+    if (count() == 0) return "-";
+    return String.format("p50 %.0f p99 %.0f p99.9 %.0f max %.0f us",
+                         percentileMicros(50), percentileMicros(99), percentileMicros(99.9), percentileMicros(100));
+  }
+}
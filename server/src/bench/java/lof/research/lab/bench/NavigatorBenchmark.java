@@ -0,0 +1,70 @@
+package lof.research.lab.bench;
+
+import com.rpl.rama.Navigator;
+import org.openjdk.jmh.annotations.*;
+import rama.examples.paths.CustomKey;
+import rama.examples.paths.MyListNav;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The custom navigators from rama.examples.paths, invoked directly so the numbers are the navigators' own cost
+ * rather than path compilation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NavigatorBenchmark {
+  private static final Navigator.Next IDENTITY = new Navigator.Next() {
+    @Override
+    public Object invokeNext(Object o) {
+      return o;
+    }
+  };
+  private static final Navigator.Next INC = new Navigator.Next() {
+    @Override
+    public Object invokeNext(Object o) {
+      return ((Integer) o) + 1;
+    }
+  };
+
+  private final CustomKey _customKey = new CustomKey("b");
+  private final MyListNav _listNav = new MyListNav();
+  private Map<String, Integer> _map;
+  private List<Integer> _list;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    _map = new HashMap<>();
+    for (int i = 0; i < 16; i++) _map.put(Character.toString((char) ('a' + i)), i);
+    _list = new ArrayList<>();
+    for (int i = 0; i < 16; i++) _list.add(i);
+  }
+
+  @Benchmark
+  public Object customKeySelect() {
+    return _customKey.select(_map, IDENTITY);
+  }
+
+  @Benchmark
+  public Object customKeyTransform() {
+    return _customKey.transform(_map, INC);
+  }
+
+  @Benchmark
+  public Object myListNavSelect() {
+    return _listNav.select(_list, IDENTITY);
+  }
+
+  @Benchmark
+  public Object myListNavTransform() {
+    return _listNav.transform(_list, INC);
+  }
+}
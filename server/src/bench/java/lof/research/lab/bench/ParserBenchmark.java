@@ -0,0 +1,71 @@
+package lof.research.lab.bench;
+
+import lof.research.lab.SyntheticBibliography;
+import lof.research.lab.SyntheticBibliographyConfig;
+import lof.research.lab.data.Record;
+import lof.research.lab.parsers.ZoteroXmlParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZoteroXmlParser throughput. Besides the per-parse score, JMH reports the records and bytes counters as records/s
+ * and bytes/s.
+ *
+ * With syntheticRecords 0 the benchmark parses file; otherwise it parses a SyntheticBibliography export of that many
+ * records, generated once per trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+  // Relative to the server directory, where the bench profile runs.
+  @Param({"../gsbbib__pretty.xml"})
+  public String file;
+
+  @Param({"0", "10000", "100000"})
+  public int syntheticRecords;
+
+  private String _path;
+  private long _fileBytes;
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Throughput {
+    public long records;
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      records = 0;
+      bytes = 0;
+    }
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    File f = new File(file);
+    if (syntheticRecords > 0) {
+      f = File.createTempFile("synthetic-bib-" + syntheticRecords + "-", ".xml");
+      f.deleteOnExit();
+      new SyntheticBibliography(new SyntheticBibliographyConfig()).writeZoteroXml(f, syntheticRecords);
+    }
+    if (!f.isFile()) throw new IllegalArgumentException("No such file: " + f.getAbsolutePath());
+    _path = f.getPath();
+    _fileBytes = f.length();
+  }
+
+  @Benchmark
+  public List<Record> parse(Throughput throughput) {
+    List<Record> ret = ZoteroXmlParser.parseXmlFile(_path, Integer.MAX_VALUE);
+    throughput.records += ret.size();
+    throughput.bytes += _fileBytes;
+    return ret;
+  }
+}
@@ -0,0 +1,74 @@
+package lof.research.lab.bench;
+
+import lof.research.lab.data.Record;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Canonical ID generation and Record serialization. Records are RamaSerializable, which is Java serialization, so
+ * the round trip here is the cost Rama pays for a Record on every depot append and partition hop.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordBenchmark {
+  private Record _record;
+  private byte[] _serialized;
+
+  @Setup
+  public void setup() throws IOException {
+    _record = new Record(
+      Arrays.asList("Spencer-Brown, George", "Kauffman, Louis H."),
+      "Laws of Form: The Calculus of Indications and Re-entry", 1969, "10.1000/lof.1969", "https://example.org/lof");
+    _serialized = serialize(_record);
+  }
+
+  private static byte[] serialize(Record record) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(record);
+    }
+    return bytes.toByteArray();
+  }
+
+  @Benchmark
+  public String canonicalId() {
+    return _record.generateCanonicalId();
+  }
+
+  @Benchmark
+  public void normalize(Blackhole bh) {
+    bh.consume(Record.normalize("Spencer-Brown"));
+    bh.consume(Record.normalize("Calculus"));
+  }
+
+  @Benchmark
+  public byte[] serialize() throws IOException {
+    return serialize(_record);
+  }
+
+  @Benchmark
+  public Object deserialize() throws IOException, ClassNotFoundException {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(_serialized))) {
+      return in.readObject();
+    }
+  }
+
+  @Benchmark
+  public Object roundTrip() throws IOException, ClassNotFoundException {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize(_record)))) {
+      return in.readObject();
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package lof.research.lab.bench;
+
+import com.google.gson.Gson;
+import lof.restapi.exa.SearchRequestEncoder;
+import lof.restapi.exa.data.SearchRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building Exa request bodies: SearchRequestEncoder against Gson's default reflective encoding.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchRequestBenchmark {
+  private static final Gson REFLECTIVE = new Gson();
+
+  private SearchRequest _request;
+
+  @Setup
+  public void setup() {
+    _request = new SearchRequest("Laws of Form re-entry and self-reference in second-order cybernetics");
+    _request.type = "fast";
+    _request.numResults = 10;
+  }
+
+  @Benchmark
+  public String encoder() {
+    return SearchRequestEncoder.encode(_request);
+  }
+
+  @Benchmark
+  public String reflectiveGson() {
+    return REFLECTIVE.toJson(_request);
+  }
+}
@@ -0,0 +1,61 @@
+package lof.research.lab.bench;
+
+import lof.research.lab.SyntheticBibliography;
+import lof.research.lab.SyntheticBibliographyConfig;
+import lof.research.lab.data.Record;
+import lof.text.WordTokenizer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WordTokenizer against the split(" ") WordCountModule used before it, and against splitting on a regex and
+ * lowercasing, which is the closest the split approach gets to the tokenizer's output. Each operation tokenizes the
+ * same 1000 synthetic titles. Run with -prof gc to compare allocation per operation too:
+ *
+ *   mvn -Pbench verify -Djmh.args="WordTokenizerBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WordTokenizerBenchmark {
+  private List<String> _sentences;
+
+  @Setup
+  public void setup() {
+    _sentences = new ArrayList<>();
+    for (Record r : new SyntheticBibliography(new SyntheticBibliographyConfig()).next(1000)) {
+      if (r.title != null) _sentences.add(r.title);
+    }
+  }
+
+  @Benchmark
+  public void splitOnSpace(Blackhole bh) {
+    for (String sentence : _sentences) {
+      for (String word : sentence.split(" ")) bh.consume(word);
+    }
+  }
+
+  @Benchmark
+  public void splitOnRegexAndLowercase(Blackhole bh) {
+    for (String sentence : _sentences) {
+      for (String word : sentence.split("[^\\p{L}\\p{N}]+")) {
+        if (!word.isEmpty()) bh.consume(word.toLowerCase(Locale.ROOT));
+      }
+    }
+  }
+
+  @Benchmark
+  public void tokenizer(Blackhole bh) {
+    for (String sentence : _sentences) {
+      WordTokenizer.tokenize(sentence, bh::consume);
+    }
+  }
+}
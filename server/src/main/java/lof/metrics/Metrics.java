@@ -0,0 +1,37 @@
+package lof.metrics;
+
+import com.rpl.rama.*;
+import com.rpl.rama.module.*;
+import com.rpl.rama.ops.Ops;
+import lof.metrics.data.MetricsSnapshot;
+
+/**
+ * Wires metrics into a module. Call declare from define, then record through "*metrics" in any topology, e.g.
+ *
+ *   .eachAsync((MetricsTaskGlobal metrics, MyClient client, String key) -> metrics.timeAsync("fetch", () -> client.fetch(key)),
+ *              "*metrics", "*client", "*key")
+ *
+ * Every snapshotMillis each task writes a MetricsSnapshot to $$metrics, a per-task PState in the metricsSnapshots
+ * stream topology. The metrics query returns the latest snapshot of every task.
+ */
+public class Metrics {
+  public static void declare(Setup setup, Topologies topologies, MetricsConfig config) {
+    setup.declareObject("*metrics", new MetricsTaskGlobal(config));
+    setup.declareTickDepot("*metricsTick", config.snapshotMillis);
+
+    StreamTopology snapshots = topologies.stream("metricsSnapshots");
+    // One value per task, not keyed, so it's read through the metrics query rather than by key.
+    snapshots.pstate("$$metrics", MetricsSnapshot.class);
+    snapshots.source("*metricsTick")
+             .allPartition()
+             .each((MetricsTaskGlobal metrics) -> metrics.snapshot(), "*metrics").out("*metricsSnapshot")
+             .localTransform("$$metrics", Path.termVal("*metricsSnapshot"));
+
+    topologies.query("metrics").out("*metricsSnapshots")
+              .allPartition()
+              .localSelect("$$metrics", Path.stay()).out("*metricsSnapshot")
+              .keepTrue(new Expr(Ops.IS_NOT_NULL, "*metricsSnapshot"))
+              .originPartition()
+              .agg(Agg.list("*metricsSnapshot")).out("*metricsSnapshots");
+  }
+}
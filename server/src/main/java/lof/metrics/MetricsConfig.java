@@ -0,0 +1,31 @@
+package lof.metrics;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * Configuration for MetricsTaskGlobal.
+ */
+public class MetricsConfig implements RamaSerializable {
+  // Label identifying the module in snapshots and scrape output.
+  public String namespace;
+  // How often each task writes a snapshot to $$metrics.
+  public long snapshotMillis = 10000;
+  // Port of the scrape endpoint shared by all tasks in a worker. 0 means disabled; when null, the port is read from
+  // the scrapePortEnvVar environment variable when the task starts.
+  public Integer scrapePort;
+  public String scrapePortEnvVar = "LOF_METRICS_PORT";
+  // HdrHistogram precision. 2 significant digits keeps each histogram to a few KB.
+  public int significantDigits = 2;
+
+  public MetricsConfig() {}
+
+  public MetricsConfig(String namespace) {
+    this.namespace = namespace;
+  }
+
+  int resolveScrapePort() {
+    if (scrapePort != null) return scrapePort;
+    String env = System.getenv(scrapePortEnvVar);
+    return env == null || env.isEmpty() ? 0 : Integer.parseInt(env.trim());
+  }
+}
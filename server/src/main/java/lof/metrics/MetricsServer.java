@@ -0,0 +1,119 @@
+package lof.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lof.metrics.data.HistogramSummary;
+import lof.metrics.data.MetricsSnapshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+/**
+ * Scrape endpoint for the latest metrics snapshots of every task in this worker, in the Prometheus text format at
+ * /metrics. One server per port is shared by all the task globals, and all modules, that ask for it; it stops when
+ * the last of them closes. It binds to localhost only.
+ */
+public class MetricsServer {
+  private static final Map<Integer, MetricsServer> SERVERS = new HashMap<>();
+
+  private final HttpServer _server;
+  private final Set<MetricsTaskGlobal> _sources = ConcurrentHashMap.newKeySet();
+
+  private MetricsServer(int port) throws IOException {
+    _server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+    _server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "metrics-scrape-" + port);
+      t.setDaemon(true);
+      return t;
+    }));
+    _server.createContext("/metrics", this::handle);
+    _server.start();
+  }
+
+  static synchronized MetricsServer acquire(int port, MetricsTaskGlobal source) {
+    MetricsServer server = SERVERS.get(port);
+    if (server == null) {
+      try {
+        server = new MetricsServer(port);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to start metrics endpoint on port " + port, e);
+      }
+      SERVERS.put(port, server);
+    }
+    server._sources.add(source);
+    return server;
+  }
+
+  static synchronized void release(MetricsServer server, MetricsTaskGlobal source) {
+    server._sources.remove(source);
+    if (server._sources.isEmpty()) {
+      SERVERS.remove(server.port());
+      server._server.stop(0);
+    }
+  }
+
+  public int port() {
+    return _server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    List<MetricsSnapshot> snapshots = new ArrayList<>();
+    for (MetricsTaskGlobal source : _sources) {
+      MetricsSnapshot snapshot = source.lastSnapshot();
+      if (snapshot != null) snapshots.add(snapshot);
+    }
+    byte[] body = render(snapshots).getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  /**
+   * Renders snapshots in the Prometheus text format. Counters become name_total, histograms become summaries with
+   * p50/p90/p99/p99.9 quantiles plus name_max, all labelled with namespace and task.
+   */
+  public static String render(List<MetricsSnapshot> snapshots) {
+    StringBuilder sb = new StringBuilder();
+    for (MetricsSnapshot s : snapshots) {
+      String labels = "namespace=\"" + s.namespace + "\",task=\"" + s.taskId + "\"";
+      for (Map.Entry<String, Long> e : s.counters.entrySet()) {
+        sb.append(metricName(e.getKey())).append("_total{").append(labels).append("} ").append(e.getValue()).append('\n');
+      }
+      for (Map.Entry<String, Long> e : s.gauges.entrySet()) {
+        sb.append(metricName(e.getKey())).append('{').append(labels).append("} ").append(e.getValue()).append('\n');
+      }
+      for (Map.Entry<String, HistogramSummary> e : s.histograms.entrySet()) {
+        String name = metricName(e.getKey());
+        HistogramSummary h = e.getValue();
+        appendQuantile(sb, name, labels, "0.5", h.p50);
+        appendQuantile(sb, name, labels, "0.9", h.p90);
+        appendQuantile(sb, name, labels, "0.99", h.p99);
+        appendQuantile(sb, name, labels, "0.999", h.p999);
+        sb.append(name).append("_count{").append(labels).append("} ").append(h.count).append('\n');
+        sb.append(name).append("_max{").append(labels).append("} ").append(h.max).append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  private static void appendQuantile(StringBuilder sb, String name, String labels, String quantile, long value) {
+    sb.append(name).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+      .append(value).append('\n');
+  }
+
+  static String metricName(String name) {
+    return "lof_" + name.replaceAll("[^a-zA-Z0-9_]", "_");
+  }
+}
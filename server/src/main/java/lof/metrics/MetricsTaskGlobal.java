@@ -0,0 +1,147 @@
+package lof.metrics;
+
+import com.rpl.rama.integration.*;
+import lof.metrics.data.HistogramSummary;
+import lof.metrics.data.MetricsSnapshot;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Per-task counters, gauges and HdrHistograms, declared as "*metrics" by Metrics.declare.
+ *
+ * Recording is safe from any thread, including the threads eachAsync futures complete on, and costs no more than a
+ * map lookup and an atomic add. Histograms are HdrHistogram Recorders, so taking a snapshot swaps in a fresh interval
+ * histogram without blocking writers. Snapshots are taken on the task thread by the metrics topology; the scrape
+ * endpoint serves the most recent one rather than taking its own, so the two never disagree.
+ */
+public class MetricsTaskGlobal implements TaskGlobalObject {
+  public final MetricsConfig config;
+
+  private int _taskId;
+  private Map<String, Recorder> _histograms;
+  private Map<String, LongAdder> _counters;
+  private Map<String, AtomicLong> _gauges;
+  private long _lastSnapshotMillis;
+  private volatile MetricsSnapshot _lastSnapshot;
+  private MetricsServer _server;
+
+  public MetricsTaskGlobal() {
+    this(new MetricsConfig());
+  }
+
+  public MetricsTaskGlobal(MetricsConfig config) {
+    this.config = config;
+  }
+
+  @Override
+  public void prepareForTask(int taskId, TaskGlobalContext context) {
+    _taskId = taskId;
+    _histograms = new ConcurrentHashMap<>();
+    _counters = new ConcurrentHashMap<>();
+    _gauges = new ConcurrentHashMap<>();
+    _lastSnapshotMillis = System.currentTimeMillis();
+    int port = config.resolveScrapePort();
+    if (port > 0) _server = MetricsServer.acquire(port, this);
+  }
+
+  public int taskId() {
+    return _taskId;
+  }
+
+  public void increment(String name) {
+    increment(name, 1);
+  }
+
+  public void increment(String name, long delta) {
+    _counters.computeIfAbsent(name, n -> new LongAdder()).add(delta);
+  }
+
+  public void setGauge(String name, long value) {
+    _gauges.computeIfAbsent(name, n -> new AtomicLong()).set(value);
+  }
+
+  public void adjustGauge(String name, long delta) {
+    _gauges.computeIfAbsent(name, n -> new AtomicLong()).addAndGet(delta);
+  }
+
+  // For distributions that aren't latencies, e.g. records per microbatch.
+  public void recordValue(String name, long value) {
+    _histograms.computeIfAbsent(name, n -> new Recorder(config.significantDigits)).recordValue(Math.max(0, value));
+  }
+
+  public void recordNanos(String name, long nanos) {
+    recordValue(name, nanos / 1000);
+  }
+
+  /**
+   * Runs an async call, recording its latency under name, counting calls and failures as name.calls and
+   * name.errors, and tracking how many are outstanding in the name.inFlight gauge.
+   */
+  public <T> CompletableFuture<T> timeAsync(String name, Supplier<CompletableFuture<T>> call) {
+    long start = System.nanoTime();
+    String inFlight = name + ".inFlight";
+    increment(name + ".calls");
+    adjustGauge(inFlight, 1);
+    CompletableFuture<T> ret;
+    try {
+      ret = call.get();
+    } catch (RuntimeException e) {
+      adjustGauge(inFlight, -1);
+      increment(name + ".errors");
+      throw e;
+    }
+    ret.whenComplete((result, error) -> {
+      recordNanos(name, System.nanoTime() - start);
+      adjustGauge(inFlight, -1);
+      if (error != null) increment(name + ".errors");
+    });
+    return ret;
+  }
+
+  public MetricsSnapshot snapshot() {
+    long now = System.currentTimeMillis();
+    MetricsSnapshot ret = new MetricsSnapshot();
+    ret.namespace = config.namespace;
+    ret.taskId = _taskId;
+    ret.takenAtMillis = now;
+    ret.intervalMillis = now - _lastSnapshotMillis;
+    _lastSnapshotMillis = now;
+    for (Map.Entry<String, LongAdder> e : _counters.entrySet()) ret.counters.put(e.getKey(), e.getValue().sum());
+    for (Map.Entry<String, AtomicLong> e : _gauges.entrySet()) ret.gauges.put(e.getKey(), e.getValue().get());
+    for (Map.Entry<String, Recorder> e : _histograms.entrySet()) {
+      ret.histograms.put(e.getKey(), summarize(e.getValue().getIntervalHistogram()));
+    }
+    _lastSnapshot = ret;
+    return ret;
+  }
+
+  public MetricsSnapshot lastSnapshot() {
+    return _lastSnapshot;
+  }
+
+  static HistogramSummary summarize(Histogram histogram) {
+    HistogramSummary ret = new HistogramSummary();
+    ret.count = histogram.getTotalCount();
+    if (ret.count == 0) return ret;
+    ret.mean = histogram.getMean();
+    ret.p50 = histogram.getValueAtPercentile(50);
+    ret.p90 = histogram.getValueAtPercentile(90);
+    ret.p99 = histogram.getValueAtPercentile(99);
+    ret.p999 = histogram.getValueAtPercentile(99.9);
+    ret.max = histogram.getMaxValue();
+    return ret;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (_server != null) MetricsServer.release(_server, this);
+  }
+}
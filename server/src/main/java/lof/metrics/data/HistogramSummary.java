@@ -0,0 +1,25 @@
+package lof.metrics.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * Distribution of the values recorded into one histogram over a snapshot interval. Latencies are in microseconds.
+ */
+public class HistogramSummary implements RamaSerializable {
+  public long count;
+  public double mean;
+  public long p50;
+  public long p90;
+  public long p99;
+  public long p999;
+  public long max;
+
+  public HistogramSummary() {
+    // Default constructor required for RamaSerializable
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d p99.9=%d max=%d", count, mean, p50, p90, p99, p999, max);
+  }
+}
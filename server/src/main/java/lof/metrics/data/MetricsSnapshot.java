@@ -0,0 +1,24 @@
+package lof.metrics.data;
+
+import com.rpl.rama.RamaSerializable;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One task's metrics. Counters are totals since the task started, gauges are current values, and histograms cover the
+ * interval since the previous snapshot.
+ */
+public class MetricsSnapshot implements RamaSerializable {
+  public String namespace;
+  public Integer taskId;
+  public Long takenAtMillis;
+  public Long intervalMillis;
+  public Map<String, Long> counters = new TreeMap<>();
+  public Map<String, Long> gauges = new TreeMap<>();
+  public Map<String, HistogramSummary> histograms = new TreeMap<>();
+
+  public MetricsSnapshot() {
+    // Default constructor required for RamaSerializable
+  }
+}
@@ -0,0 +1,219 @@
+package lof.research.lab;
+
+import com.rpl.rama.*;
+import com.rpl.rama.module.*;
+import com.rpl.rama.ops.Ops;
+import lof.research.lab.data.Artifact;
+import lof.research.lab.data.ArtifactManifest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Content-addressed, chunked storage for large artifacts.
+ *
+ * Artifacts up to INLINE_MAX_BYTES are stored whole in $$jobResults. Larger ones are split into CHUNK_BYTES chunks
+ * stored in $$artifactChunks under the SHA-256 of their content, and the artifact in $$jobResults keeps only a manifest
+ * and a preview. Equal content hashes to the same key, so an artifact shared between jobs is stored once. Encoding,
+ * hashing and chunking run on the common pool rather than the task thread, and readers fetch READ_CHUNKS chunks at a
+ * time through open, so neither side ever handles an artifact as one PState value.
+ *
+ * Use declarePStates on the topology and store as a macro.
+ */
+public class ArtifactStore {
+  public static final int CHUNK_BYTES = 256 * 1024;
+  public static final int INLINE_MAX_BYTES = 64 * 1024;
+  public static final int PREVIEW_CHARS = 2000;
+  // Chunks fetched per read while streaming.
+  public static final int READ_CHUNKS = 4;
+
+  /**
+   * An artifact ready to be stored: the artifact as it will appear in $$jobResults, plus its chunks if the content
+   * was moved out.
+   */
+  public static class Prepared implements RamaSerializable {
+    public Artifact artifact;
+    public List<byte[]> chunks;
+
+    public Prepared() {
+      // Default constructor required for RamaSerializable
+    }
+
+    public Prepared(Artifact artifact, List<byte[]> chunks) {
+      this.artifact = artifact;
+      this.chunks = chunks;
+    }
+
+    public boolean isChunked() {
+      return chunks != null;
+    }
+  }
+
+  public static void declarePStates(StreamTopology topology) {
+    // content hash -> chunk index -> bytes
+    topology.pstate(
+      "$$artifactChunks",
+      PState.mapSchema(
+        String.class,
+        PState.mapSchema(Integer.class, byte[].class).subindexed()));
+  }
+
+  public static CompletableFuture<Prepared> prepareAsync(Artifact artifact) {
+    // A UTF-8 char is at most 3 bytes, so short content is known to stay inline without encoding it.
+    if (artifact.content == null || artifact.content.length() * 3L <= INLINE_MAX_BYTES) {
+      return CompletableFuture.completedFuture(new Prepared(artifact, null));
+    }
+    return CompletableFuture.supplyAsync(() -> prepare(artifact), ForkJoinPool.commonPool());
+  }
+
+  public static Prepared prepare(Artifact artifact) {
+    if (artifact.content == null) return new Prepared(artifact, null);
+    byte[] bytes = artifact.content.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length <= INLINE_MAX_BYTES) return new Prepared(artifact, null);
+    List<byte[]> chunks = new ArrayList<>();
+    for (int start = 0; start < bytes.length; start += CHUNK_BYTES) {
+      chunks.add(Arrays.copyOfRange(bytes, start, Math.min(bytes.length, start + CHUNK_BYTES)));
+    }
+    ArtifactManifest manifest = new ArtifactManifest(sha256(bytes), (long) bytes.length, CHUNK_BYTES, chunks.size());
+    String preview = artifact.content.substring(0, Math.min(PREVIEW_CHARS, artifact.content.length()));
+    return new Prepared(artifact.withChunkedContent(manifest, preview), chunks);
+  }
+
+  // [index, bytes] pairs.
+  public static List<List<Object>> indexedChunks(Prepared prepared) {
+    List<List<Object>> ret = new ArrayList<>(prepared.chunks.size());
+    for (int i = 0; i < prepared.chunks.size(); i++) {
+      ret.add(Arrays.asList(i, prepared.chunks.get(i)));
+    }
+    return ret;
+  }
+
+  public static String sha256(byte[] bytes) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+      StringBuilder sb = new StringBuilder(digest.length * 2);
+      for (byte b : digest) sb.append(String.format("%02x", b));
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Binds outVar to the artifact in artifactVar as it should be written to $$jobResults, storing its chunks first if
+   * its content is moved out. Chunks already stored under the same hash are not rewritten. Returns to the partition
+   * of homeKeyVar.
+   */
+  public static Block.Impl store(String artifactVar, String outVar, String homeKeyVar) {
+    String preparedVar = Helpers.genVar("prepared");
+    String hashVar = Helpers.genVar("hash");
+    String storedCountVar = Helpers.genVar("storedCount");
+    String chunksVar = Helpers.genVar("chunks");
+    String entryVar = Helpers.genVar("entry");
+    String indexVar = Helpers.genVar("index");
+    String chunkVar = Helpers.genVar("chunk");
+    String anchor = Helpers.genVar("artifactChunked").substring(1);
+    return Block.eachAsync(ArtifactStore::prepareAsync, artifactVar).out(preparedVar)
+                .each((Prepared prepared) -> prepared.artifact, preparedVar).out(outVar)
+                .ifTrue(new Expr((Prepared prepared) -> prepared.isChunked(), preparedVar),
+                  Block.each((Artifact artifact) -> artifact.manifest.contentHash, outVar).out(hashVar)
+                       .hashPartition(hashVar)
+                       .localSelect("$$artifactChunks", Path.key(hashVar).view(Ops.SIZE)).out(storedCountVar)
+                       .anchor(anchor)
+                       // Content-addressed, so a complete set of chunks under the hash is already this content.
+                       .keepTrue(new Expr((Number count, Artifact artifact) -> count.intValue() < artifact.manifest.chunkCount,
+                                          storedCountVar, outVar))
+                       .each(ArtifactStore::indexedChunks, preparedVar).out(chunksVar)
+                       .each(Ops.EXPLODE, chunksVar).out(entryVar)
+                       .each(Ops.EXPAND, entryVar).out(indexVar, chunkVar)
+                       .localTransform("$$artifactChunks", Path.key(hashVar, indexVar).termVal(chunkVar))
+                       .hook(anchor)
+                       .hashPartition(homeKeyVar));
+  }
+
+  /**
+   * Streams an artifact's content as UTF-8, reading chunked content READ_CHUNKS chunks at a time from artifactChunks.
+   */
+  public static InputStream open(PState artifactChunks, Artifact artifact) {
+    if (artifact.manifest == null) {
+      String content = artifact.content != null ? artifact.content : "";
+      return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return new ChunkStream(artifactChunks, artifact.manifest);
+  }
+
+  public static String readFully(PState artifactChunks, Artifact artifact) {
+    try (InputStream in = open(artifactChunks, artifact)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) != -1) out.write(buf, 0, n);
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static class ChunkStream extends InputStream {
+    private final PState _artifactChunks;
+    private final ArtifactManifest _manifest;
+    private final List<byte[]> _buffered = new ArrayList<>();
+    private int _nextIndex = 0;
+    private byte[] _current = new byte[0];
+    private int _pos = 0;
+
+    ChunkStream(PState artifactChunks, ArtifactManifest manifest) {
+      _artifactChunks = artifactChunks;
+      _manifest = manifest;
+    }
+
+    // Makes _current a chunk with bytes left, fetching the next range of chunks when the buffer runs out. Returns
+    // false at the end of the content.
+    private boolean advance() throws IOException {
+      while (_pos >= _current.length) {
+        if (_buffered.isEmpty()) {
+          if (_nextIndex >= _manifest.chunkCount) return false;
+          int end = Math.min(_manifest.chunkCount, _nextIndex + READ_CHUNKS);
+          SortedMap<Integer, byte[]> range =
+            _artifactChunks.selectOne(Path.key(_manifest.contentHash).sortedMapRange(_nextIndex, end));
+          if (range == null || range.size() != end - _nextIndex) {
+            throw new IOException("Missing chunks " + _nextIndex + "-" + (end - 1) + " of " + _manifest.contentHash);
+          }
+          _buffered.addAll(range.values());
+          _nextIndex = end;
+        }
+        _current = _buffered.remove(0);
+        _pos = 0;
+      }
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!advance()) return -1;
+      return _current[_pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) return 0;
+      if (!advance()) return -1;
+      int n = Math.min(len, _current.length - _pos);
+      System.arraycopy(_current, _pos, b, off, n);
+      _pos += n;
+      return n;
+    }
+  }
+}
@@ -0,0 +1,236 @@
+package lof.research.lab;
+
+import com.rpl.rama.*;
+import com.rpl.rama.helpers.TopologyUtils;
+import com.rpl.rama.integration.*;
+import com.rpl.rama.module.*;
+import com.rpl.rama.ops.Ops;
+import com.rpl.rama.ops.RamaFunction2;
+import com.rpl.rama.test.*;
+import lof.research.lab.data.CitationEdge;
+import lof.research.lab.data.RankState;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static com.rpl.rama.helpers.TopologyUtils.extractJavaFields;
+
+/**
+ * Citation graph for frontier expansion ($$citationGraph in the V2 plan).
+ *
+ * Edges are stored in both directions, the way $$friends is maintained in RamaSpaceModule: $$cites is partitioned by
+ * the citing paper and $$citedBy by the cited paper. Both are partitioned with PaperPartitioner rather than
+ * hashPartition, so a traversal can work out on its own task which task owns each paper in its frontier. "What does
+ * this paper cite" and "who cites this paper" are each a single-partition read, and since the inner sets are
+ * subindexed a heavily cited work like Laws of Form can be paginated and counted without loading its whole citer set
+ * into memory.
+ *
+ * $$citationRank holds an incrementally maintained citation-influence score per paper for search ranking.
+ */
+public class CitationGraphModule implements RamaModule {
+
+  public static class SourceIdExtract extends TopologyUtils.ExtractJavaField {
+    public SourceIdExtract() {
+      super("sourceId");
+    }
+  }
+
+  public static class PaperPartitioner implements RamaFunction2<Integer, Object, Integer> {
+    @Override
+    public Integer invoke(Integer numPartitions, Object paperId) {
+      return CitationTraversal.taskFor((String) paperId, numPartitions);
+    }
+  }
+
+  public static class TaskPartitioner implements RamaFunction2<Integer, Integer, Integer> {
+    @Override
+    public Integer invoke(Integer numPartitions, Integer taskId) {
+      return taskId;
+    }
+  }
+
+  // The module's task count, read once per task when the module starts, so a traversal can group its frontier by
+  // owning task without asking the cluster.
+  public static class TaskCount implements TaskGlobalObject {
+    private int _numTasks;
+
+    public int numTasks() {
+      return _numTasks;
+    }
+
+    @Override
+    public void prepareForTask(int taskId, TaskGlobalContext context) {
+      _numTasks = context.getModuleInstanceInfo().getNumTasks();
+    }
+
+    @Override
+    public void close() throws IOException {
+      // Nothing to release: it only holds the task count.
+    }
+  }
+
+  private static void declareCitationsTopology(Topologies topologies) {
+    StreamTopology citations = topologies.stream("citations");
+    // paperId -> IDs of the papers it cites
+    citations.pstate(
+      "$$cites",
+      PState.mapSchema(
+        String.class,
+        PState.setSchema(String.class).subindexed())).keyPartitioner(PaperPartitioner.class);
+    // paperId -> IDs of the papers citing it
+    citations.pstate(
+      "$$citedBy",
+      PState.mapSchema(
+        String.class,
+        PState.setSchema(String.class).subindexed())).keyPartitioner(PaperPartitioner.class);
+
+    // The depot is partitioned by source, which keeps each paper's citations in order. One hop takes the edge to
+    // the source's owner to write the forward edge, and a second to the target's owner writes the reverse edge.
+    citations.source("*citationsDepot").out("*edge")
+             .macro(extractJavaFields("*edge", "*sourceId", "*targetId"))
+             .customPartition(new PaperPartitioner(), "*sourceId")
+             .compoundAgg("$$cites", CompoundAgg.map("*sourceId", Agg.set("*targetId")))
+             .customPartition(new PaperPartitioner(), "*targetId")
+             .compoundAgg("$$citedBy", CompoundAgg.map("*targetId", Agg.set("*sourceId")));
+  }
+
+  // Maintains approximate PageRank scores ("citation influence") incrementally as edges arrive. See CitationRank for
+  // the math. The topology keeps its own copy of the out-links in $$rankOutLinks rather than reading $$cites, which
+  // is written by a different topology, so duplicate edges can be detected exactly and the out-degree used for a push
+  // always matches the links the mass is pushed along.
+  private static void declareCitationRankTopology(Topologies topologies) {
+    MicrobatchTopology rank = topologies.microbatch("citationRank");
+    rank.pstate(
+      "$$rankOutLinks",
+      PState.mapSchema(
+        String.class,
+        PState.setSchema(String.class).subindexed()));
+    rank.pstate("$$citationRank", PState.mapSchema(String.class, RankState.class));
+
+    rank.source("*citationsDepot").out("*microbatch")
+        .explodeMicrobatch("*microbatch").out("*edge")
+        .macro(extractJavaFields("*edge", "*sourceId", "*targetId"))
+        .hashPartition("*sourceId")
+        .localSelect("$$rankOutLinks", Path.key("*sourceId").view(Ops.SIZE)).out("*outDegree")
+        .localTransform("$$rankOutLinks", Path.key("*sourceId").voidSetElem().termVal("*targetId"))
+        .localSelect("$$rankOutLinks", Path.key("*sourceId").view(Ops.SIZE)).out("*newOutDegree")
+        // Re-extracted citations are common while crawling and must not change the scores.
+        .keepTrue(new Expr(Ops.GREATER_THAN, "*newOutDegree", "*outDegree"))
+        .localSelect("$$citationRank", Path.key("*sourceId")).out("*sourceRank")
+        .each(CitationRank::afterOutLinkAdded, "*sourceRank", "*outDegree").out("*updatedSourceRank")
+        .each(CitationRank::newLinkResidual, "*sourceRank", "*outDegree").out("*targetResidual")
+        .localTransform("$$citationRank", Path.key("*sourceId").termVal("*updatedSourceRank"))
+        .hashPartition("*targetId")
+        .localSelect("$$citationRank", Path.key("*targetId")).out("*targetRank")
+        .each(CitationRank::addResidual, "*targetRank", "*targetResidual").out("*updatedTargetRank")
+        .localTransform("$$citationRank", Path.key("*targetId").termVal("*updatedTargetRank"))
+        // Both endpoints' residuals changed, so push from each of them. A push moves the paper's residual into its
+        // rank and spreads it to the papers it cites, which are pushed in turn if their residual grew large enough.
+        .each(Ops.EXPLODE, new Expr(Ops.TUPLE, "*sourceId", "*targetId")).out("*changedId")
+        .loopWithVars(LoopVars.var("*paperId", "*changedId").var("*depth", 0),
+          Block.keepTrue(new Expr(Ops.LESS_THAN, "*depth", CitationRank.MAX_PUSH_DEPTH))
+               .hashPartition("*paperId")
+               .localSelect("$$citationRank", Path.key("*paperId")).out("*paperRank")
+               .keepTrue(new Expr(CitationRank::needsPush, "*paperRank"))
+               .localSelect("$$rankOutLinks", Path.key("*paperId").view(Ops.SIZE)).out("*degree")
+               .each(CitationRank::pushShare, "*paperRank", "*degree").out("*share")
+               .each(CitationRank::afterPush, "*paperRank").out("*pushedRank")
+               .localTransform("$$citationRank", Path.key("*paperId").termVal("*pushedRank"))
+               .keepTrue(new Expr(Ops.GREATER_THAN, "*degree", 0))
+               .localSelect("$$rankOutLinks", Path.key("*paperId").all()).out("*citedId")
+               .hashPartition("*citedId")
+               .localSelect("$$citationRank", Path.key("*citedId")).out("*citedRank")
+               .each(CitationRank::addResidual, "*citedRank", "*share").out("*updatedCitedRank")
+               .localTransform("$$citationRank", Path.key("*citedId").termVal("*updatedCitedRank"))
+               .continueLoop("*citedId", new Expr(Ops.INC, "*depth")));
+  }
+
+  // Expands one hop of a traversal. The frontier arrives grouped by owning task, so each task receives one list of
+  // papers. Only the frontier goes out and only reached papers come back; the visited set stays with the traversal.
+  // Agg.set is a combiner, so each task deduplicates the papers it reached before sending them to the origin: every
+  // task sends at most one set per hop, however many frontier papers it owns. Reading at most maxNodes neighbours per
+  // paper bounds the work done for heavily cited papers.
+  private static void declareCitationHopQuery(Topologies topologies) {
+    topologies.query("citationHop", "*frontierByTask", "*reverse", "*maxNodes").out("*reached")
+              .each(Ops.EXPLODE_MAP, "*frontierByTask").out("*taskId", "*papers")
+              .customPartition(new TaskPartitioner(), "*taskId")
+              .each(Ops.EXPLODE, "*papers").out("*paperId")
+              .ifTrue("*reverse",
+                Block.localSelect("$$citedBy", Path.key("*paperId").sortedSetRangeFrom("", "*maxNodes").all())
+                     .out("*neighborId"),
+                Block.localSelect("$$cites", Path.key("*paperId").sortedSetRangeFrom("", "*maxNodes").all())
+                     .out("*neighborId"))
+              .originPartition()
+              .agg(Agg.set("*neighborId")).out("*reached");
+  }
+
+  // Returns the papers within maxHops of the seed, mapped to their distance from it, visiting at most maxNodes
+  // papers. With reverse set the traversal follows $$citedBy, i.e. it finds who cites the seed, who cites them, and so
+  // on. The loop runs on the origin task and does one citationHop per hop, so a traversal costs maxHops round trips no
+  // matter how many edges it crosses. Papers reached again are dropped by mergeHop.
+  private static void declareCitationNeighborhoodQuery(Topologies topologies) {
+    topologies.query("citationNeighborhood", "*seedId", "*maxHops", "*maxNodes", "*reverse").out("*neighborhood")
+              .each((TaskCount taskCount) -> taskCount.numTasks(), "*taskCount").out("*numTasks")
+              .each(CitationTraversal::seedFrontier, "*seedId").out("*seedFrontier")
+              .each(CitationTraversal::seedDistances, "*seedId").out("*seedDistances")
+              .loopWithVars(LoopVars.var("*frontier", "*seedFrontier")
+                                    .var("*distances", "*seedDistances")
+                                    .var("*hop", 0),
+                Block.ifTrue(new Expr(Ops.AND,
+                                      new Expr(Ops.LESS_THAN, "*hop", "*maxHops"),
+                                      new Expr(CitationTraversal::canExpand, "*frontier", "*distances", "*maxNodes")),
+                  Block.each(CitationTraversal::groupByTask, "*frontier", "*numTasks").out("*frontierByTask")
+                       .invokeQuery("citationHop", "*frontierByTask", "*reverse", "*maxNodes").out("*reached")
+                       .each(CitationTraversal::mergeHop, "*distances", "*reached", new Expr(Ops.INC, "*hop"),
+                             "*maxNodes").out("*nextFrontier")
+                       .continueLoop("*nextFrontier", "*distances", new Expr(Ops.INC, "*hop")),
+                  Block.emitLoop("*distances"))).out("*neighborhood")
+              .originPartition();
+  }
+
+  @Override
+  public void define(Setup setup, Topologies topologies) {
+    setup.declareDepot("*citationsDepot", Depot.hashBy(SourceIdExtract.class));
+    setup.declareObject("*taskCount", new TaskCount());
+
+    declareCitationsTopology(topologies);
+    declareCitationRankTopology(topologies);
+    declareCitationHopQuery(topologies);
+    declareCitationNeighborhoodQuery(topologies);
+  }
+
+  public static void main(String[] args) throws Exception {
+    try (InProcessCluster cluster = InProcessCluster.create()) {
+      RamaModule module = new CitationGraphModule();
+      cluster.launchModule(module, new LaunchConfig(4, 4));
+      String moduleName = module.getClass().getName();
+
+      Depot citationsDepot = cluster.clusterDepot(moduleName, "*citationsDepot");
+      PState cites = cluster.clusterPState(moduleName, "$$cites");
+      PState citedBy = cluster.clusterPState(moduleName, "$$citedBy");
+
+      String lof = "spencerbrown-1969-laws-of-form";
+      List<CitationEdge> edges = Arrays.asList(
+        new CitationEdge("varela-1975-a-calculus-for", lof),
+        new CitationEdge("kauffman-1987-self-reference-and", lof),
+        new CitationEdge("kauffman-1987-self-reference-and", "varela-1975-a-calculus-for"),
+        new CitationEdge("luhmann-1995-social-systems", lof));
+      for (CitationEdge edge : edges) {
+        citationsDepot.append(edge);
+      }
+
+      System.out.println("Cited by Kauffman 1987: " + cites.select(Path.key("kauffman-1987-self-reference-and").all()));
+      System.out.println("Citing Laws of Form: " + citedBy.select(Path.key(lof).all()));
+      System.out.println("Laws of Form citation count: " + citedBy.selectOne(Path.key(lof).view(Ops.SIZE)));
+
+      PState citationRank = cluster.clusterPState(moduleName, "$$citationRank");
+      cluster.waitForMicrobatchProcessedCount(moduleName, "citationRank", edges.size());
+      System.out.println("Laws of Form influence: " + citationRank.selectOne(Path.key(lof)));
+
+      QueryTopologyClient<Map<String, Integer>> neighborhood = cluster.clusterQuery(moduleName, "citationNeighborhood");
+      System.out.println("Two hops of citers around Laws of Form: " + neighborhood.invoke(lof, 2, 100, true));
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package lof.research.lab;
+
+import lof.research.lab.data.ParsedReference;
+import lof.research.lab.data.Record;
+import lof.research.lab.data.ReferenceMatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves raw reference strings extracted from papers to canonical record IDs.
+ *
+ * Records and references are blocked on "surname-year", built from the normalized first-author surname and the year.
+ * RecordSeederModule indexes every record's title tokens under its blocking key, so a reference is resolved by
+ * reading the one block it falls in and scoring only those candidates. A reference without a parseable year blocks
+ * under "nodate" like a record without one, so it won't match a dated record.
+ */
+public class CitationMatcher {
+  // Dice coefficient over title tokens a candidate must reach to count as a match.
+  public static final double MATCH_THRESHOLD = 0.5;
+  // Upper bound on the candidates read from a block. Blocks are tiny in practice: one author's papers in one year.
+  public static final int MAX_CANDIDATES = 200;
+
+  private static final Pattern YEAR = Pattern.compile("\\b(1[5-9]\\d\\d|20\\d\\d)[a-z]?\\b");
+  private static final Pattern QUOTED = Pattern.compile("[\"“]([^\"”]{3,})[\"”]");
+  private static final Pattern INITIAL = Pattern.compile("([A-Z]\\.?)(-[A-Z]\\.?)*");
+  private static final Set<String> STOPWORDS = new HashSet<>(Arrays.asList(
+    "a", "an", "and", "as", "at", "by", "for", "from", "in", "into", "of", "on", "or", "the", "to", "with"));
+
+  public static String blockingKey(String surname, Integer year) {
+    return surname + "-" + (year != null ? year.toString() : "nodate");
+  }
+
+  public static String blockingKey(Record record) {
+    return blockingKey(Record.firstAuthorSurname(record.authors), record.year);
+  }
+
+  public static String blockingKey(ParsedReference ref) {
+    return blockingKey(ref.surname, ref.year);
+  }
+
+  /**
+   * Normalized title tokens with stopwords removed, in title order.
+   */
+  public static List<String> titleTokens(String title) {
+    List<String> ret = new ArrayList<>();
+    if (title == null) return ret;
+    for (String word : title.split("\\s+")) {
+      String token = Record.normalize(word);
+      if (!token.isEmpty() && !STOPWORDS.contains(token)) ret.add(token);
+    }
+    return ret;
+  }
+
+  /**
+   * Parses a reference in any of the common author-year or author-title-year styles, e.g.
+   *   Spencer-Brown, G. (1969). Laws of Form. London: Allen and Unwin.
+   *   G. Spencer-Brown, "Laws of Form", Allen and Unwin, 1969.
+   * Parsing is heuristic; fields that can't be found are left at their "unknown" values.
+   */
+  public static ParsedReference parse(String raw) {
+    String text = raw.trim();
+    Matcher yearMatcher = YEAR.matcher(text);
+    Integer year = null;
+    int yearStart = text.length();
+    int yearEnd = text.length();
+    if (yearMatcher.find()) {
+      year = Integer.parseInt(yearMatcher.group(1));
+      yearStart = yearMatcher.start();
+      yearEnd = yearMatcher.end();
+    }
+    String surname = parseSurname(text, yearStart);
+    String title = parseTitle(text, year, yearStart, yearEnd);
+    return new ParsedReference(raw, surname, year, titleTokens(title));
+  }
+
+  // The first author is everything before the first "and", "&", ";" or opening parenthesis, e.g. "Spencer-Brown, G.",
+  // "van der Berg, J." or "Louis H. Kauffman". When initials follow the comma the whole name before it is the surname;
+  // otherwise the surname is the last word of the name, as in Record.firstAuthorSurname.
+  private static String parseSurname(String text, int yearStart) {
+    String authors = text.substring(0, yearStart);
+    String firstAuthor = authors.split("\\s+(and|&)\\s+|;|\\(|\"|“")[0];
+    String[] parts = firstAuthor.split(",", 2);
+    String[] words = parts[0].trim().split("\\s+");
+    String afterComma = parts.length > 1 ? parts[1].trim() : "";
+    boolean inverted = !afterComma.isEmpty() && INITIAL.matcher(afterComma.split("\\s+")[0]).matches();
+    String surname = Record.normalize(inverted ? String.join("", words) : words[words.length - 1]);
+    return surname.isEmpty() ? "unknown" : surname;
+  }
+
+  private static String parseTitle(String text, Integer year, int yearStart, int yearEnd) {
+    Matcher quoted = QUOTED.matcher(text);
+    if (quoted.find()) return quoted.group(1);
+
+    // Author-year style: the title is the sentence following "(1969)."
+    if (year != null && yearStart > 0 && text.charAt(yearStart - 1) == '(') {
+      String rest = text.substring(Math.min(text.length(), yearEnd + 1)).replaceFirst("^[\\s.,:]+", "");
+      int end = rest.indexOf(". ");
+      return end >= 0 ? rest.substring(0, end) : rest.replaceFirst("\\.$", "");
+    }
+
+    // Otherwise take the longest period- or comma-delimited segment after the author, skipping the year.
+    String[] segments = text.split("[.,]\\s+");
+    String best = null;
+    for (int i = 1; i < segments.length; i++) {
+      String segment = segments[i];
+      if (year != null && segment.contains(year.toString())) continue;
+      if (best == null || segment.length() > best.length()) best = segment;
+    }
+    return best;
+  }
+
+  /**
+   * Dice coefficient of the two token sets, from 0 (disjoint) to 1 (identical).
+   */
+  public static double similarity(List<String> a, List<String> b) {
+    if (a == null || b == null || a.isEmpty() || b.isEmpty()) return 0.0;
+    Set<String> setA = new HashSet<>(a);
+    Set<String> setB = new HashSet<>(b);
+    int common = 0;
+    for (String token : setA) {
+      if (setB.contains(token)) common++;
+    }
+    return 2.0 * common / (setA.size() + setB.size());
+  }
+
+  /**
+   * Scores the candidates from a reference's block (canonical ID -> title tokens) and returns the best one, or null
+   * if none reaches MATCH_THRESHOLD.
+   */
+  public static ReferenceMatch bestMatch(ParsedReference ref, Map<String, List<String>> candidates) {
+    if (candidates == null) return null;
+    ReferenceMatch ret = null;
+    for (Map.Entry<String, List<String>> e : candidates.entrySet()) {
+      double score = similarity(ref.titleTokens, e.getValue());
+      if (score >= MATCH_THRESHOLD && (ret == null || score > ret.score)) {
+        ret = new ReferenceMatch(e.getKey(), score);
+      }
+    }
+    return ret;
+  }
+}
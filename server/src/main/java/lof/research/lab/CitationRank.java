@@ -0,0 +1,64 @@
+package lof.research.lab;
+
+import lof.research.lab.data.RankState;
+
+/**
+ * Push-based incremental PageRank over the citation graph.
+ *
+ * Scores approximate the solution of x = (1 - ALPHA) + ALPHA * sum(x(u) / outDegree(u)) over papers u citing each
+ * paper. Every paper keeps a settled rank p and a residual r, maintaining the invariant
+ *
+ *   r(v) = (1 - ALPHA) - p(v) + ALPHA * sum(p(u) / outDegree(u))
+ *
+ * so x is exactly p once every residual is zero. Pushing a paper moves its residual into its rank and hands
+ * ALPHA * r / outDegree to each cited paper's residual. A new paper starts with p = 0 and r = 1 - ALPHA.
+ *
+ * When u gains its (d+1)th out-link, instead of lowering the share of every existing neighbour, p(u) is scaled by
+ * (d+1)/d so p(u)/outDegree(u) is unchanged. The difference is subtracted from r(u), and the new neighbour's residual
+ * grows by ALPHA * p(u)/d. The update touches only the two endpoints, and the resulting residuals are pushed
+ * locally instead of recomputing the whole graph.
+ */
+public class CitationRank {
+  public static final double ALPHA = 0.85;
+  // Residuals at or below this magnitude are left in place until more mass arrives.
+  public static final double PUSH_THRESHOLD = 1e-4;
+  // Bounds how far a single edge insertion cascades within one microbatch. Residuals left unpushed at the limit
+  // stay in the PState and are pushed when a later update reaches them.
+  public static final int MAX_PUSH_DEPTH = 6;
+
+  private static RankState orInitial(RankState state) {
+    return state != null ? state : new RankState(0.0, 1 - ALPHA);
+  }
+
+  public static RankState afterOutLinkAdded(RankState state, Number oldOutDegree) {
+    RankState s = orInitial(state);
+    long d = oldOutDegree.longValue();
+    if (d == 0) return s;
+    double delta = s.rank / d;
+    return new RankState(s.rank + delta, s.residual - delta);
+  }
+
+  public static Double newLinkResidual(RankState sourceState, Number oldOutDegree) {
+    RankState s = orInitial(sourceState);
+    return ALPHA * s.rank / Math.max(1L, oldOutDegree.longValue());
+  }
+
+  public static RankState addResidual(RankState state, Double amount) {
+    RankState s = orInitial(state);
+    return new RankState(s.rank, s.residual + amount);
+  }
+
+  public static boolean needsPush(RankState state) {
+    return state != null && Math.abs(state.residual) > PUSH_THRESHOLD;
+  }
+
+  // Share of the residual each cited paper receives. Papers that cite nothing absorb their residual.
+  public static Double pushShare(RankState state, Number outDegree) {
+    long d = outDegree.longValue();
+    return d == 0 ? 0.0 : ALPHA * state.residual / d;
+  }
+
+  public static RankState afterPush(RankState state) {
+    return new RankState(state.rank + state.residual, 0.0);
+  }
+}
@@ -0,0 +1,64 @@
+package lof.research.lab;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Helpers for the k-hop citation neighbourhood queries in CitationGraphModule.
+ *
+ * The traversal state is a map from paper ID to its distance in hops from the seed. It doubles as the visited set,
+ * and stays on the task running the traversal: hops only carry the frontier out and the reached papers back, and
+ * reached papers are filtered against it when they're merged.
+ */
+public class CitationTraversal {
+
+  public static Map<String, Integer> seedDistances(String seedId) {
+    Map<String, Integer> ret = new HashMap<>();
+    ret.put(seedId, 0);
+    return ret;
+  }
+
+  public static List<String> seedFrontier(String seedId) {
+    return Collections.singletonList(seedId);
+  }
+
+  public static boolean canExpand(List<String> frontier, Map<String, Integer> distances, Integer maxNodes) {
+    return !frontier.isEmpty() && distances.size() < maxNodes;
+  }
+
+  // The task owning a paper's entries in $$cites and $$citedBy. String.hashCode is specified, so every worker agrees.
+  public static int taskFor(String paperId, int numTasks) {
+    int h = paperId.hashCode() * 0x9e3779b9;
+    return Math.floorMod(h ^ (h >>> 16), numTasks);
+  }
+
+  // The frontier split by owning task, so a hop sends each task one list.
+  public static Map<Integer, List<String>> groupByTask(List<String> frontier, Integer numTasks) {
+    Map<Integer, List<String>> ret = new HashMap<>();
+    for (String paperId : frontier) {
+      ret.computeIfAbsent(taskFor(paperId, numTasks), t -> new ArrayList<>()).add(paperId);
+    }
+    return ret;
+  }
+
+  /**
+   * Adds the papers reached by a hop to the distances map, stopping once maxNodes papers have been visited, and
+   * returns the newly visited papers as the next frontier.
+   */
+  public static List<String> mergeHop(Map<String, Integer> distances, Set<String> reached, Integer hop,
+                                      Integer maxNodes) {
+    List<String> ret = new ArrayList<>();
+    if (reached == null) return ret;
+    for (String paperId : reached) {
+      if (distances.size() >= maxNodes) break;
+      if (distances.putIfAbsent(paperId, hop) == null) {
+        ret.add(paperId);
+      }
+    }
+    return ret;
+  }
+}
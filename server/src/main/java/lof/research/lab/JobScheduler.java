@@ -0,0 +1,177 @@
+package lof.research.lab;
+
+import com.rpl.rama.integration.*;
+import lof.research.lab.data.Admission;
+import lof.research.lab.data.OwnerStats;
+import lof.research.lab.data.QueuedJob;
+import lof.research.lab.data.SubmitJob;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Admission control for research jobs.
+ *
+ * Queues and counts are durable PStates on ResearchJobModule's global partition. This task global holds the
+ * scheduler's in-memory state there: the deficit round robin credit each owner has built up. Losing it on restart only
+ * resets fairness credit, never loses jobs.
+ *
+ * Each admission round first starts interactive jobs, one per owner in rotation, using any free slot. Batch jobs
+ * then share what's left outside the interactive reserve: every round each backlogged owner earns its weight in
+ * credit and starts one job per whole unit of credit. An owner's share of batch slots is proportional to its weight,
+ * whatever the size of its backlog. Both lanes respect the global and per-owner running caps.
+ *
+ * The tick, as in TickedTaskGlobalExample, forgets the credit of owners that have gone idle.
+ */
+public class JobScheduler implements TaskGlobalObjectWithTick {
+  public final SchedulerConfig config;
+
+  private Map<String, Double> _deficits;
+  private Map<String, Long> _lastActiveMillis;
+  private int _cursor;
+
+  public JobScheduler(SchedulerConfig config) {
+    this.config = config;
+  }
+
+  @Override
+  public void prepareForTask(int taskId, TaskGlobalContext context) {
+    _deficits = new HashMap<>();
+    _lastActiveMillis = new HashMap<>();
+    _cursor = 0;
+  }
+
+  @Override
+  public long getFrequencyMillis() {
+    return config.tickMillis;
+  }
+
+  @Override
+  public void tick() {
+    long idleBefore = System.currentTimeMillis() - 60 * config.tickMillis;
+    _lastActiveMillis.entrySet().removeIf(e -> {
+      if (e.getValue() >= idleBefore) return false;
+      _deficits.remove(e.getKey());
+      return true;
+    });
+  }
+
+  public QueuedJob toQueuedJob(SubmitJob submission) {
+    boolean interactive = submission.interactive != null
+      ? submission.interactive
+      : submission.queries.size() + submission.urls.size() <= config.interactiveMaxSteps;
+    return new QueuedJob(submission.jobId, submission.owner, interactive);
+  }
+
+  /**
+   * Decides which queued jobs to start, given every owner's queued and running counts.
+   */
+  public List<Admission> admit(Map<String, OwnerStats> stats) {
+    List<Admission> ret = new ArrayList<>();
+    if (stats == null || stats.isEmpty()) return ret;
+    // Sorted so the rotation order is stable between rounds.
+    Map<String, OwnerStats> working = new TreeMap<>();
+    int running = 0;
+    for (Map.Entry<String, OwnerStats> e : stats.entrySet()) {
+      working.put(e.getKey(), e.getValue().copy());
+      running += e.getValue().running;
+    }
+    List<String> owners = new ArrayList<>(working.keySet());
+    int offset = Math.floorMod(_cursor++, owners.size());
+    List<String> rotation = new ArrayList<>(owners.subList(offset, owners.size()));
+    rotation.addAll(owners.subList(0, offset));
+
+    Map<String, Integer> interactiveCounts = new HashMap<>();
+    boolean progress = true;
+    while (progress && running < config.maxRunning) {
+      progress = false;
+      for (String owner : rotation) {
+        if (running >= config.maxRunning) break;
+        OwnerStats s = working.get(owner);
+        if (s.queuedInteractive > 0 && s.running < config.maxRunningPerOwner) {
+          s.queuedInteractive--;
+          s.running++;
+          running++;
+          interactiveCounts.merge(owner, 1, Integer::sum);
+          progress = true;
+        }
+      }
+    }
+
+    Map<String, Integer> batchCounts = new HashMap<>();
+    int batchLimit = config.maxRunning - config.interactiveReserved;
+    boolean backlogged = true;
+    while (backlogged && running < batchLimit) {
+      backlogged = false;
+      for (String owner : rotation) {
+        if (running >= batchLimit) break;
+        OwnerStats s = working.get(owner);
+        if (s.queuedBatch == 0 || s.running >= config.maxRunningPerOwner) continue;
+        backlogged = true;
+        double deficit = _deficits.getOrDefault(owner, 0.0) + config.weight(owner);
+        int n = (int) Math.min(Math.floor(deficit),
+                               Math.min(s.queuedBatch,
+                                        Math.min(config.maxRunningPerOwner - s.running, batchLimit - running)));
+        s.queuedBatch -= n;
+        s.running += n;
+        running += n;
+        if (n > 0) batchCounts.merge(owner, n, Integer::sum);
+        // An owner with nothing left queued doesn't bank credit for later.
+        _deficits.put(owner, s.queuedBatch == 0 ? 0.0 : deficit - n);
+      }
+    }
+
+    long now = System.currentTimeMillis();
+    for (String owner : owners) {
+      _lastActiveMillis.put(owner, now);
+      Integer interactive = interactiveCounts.get(owner);
+      if (interactive != null) ret.add(new Admission(owner, true, interactive));
+      Integer batch = batchCounts.get(owner);
+      if (batch != null) ret.add(new Admission(owner, false, batch));
+    }
+    return ret;
+  }
+
+  public static Map<String, OwnerStats> onEnqueued(Map<String, OwnerStats> stats, QueuedJob job) {
+    return update(stats, job.owner, s -> {
+      if (job.interactive) s.queuedInteractive++;
+      else s.queuedBatch++;
+    });
+  }
+
+  public static Map<String, OwnerStats> onAdmitted(Map<String, OwnerStats> stats, String owner, Boolean interactive) {
+    return update(stats, owner, s -> {
+      if (interactive) s.queuedInteractive--;
+      else s.queuedBatch--;
+      s.running++;
+    });
+  }
+
+  public static Map<String, OwnerStats> onCompleted(Map<String, OwnerStats> stats, String owner) {
+    return update(stats, owner, s -> s.running = Math.max(0, s.running - 1));
+  }
+
+  private interface StatsUpdate {
+    void apply(OwnerStats s);
+  }
+
+  // Copies rather than mutating the PState's value in place. Owners with nothing queued or running are dropped so
+  // the map only holds active owners.
+  private static Map<String, OwnerStats> update(Map<String, OwnerStats> stats, String owner, StatsUpdate fn) {
+    Map<String, OwnerStats> ret = stats != null ? new HashMap<>(stats) : new HashMap<>();
+    OwnerStats s = ret.containsKey(owner) ? ret.get(owner).copy() : new OwnerStats();
+    fn.apply(s);
+    if (s.queuedInteractive == 0 && s.queuedBatch == 0 && s.running == 0) ret.remove(owner);
+    else ret.put(owner, s);
+    return ret;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // Nothing to release: the scheduler only holds in-memory deficit counters.
+  }
+}
@@ -0,0 +1,143 @@
+package lof.research.lab;
+
+import com.google.gson.Gson;
+import com.rpl.rama.*;
+import com.rpl.rama.module.*;
+import com.rpl.rama.ops.Ops;
+import lof.research.lab.data.CachedCompletion;
+import lof.research.lab.data.LlmRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Content-addressed cache of model responses, keyed by a SHA-256 fingerprint of model, params and prompt.
+ *
+ * $$llmCache is partitioned by fingerprint. Alongside it, $$llmCacheOrder indexes each partition's entries by
+ * creation time, which is how both bounds are enforced: after every insert the partition's oldest entries are evicted
+ * while the partition is over cacheMaxEntriesPerPartition or they have expired. Reads also treat expired entries as
+ * misses, so a TTL holds even before eviction catches up.
+ *
+ * Use declarePStates on the topology and cachedCompletion as a macro, with an LlmTaskGlobal declared as "*llm".
+ */
+public class LlmCache {
+  private static final Gson GSON = new Gson();
+  // Bounds the entries examined by one eviction pass.
+  private static final int EVICTION_SCAN_LIMIT = 64;
+
+  public static void declarePStates(StreamTopology topology) {
+    topology.pstate("$$llmCache", PState.mapSchema(String.class, CachedCompletion.class));
+    // task ID -> "createdAtMillis/fingerprint" -> fingerprint
+    topology.pstate(
+      "$$llmCacheOrder",
+      PState.mapSchema(
+        Integer.class,
+        PState.mapSchema(String.class, String.class).subindexed()));
+  }
+
+  public static String fingerprint(LlmRequest request) {
+    // params is serialized from a sorted map so equal params always serialize the same way.
+    String canonical = request.model + "\n" + GSON.toJson(new TreeMap<>(request.params)) + "\n" + request.prompt;
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder(digest.length * 2);
+      for (byte b : digest) sb.append(String.format("%02x", b));
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static String freshResponse(CachedCompletion cached) {
+    if (cached == null || cached.expiresAtMillis <= System.currentTimeMillis()) return null;
+    return cached.response;
+  }
+
+  public static CachedCompletion toEntry(LlmTaskGlobal llm, String fingerprint, String response) {
+    long now = System.currentTimeMillis();
+    return new CachedCompletion(fingerprint, response, now, now + llm.config.cacheTtlMillis);
+  }
+
+  public static String orderKey(CachedCompletion entry) {
+    // Zero-padded so string order is creation order.
+    return String.format("%013d/%s", entry.createdAtMillis, entry.fingerprint);
+  }
+
+  /**
+   * Given a partition's oldest order entries and its entry count, returns [orderKey, fingerprint] pairs to evict.
+   */
+  public static List<List<String>> evictions(LlmTaskGlobal llm, SortedMap<String, String> oldest, Integer count) {
+    List<List<String>> ret = new ArrayList<>();
+    if (oldest == null) return ret;
+    long expiredBefore = System.currentTimeMillis() - llm.config.cacheTtlMillis;
+    int remaining = count;
+    for (Map.Entry<String, String> e : oldest.entrySet()) {
+      long createdAt = Long.parseLong(e.getKey().substring(0, e.getKey().indexOf('/')));
+      if (remaining <= llm.config.cacheMaxEntriesPerPartition && createdAt > expiredBefore) break;
+      ret.add(Arrays.asList(e.getKey(), e.getValue()));
+      remaining--;
+    }
+    return ret;
+  }
+
+  // An order entry can outlive its cache entry being refreshed; only the entry it was created with is evicted.
+  public static boolean isSameEntry(CachedCompletion cached, String orderKey) {
+    return cached != null && orderKey.equals(orderKey(cached));
+  }
+
+  /**
+   * Binds outVar to the model's response to the LlmRequest in requestVar, from the cache when possible. outVar is
+   * null if the model call failed. Leaves the event on the fingerprint's partition.
+   */
+  public static Block.Impl cachedCompletion(String requestVar, String outVar) {
+    String fingerprintVar = Helpers.genVar("fingerprint");
+    String cachedVar = Helpers.genVar("cached");
+    String hitVar = Helpers.genVar("hit");
+    String responseVar = Helpers.genVar("response");
+    String entryVar = Helpers.genVar("entry");
+    String taskIdVar = Helpers.genVar("taskId");
+    String orderKeyVar = Helpers.genVar("orderKey");
+    String countVar = Helpers.genVar("count");
+    String oldestVar = Helpers.genVar("oldest");
+    String evictionsVar = Helpers.genVar("evictions");
+    String evictedOrderKeyVar = Helpers.genVar("evictedOrderKey");
+    String evictedFingerprintVar = Helpers.genVar("evictedFingerprint");
+    String evictedVar = Helpers.genVar("evicted");
+    String evictedEntryVar = Helpers.genVar("evictedEntry");
+    String anchor = Helpers.genVar("llmCacheWritten").substring(1);
+    return Block.each(LlmCache::fingerprint, requestVar).out(fingerprintVar)
+                .hashPartition(fingerprintVar)
+                .localSelect("$$llmCache", Path.key(fingerprintVar)).out(cachedVar)
+                .each(LlmCache::freshResponse, cachedVar).out(hitVar)
+                .ifTrue(new Expr(Ops.IS_NOT_NULL, hitVar),
+                  Block.each(Ops.IDENTITY, hitVar).out(outVar),
+                  Block.eachAsync((LlmTaskGlobal llm, String fingerprint, LlmRequest request) -> llm.complete(fingerprint, request),
+                                  "*llm", fingerprintVar, requestVar).out(responseVar)
+                       .ifTrue(new Expr(Ops.IS_NOT_NULL, responseVar),
+                         Block.each(LlmCache::toEntry, "*llm", fingerprintVar, responseVar).out(entryVar)
+                              .localTransform("$$llmCache", Path.key(fingerprintVar).termVal(entryVar))
+                              .each(Ops.CURRENT_TASK_ID).out(taskIdVar)
+                              .each(LlmCache::orderKey, entryVar).out(orderKeyVar)
+                              .localTransform("$$llmCacheOrder", Path.key(taskIdVar, orderKeyVar).termVal(fingerprintVar))
+                              .anchor(anchor)
+                              .localSelect("$$llmCacheOrder", Path.key(taskIdVar).view(Ops.SIZE)).out(countVar)
+                              .localSelect("$$llmCacheOrder",
+                                           Path.key(taskIdVar).sortedMapRangeFrom("", EVICTION_SCAN_LIMIT)).out(oldestVar)
+                              .each(LlmCache::evictions, "*llm", oldestVar, countVar).out(evictionsVar)
+                              .each(Ops.EXPLODE, evictionsVar).out(evictedVar)
+                              .each(Ops.EXPAND, evictedVar).out(evictedOrderKeyVar, evictedFingerprintVar)
+                              .localTransform("$$llmCacheOrder", Path.key(taskIdVar, evictedOrderKeyVar).termVoid())
+                              .localSelect("$$llmCache", Path.key(evictedFingerprintVar)).out(evictedEntryVar)
+                              .keepTrue(new Expr(LlmCache::isSameEntry, evictedEntryVar, evictedOrderKeyVar))
+                              .localTransform("$$llmCache", Path.key(evictedFingerprintVar).termVoid())
+                              .hook(anchor))
+                       .each(Ops.IDENTITY, responseVar).out(outVar));
+  }
+}
@@ -0,0 +1,28 @@
+package lof.research.lab;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * Configuration for LlmTaskGlobal. The endpoint is any OpenAI-compatible chat completions API.
+ */
+public class LlmConfig implements RamaSerializable {
+  public String completionsUrl = "https://api.openai.com/v1/chat/completions";
+  // When null, the key is read from the apiKeyEnvVar environment variable when the task starts.
+  public String apiKey;
+  public String apiKeyEnvVar = "LLM_API_KEY";
+  public String model = "gpt-4o-mini";
+  public int requestTimeoutMillis = 120000;
+
+  public long cacheTtlMillis = 7L * 24 * 60 * 60 * 1000;
+  // Size bound on $$llmCache, enforced per partition by evicting the oldest entries.
+  public int cacheMaxEntriesPerPartition = 10000;
+
+  public LlmConfig() {}
+
+  public static LlmConfig forEndpoint(String completionsUrl, String apiKey) {
+    LlmConfig ret = new LlmConfig();
+    ret.completionsUrl = completionsUrl;
+    ret.apiKey = apiKey;
+    return ret;
+  }
+}
@@ -0,0 +1,105 @@
+package lof.research.lab;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.rpl.rama.integration.*;
+import lof.research.lab.data.LlmRequest;
+import org.asynchttpclient.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Model API client for research jobs, used through LlmCache.
+ *
+ * Concurrent calls for the same request fingerprint share one model call. $$llmCache is partitioned by fingerprint,
+ * so every miss for a key happens on the same task and finds the call already in flight in this task's instance.
+ *
+ * Calls complete with null instead of failing so a model outage degrades synthesis rather than retrying the job's
+ * topology event indefinitely; null responses are never cached.
+ */
+public class LlmTaskGlobal implements TaskGlobalObject {
+  private static final Gson GSON = new Gson();
+
+  public final LlmConfig config;
+  public AsyncHttpClient client;
+
+  private String _apiKey;
+  private Map<String, CompletableFuture<String>> _inFlight;
+  private AtomicLong _calls;
+  private AtomicLong _coalesced;
+
+  public LlmTaskGlobal(LlmConfig config) {
+    this.config = config;
+  }
+
+  @Override
+  public void prepareForTask(int taskId, TaskGlobalContext context) {
+    client = Dsl.asyncHttpClient(Dsl.config().setRequestTimeout(config.requestTimeoutMillis));
+    _apiKey = config.apiKey != null ? config.apiKey : System.getenv(config.apiKeyEnvVar);
+    _inFlight = new ConcurrentHashMap<>();
+    _calls = new AtomicLong();
+    _coalesced = new AtomicLong();
+  }
+
+  public long callCount() {
+    return _calls.get();
+  }
+
+  public long coalescedCount() {
+    return _coalesced.get();
+  }
+
+  public CompletableFuture<String> complete(String fingerprint, LlmRequest request) {
+    CompletableFuture<String> ret = new CompletableFuture<>();
+    CompletableFuture<String> existing = _inFlight.putIfAbsent(fingerprint, ret);
+    if (existing != null) {
+      _coalesced.incrementAndGet();
+      return existing;
+    }
+    _calls.incrementAndGet();
+    call(request).whenComplete((response, error) -> {
+      _inFlight.remove(fingerprint, ret);
+      ret.complete(error != null ? null : response);
+    });
+    return ret;
+  }
+
+  private CompletableFuture<String> call(LlmRequest request) {
+    JsonObject body = new JsonObject();
+    body.addProperty("model", request.model);
+    JsonArray messages = new JsonArray();
+    JsonObject message = new JsonObject();
+    message.addProperty("role", "user");
+    message.addProperty("content", request.prompt);
+    messages.add(message);
+    body.add("messages", messages);
+    for (Map.Entry<String, Object> e : request.params.entrySet()) {
+      body.add(e.getKey(), GSON.toJsonTree(e.getValue()));
+    }
+    BoundRequestBuilder builder = client.preparePost(config.completionsUrl)
+                                        .setHeader("content-type", "application/json")
+                                        .setBody(GSON.toJson(body));
+    if (_apiKey != null) builder.setHeader("authorization", "Bearer " + _apiKey);
+    return builder.execute().toCompletableFuture().thenApply(LlmTaskGlobal::parseContent);
+  }
+
+  private static String parseContent(Response response) {
+    if (response.getStatusCode() != 200) {
+      throw new IllegalStateException("model API returned " + response.getStatusCode());
+    }
+    JsonObject json = JsonParser.parseString(response.getResponseBody()).getAsJsonObject();
+    return json.getAsJsonArray("choices").get(0).getAsJsonObject()
+               .getAsJsonObject("message").get("content").getAsString();
+  }
+
+  @Override
+  public void close() throws IOException {
+    client.close();
+  }
+}
@@ -4,17 +4,37 @@ import com.rpl.rama.*;
 import com.rpl.rama.module.*;
 import com.rpl.rama.ops.Ops;
 import com.rpl.rama.test.*;
+import lof.metrics.Metrics;
+import lof.metrics.MetricsConfig;
+import lof.metrics.MetricsTaskGlobal;
+import lof.research.lab.data.MicrobatchBucket;
+import lof.research.lab.data.ParsedReference;
 import lof.research.lab.data.Record;
+import lof.research.lab.data.ReferenceMatch;
 import lof.research.lab.parsers.ZoteroXmlParser;
 
 import java.util.List;
+import java.util.Map;
 
 public class RecordSeederModule implements RamaModule {
+  private final int _maxVersions;
+  private final long _retentionMillis;
+
+  public RecordSeederModule() {
+    this(RecordVersions.DEFAULT_MAX_VERSIONS, RecordVersions.DEFAULT_RETENTION_MILLIS);
+  }
+
+  // Retention for $$paperVersions, see RecordVersions.
+  public RecordSeederModule(int maxVersions, long retentionMillis) {
+    _maxVersions = maxVersions;
+    _retentionMillis = retentionMillis;
+  }
 
   @Override
   public void define(Setup setup, Topologies topologies) {
     // Declare depot for Record ingestion
     setup.declareDepot("*recordsDepot", Depot.random());
+    Metrics.declare(setup, topologies, new MetricsConfig("recordSeeder"));
 
     // Create microbatch topology for ETL processing
     MicrobatchTopology mb = topologies.microbatch("recordSeeder");
@@ -22,12 +42,120 @@ public class RecordSeederModule implements RamaModule {
     // Declare PState: Map from canonicalId -> Record
     mb.pstate("$$recordsById", PState.mapSchema(String.class, Record.class));
 
-    // Data flow: depot -> explode -> partition by ID -> store in PState
+    // Snapshot history: canonicalId -> ingest timestamp -> Record. $$recordsById always holds the latest snapshot.
+    mb.pstate(
+      "$$paperVersions",
+      PState.mapSchema(
+        String.class,
+        PState.mapSchema(Long.class, Record.class).subindexed()));
+
+    // Candidate index for citation matching: blocking key -> canonicalId -> title tokens. Storing the tokens here
+    // means a reference is scored against its whole block with one partition read.
+    mb.pstate(
+      "$$candidateIndex",
+      PState.mapSchema(
+        String.class,
+        PState.mapSchema(String.class, List.class).subindexed()));
+
+    // Telemetry, all on the global partition. Time bucket -> MicrobatchBucket for the newest
+    // SeederTelemetry.RETAINED_BUCKETS buckets, and depot partition -> records processed from it.
+    mb.pstate("$$seederTelemetry", PState.mapSchema(Long.class, MicrobatchBucket.class)).global();
+    mb.pstate("$$seederOffsets", Map.class).global();
+
+    // Data flow: depot -> explode -> partition by ID -> store in PState. It runs as a batch block so the whole
+    // microbatch can be summarized on the global partition once all of its writes are done. Both branches per record
+    // are unified into that summary: the indexing branch counts the record, each compaction delete counts a write.
     mb.source("*recordsDepot").out("*microbatch")
-      .explodeMicrobatch("*microbatch").out("*record")
-      .each((Record r) -> r.canonicalId, "*record").out("*id")
+      .each(() -> System.currentTimeMillis()).out("*batchStartMillis")
+      .batchBlock(
+        Block.explodeMicrobatch("*microbatch").out("*record")
+             .each(Ops.CURRENT_TASK_ID).out("*sourceTaskId")
+             .each((Record r) -> r.canonicalId, "*record").out("*id")
+             .hashPartition("*id")
+             .each(Ops.CURRENT_TASK_ID).out("*recordTaskId")
+             .each((MetricsTaskGlobal metrics) -> metrics.increment("recordSeeder.records"), "*metrics")
+             .localTransform("$$recordsById", Path.key("*id").termVal("*record"))
+             .each(() -> System.currentTimeMillis()).out("*nowMillis")
+             .localTransform("$$paperVersions", Path.key("*id", "*nowMillis").termVal("*record"))
+             .anchor("Versioned")
+             .each((Record r) -> CitationMatcher.blockingKey(r), "*record").out("*blockingKey")
+             .each((Record r) -> CitationMatcher.titleTokens(r.title), "*record").out("*titleTokens")
+             .hashPartition("*blockingKey")
+             .localTransform("$$candidateIndex", Path.key("*blockingKey", "*id").termVal("*titleTokens"))
+             .each((MetricsTaskGlobal metrics) -> metrics.increment("recordSeeder.pstateWrites", 3), "*metrics")
+             .each(Ops.CURRENT_TASK_ID).out("*indexTaskId")
+             .each(Ops.IDENTITY, 1).out("*records")
+             .each(Ops.IDENTITY, 3).out("*writes")
+             .each(SeederTelemetry::touched, "*recordTaskId", "*indexTaskId").out("*touchedTasks")
+             .anchor("Indexed")
+             // Compaction runs on the record's own partition right after each write, so history never grows past
+             // the retention policy by more than one snapshot.
+             .hook("Versioned")
+             .localSelect("$$paperVersions", Path.key("*id").view(Ops.SIZE)).out("*versionCount")
+             .localSelect("$$paperVersions",
+                          Path.key("*id").sortedMapRangeFrom(0L, RecordVersions.COMPACTION_SCAN_LIMIT)).out("*oldest")
+             .each(RecordVersions::expiredVersions, "*oldest", "*versionCount", "*nowMillis", _maxVersions, _retentionMillis)
+             .out("*expired")
+             .each((MetricsTaskGlobal metrics, List expired) -> metrics.increment("recordSeeder.pstateWrites", expired.size()),
+                   "*metrics", "*expired")
+             .each(Ops.EXPLODE, "*expired").out("*expiredMillis")
+             .localTransform("$$paperVersions", Path.key("*id", "*expiredMillis").termVoid())
+             .each(Ops.IDENTITY, 0).out("*records")
+             .each(Ops.IDENTITY, 1).out("*writes")
+             .each(SeederTelemetry::touched, "*recordTaskId", "*recordTaskId").out("*touchedTasks")
+             .anchor("Compacted")
+             .unify("Indexed", "Compacted")
+             .globalPartition()
+             .agg(Agg.sum("*records")).out("*recordCount")
+             .agg(Agg.sum("*writes")).out("*pstateWrites")
+             .agg(Agg.min("*batchStartMillis")).out("*startedAtMillis")
+             .agg(Agg.combiner(new SeederTelemetry.TaskSetCombiner(), "*touchedTasks")).out("*partitionsTouched")
+             .compoundAgg(CompoundAgg.map("*sourceTaskId", Agg.sum("*records"))).out("*recordsBySource")
+             // Post-agg, once per microbatch. Microbatches run back to back whether or not there's new data, so
+             // empty ones aren't recorded.
+             .keepTrue(new Expr(SeederTelemetry::nonEmpty, "*recordCount"))
+             .each(() -> System.currentTimeMillis()).out("*batchEndMillis")
+             .each(SeederTelemetry::stats, "*startedAtMillis", "*batchEndMillis", "*recordCount", "*pstateWrites",
+                   "*partitionsTouched").out("*batchStats")
+             .each(SeederTelemetry::record, "*metrics", "*batchStats")
+             .each(SeederTelemetry::bucketOf, "*startedAtMillis").out("*bucket")
+             .localTransform("$$seederTelemetry", Path.key("*bucket").term(SeederTelemetry::addBatch, "*batchStats"))
+             .localSelect("$$seederOffsets", Path.stay()).out("*offsets")
+             .each(SeederTelemetry::advanceOffsets, "*offsets", "*recordsBySource").out("*updatedOffsets")
+             .localTransform("$$seederOffsets", Path.termVal("*updatedOffsets"))
+             .each(SeederTelemetry::retentionHorizon, "*bucket").out("*horizon")
+             .localSelect("$$seederTelemetry",
+                          Path.sortedMapRangeTo("*horizon", SeederTelemetry.RETENTION_SCAN_LIMIT)).out("*expiredBuckets")
+             .each((Map expiredBuckets) -> expiredBuckets.keySet(), "*expiredBuckets").out("*expiredBucketKeys")
+             .each(Ops.EXPLODE, "*expiredBucketKeys").out("*expiredBucket")
+             .localTransform("$$seederTelemetry", Path.key("*expiredBucket").termVoid()));
+
+    // Telemetry buckets that started in [fromMillis, toMillis), oldest first, for the dashboard. Current depot lag
+    // comes from SeederTelemetry.offsetLag and $$seederOffsets.
+    topologies.query("seederTelemetry", "*fromMillis", "*toMillis").out("*buckets")
+      .globalPartition()
+      .localSelect("$$seederTelemetry", Path.sortedMapRange("*fromMillis", "*toMillis")).out("*buckets")
+      .originPartition();
+
+    // Returns the record as it was at asOfMillis, or null if it didn't exist yet or that point has been compacted
+    // away. Reads only the one snapshot in effect at that time.
+    topologies.query("recordAsOf", "*id", "*asOfMillis").out("*record")
       .hashPartition("*id")
-      .localTransform("$$recordsById", Path.key("*id").termVal("*record"));
+      .each((Long asOf) -> asOf + 1, "*asOfMillis").out("*endMillis")
+      .localSelect("$$paperVersions", Path.key("*id").sortedMapRangeTo("*endMillis", 1)).out("*versions")
+      .each(RecordVersions::latest, "*versions").out("*record")
+      .originPartition();
+
+    // Resolves a raw reference string to a ReferenceMatch, or null if no known record matches it. References that
+    // don't resolve are the ones to add to the crawl frontier.
+    topologies.query("resolveReference", "*raw").out("*match")
+      .each(CitationMatcher::parse, "*raw").out("*ref")
+      .each((ParsedReference ref) -> CitationMatcher.blockingKey(ref), "*ref").out("*blockingKey")
+      .hashPartition("*blockingKey")
+      .localSelect("$$candidateIndex",
+                   Path.key("*blockingKey").sortedMapRangeFrom("", CitationMatcher.MAX_CANDIDATES)).out("*candidates")
+      .each(CitationMatcher::bestMatch, "*ref", "*candidates").out("*match")
+      .originPartition();
   }
 
   public static void main(String[] args) throws Exception {
@@ -84,6 +212,13 @@ public class RecordSeederModule implements RamaModule {
         }
       }
 
+      System.out.println("=== Reference Resolution ===\n");
+      QueryTopologyClient<ReferenceMatch> resolveReference = cluster.clusterQuery(moduleName, "resolveReference");
+      Record first = records.get(0);
+      String raw = String.join(" and ", first.authors) + " (" + first.year + "). " + first.title + ".";
+      System.out.println("Reference: " + raw);
+      System.out.println("Resolved:  " + resolveReference.invoke(raw) + "\n");
+
       System.out.println("=== Summary ===");
       System.out.println("Total records in PState: " + records.size());
       System.out.println("V0 seeder complete!");
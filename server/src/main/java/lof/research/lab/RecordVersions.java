@@ -0,0 +1,52 @@
+package lof.research.lab;
+
+import lof.research.lab.data.Record;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Helpers for the versioned record snapshots in RecordSeederModule's $$paperVersions.
+ *
+ * Retention keeps at most maxVersions snapshots per record and drops snapshots superseded more than retentionMillis
+ * ago. The snapshot in effect at the retention horizon is kept, so "as of" reads stay exact for any time inside the
+ * retention window, and the latest snapshot is never dropped.
+ */
+public class RecordVersions {
+  public static final int DEFAULT_MAX_VERSIONS = 32;
+  public static final long DEFAULT_RETENTION_MILLIS = 90L * 24 * 60 * 60 * 1000;
+  // Bounds the snapshots examined by one compaction pass. Anything left over is compacted by the record's next write.
+  public static final int COMPACTION_SCAN_LIMIT = 64;
+
+  public static Record latest(SortedMap<Long, Record> versions) {
+    if (versions == null || versions.isEmpty()) return null;
+    return versions.get(versions.lastKey());
+  }
+
+  /**
+   * Given a record's oldest snapshots in ascending timestamp order and its total snapshot count, returns the
+   * timestamps retention says to delete.
+   */
+  public static List<Long> expiredVersions(SortedMap<Long, Record> oldest, Integer count, Long nowMillis,
+                                           Integer maxVersions, Long retentionMillis) {
+    List<Long> ret = new ArrayList<>();
+    if (oldest == null) return ret;
+    long horizon = nowMillis - retentionMillis;
+    int remaining = count;
+    Iterator<Map.Entry<Long, Record>> it = oldest.entrySet().iterator();
+    Long ts = it.hasNext() ? it.next().getKey() : null;
+    while (ts != null && remaining > 1) {
+      Long next = it.hasNext() ? it.next().getKey() : null;
+      boolean overCount = remaining > maxVersions;
+      boolean supersededBeforeHorizon = next != null && next <= horizon;
+      if (!overCount && !supersededBeforeHorizon) break;
+      ret.add(ts);
+      remaining--;
+      ts = next;
+    }
+    return ret;
+  }
+}
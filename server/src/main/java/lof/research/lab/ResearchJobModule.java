@@ -0,0 +1,261 @@
+package lof.research.lab;
+
+import com.rpl.rama.*;
+import com.rpl.rama.helpers.TopologyUtils;
+import com.rpl.rama.module.*;
+import com.rpl.rama.ops.Ops;
+import lof.research.lab.data.AdvanceJob;
+import lof.research.lab.data.Artifact;
+import lof.research.lab.data.JobState;
+import lof.research.lab.data.OwnerStats;
+import lof.research.lab.data.QueuedJob;
+import lof.research.lab.data.ResearchJob;
+import lof.research.lab.data.SubmitJob;
+import lof.metrics.Metrics;
+import lof.metrics.MetricsConfig;
+import lof.metrics.MetricsTaskGlobal;
+import lof.restapi.exa.RestAPIIntegrationModule.AsyncHttpClientTaskGlobal;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.rpl.rama.helpers.TopologyUtils.extractJavaFields;
+
+/**
+ * Research jobs (ResearchJobTopology in the V3 plan): PLANNING -> GATHERING -> SYNTHESIZING -> COMPLETE.
+ *
+ * Every transition is an AdvanceJob appended to *researchJobsDepot from within the topology, and each AdvanceJob
+ * runs one step. A step's results are written to PStates before the next AdvanceJob is appended, so the PStates are
+ * the checkpoint: if a worker restarts mid-step, the step's depot record is retried and picks up from what was
+ * already written. Gathering checkpoints every search or fetch as its own artifact in $$jobResults, and a retried
+ * gathering step only runs what's missing.
+ *
+ * Gathering runs in waves of up to gatherConcurrency steps through the shared HTTP task global. A job never blocks
+ * its task thread while waiting on the network, so a task can have hundreds of jobs in flight at once, bounded by
+ * the HTTP client's connection limits rather than by threads.
+ *
+ * Artifacts go through ArtifactStore, so large ones are chunked into $$artifactChunks and $$jobResults only holds
+ * their manifests.
+ *
+ * Submitted jobs wait in PLANNING until JobScheduler admits them. The run queues and per-owner counts live in global
+ * PStates, and admission runs there whenever a job is submitted or completes, and on every scheduler tick.
+ */
+public class ResearchJobModule implements RamaModule {
+  public static final int DEFAULT_GATHER_CONCURRENCY = 16;
+
+  public static class JobIdExtract extends TopologyUtils.ExtractJavaField {
+    public JobIdExtract() {
+      super("jobId");
+    }
+  }
+
+  private final AsyncHttpClientTaskGlobal _httpClient;
+  private final int _gatherConcurrency;
+  private final SchedulerConfig _schedulerConfig;
+  private final LlmTaskGlobal _llm;
+
+  public ResearchJobModule() {
+    this(new AsyncHttpClientTaskGlobal(), DEFAULT_GATHER_CONCURRENCY);
+  }
+
+  public ResearchJobModule(AsyncHttpClientTaskGlobal httpClient, int gatherConcurrency) {
+    this(httpClient, gatherConcurrency, new SchedulerConfig());
+  }
+
+  public ResearchJobModule(AsyncHttpClientTaskGlobal httpClient, int gatherConcurrency,
+                           SchedulerConfig schedulerConfig) {
+    this(httpClient, gatherConcurrency, schedulerConfig, null);
+  }
+
+  // llm may be null, in which case synthesis is a plain digest of the gathered artifacts.
+  public ResearchJobModule(AsyncHttpClientTaskGlobal httpClient, int gatherConcurrency,
+                           SchedulerConfig schedulerConfig, LlmTaskGlobal llm) {
+    _httpClient = httpClient;
+    _gatherConcurrency = gatherConcurrency;
+    _schedulerConfig = schedulerConfig;
+    _llm = llm;
+  }
+
+  @Override
+  public void define(Setup setup, Topologies topologies) {
+    // Takes SubmitJob from clients and AdvanceJob from the topology itself. Both are partitioned by job ID, so a
+    // job's events and PState entries all live on one task.
+    setup.declareDepot("*researchJobsDepot", Depot.hashBy(JobIdExtract.class));
+    setup.declareObject("*httpClient", _httpClient);
+    setup.declareObject("*scheduler", new JobScheduler(_schedulerConfig));
+    setup.declareTickDepot("*schedulerTick", _schedulerConfig.tickMillis);
+    if (_llm != null) setup.declareObject("*llm", _llm);
+    Metrics.declare(setup, topologies, new MetricsConfig("researchJobs"));
+
+    StreamTopology jobs = topologies.stream("researchJobs");
+    jobs.pstate("$$researchJobs", PState.mapSchema(String.class, ResearchJob.class));
+    // jobId -> step key -> artifact
+    jobs.pstate(
+      "$$jobResults",
+      PState.mapSchema(
+        String.class,
+        PState.mapSchema(String.class, Artifact.class).subindexed()));
+    // Scheduler state, all on the global partition. Run queues are owner -> enqueue sequence -> job, one per lane.
+    jobs.pstate(
+      "$$interactiveQueues",
+      PState.mapSchema(
+        String.class,
+        PState.mapSchema(Long.class, QueuedJob.class).subindexed())).global();
+    jobs.pstate(
+      "$$batchQueues",
+      PState.mapSchema(
+        String.class,
+        PState.mapSchema(Long.class, QueuedJob.class).subindexed())).global();
+    jobs.pstate("$$queueSeq", Long.class).global().initialValue(0L);
+    // Map<String, OwnerStats> of every owner with jobs queued or running, kept as one value so admission reads it
+    // in a single select.
+    jobs.pstate("$$schedulerStats", Map.class).global();
+    ArtifactStore.declarePStates(jobs);
+    if (_llm != null) LlmCache.declarePStates(jobs);
+
+    jobs.source("*schedulerTick")
+        .globalPartition()
+        .macro(admit());
+
+    jobs.source("*researchJobsDepot").out("*command")
+        .macro(extractJavaFields("*command", "*jobId"))
+        .localSelect("$$researchJobs", Path.key("*jobId")).out("*job")
+        .subSource("*command",
+          SubSource.create(SubmitJob.class)
+                   // Resubmitting an existing job ID is a no-op.
+                   .keepTrue(new Expr(Ops.IS_NULL, "*job"))
+                   .each((SubmitJob submission) -> new ResearchJob(submission, System.currentTimeMillis()), "*command")
+                   .out("*newJob")
+                   .localTransform("$$researchJobs", Path.key("*jobId").termVal("*newJob"))
+                   .each((JobScheduler scheduler, SubmitJob submission) -> scheduler.toQueuedJob(submission),
+                         "*scheduler", "*command").out("*queuedJob")
+                   .each((QueuedJob job) -> job.owner, "*queuedJob").out("*jobOwner")
+                   .globalPartition()
+                   .localSelect("$$queueSeq", Path.stay()).out("*seq")
+                   .localTransform("$$queueSeq", Path.term(Ops.INC))
+                   .ifTrue(new Expr((QueuedJob job) -> job.interactive, "*queuedJob"),
+                     Block.localTransform("$$interactiveQueues", Path.key("*jobOwner", "*seq").termVal("*queuedJob")),
+                     Block.localTransform("$$batchQueues", Path.key("*jobOwner", "*seq").termVal("*queuedJob")))
+                   .localSelect("$$schedulerStats", Path.stay()).out("*stats")
+                   .each(JobScheduler::onEnqueued, "*stats", "*queuedJob").out("*updatedStats")
+                   .localTransform("$$schedulerStats", Path.termVal("*updatedStats"))
+                   .macro(admit()),
+          SubSource.create(AdvanceJob.class)
+                   .keepTrue(new Expr((ResearchJob job, AdvanceJob advance) -> job != null && job.version.equals(advance.version),
+                                      "*job", "*command"))
+                   .each((ResearchJob job) -> job.state, "*job").out("*state")
+                   .ifTrue(new Expr(Ops.EQUAL, "*state", JobState.PLANNING),
+                     Block.each(ResearchJobs::plan, "*job").out("*nextJob")
+                          .macro(transition("*nextJob")),
+                   Block.ifTrue(new Expr(Ops.EQUAL, "*state", JobState.GATHERING),
+                     gather(_gatherConcurrency),
+                   Block.ifTrue(new Expr(Ops.EQUAL, "*state", JobState.SYNTHESIZING),
+                     synthesize(_llm != null)))));
+  }
+
+  // Writes the job and appends the AdvanceJob for its next step, or releases its scheduler slot if it's complete.
+  private static Block.Impl transition(String jobVar) {
+    String advanceVar = Helpers.genVar("advance");
+    String ownerVar = Helpers.genVar("owner");
+    String statsVar = Helpers.genVar("stats");
+    String updatedStatsVar = Helpers.genVar("updatedStats");
+    return Block.localTransform("$$researchJobs", Path.key("*jobId").termVal(jobVar))
+                .ifTrue(new Expr((ResearchJob job) -> job.state == JobState.COMPLETE, jobVar),
+                  Block.each((ResearchJob job) -> job.owner, jobVar).out(ownerVar)
+                       .globalPartition()
+                       .localSelect("$$schedulerStats", Path.stay()).out(statsVar)
+                       .each(JobScheduler::onCompleted, statsVar, ownerVar).out(updatedStatsVar)
+                       .localTransform("$$schedulerStats", Path.termVal(updatedStatsVar))
+                       .macro(admit()),
+                  Block.each((ResearchJob job) -> new AdvanceJob(job.jobId, job.version), jobVar).out(advanceVar)
+                       // APPEND_ACK: the step completes once the next one is durably queued, not once it has run.
+                       .depotPartitionAppend("*researchJobsDepot", advanceVar, AckLevel.APPEND_ACK));
+  }
+
+  // Runs on the global partition. Dequeues the jobs the scheduler admits and starts each one on its own partition.
+  private static Block.Impl admit() {
+    String statsVar = Helpers.genVar("stats");
+    String admissionsVar = Helpers.genVar("admissions");
+    String admissionVar = Helpers.genVar("admission");
+    String ownerVar = Helpers.genVar("owner");
+    String interactiveVar = Helpers.genVar("interactive");
+    String countVar = Helpers.genVar("count");
+    String headsVar = Helpers.genVar("heads");
+    String seqVar = Helpers.genVar("seq");
+    String queuedVar = Helpers.genVar("queued");
+    String currentStatsVar = Helpers.genVar("currentStats");
+    String updatedStatsVar = Helpers.genVar("updatedStats");
+    String admittedJobIdVar = Helpers.genVar("admittedJobId");
+    String startVar = Helpers.genVar("start");
+    return Block.localSelect("$$schedulerStats", Path.stay()).out(statsVar)
+                .each((JobScheduler scheduler, Map<String, OwnerStats> stats) -> scheduler.admit(stats),
+                      "*scheduler", statsVar).out(admissionsVar)
+                .each(Ops.EXPLODE, admissionsVar).out(admissionVar)
+                .macro(extractJavaFields(admissionVar, ownerVar, interactiveVar, countVar))
+                .ifTrue(interactiveVar,
+                  Block.localSelect("$$interactiveQueues", Path.key(ownerVar).sortedMapRangeFrom(0L, countVar)).out(headsVar),
+                  Block.localSelect("$$batchQueues", Path.key(ownerVar).sortedMapRangeFrom(0L, countVar)).out(headsVar))
+                .each(Ops.EXPLODE_MAP, headsVar).out(seqVar, queuedVar)
+                .ifTrue(interactiveVar,
+                  Block.localTransform("$$interactiveQueues", Path.key(ownerVar, seqVar).termVoid()),
+                  Block.localTransform("$$batchQueues", Path.key(ownerVar, seqVar).termVoid()))
+                .localSelect("$$schedulerStats", Path.stay()).out(currentStatsVar)
+                .each(JobScheduler::onAdmitted, currentStatsVar, ownerVar, interactiveVar).out(updatedStatsVar)
+                .localTransform("$$schedulerStats", Path.termVal(updatedStatsVar))
+                .each((QueuedJob job) -> job.jobId, queuedVar).out(admittedJobIdVar)
+                // Lands on the job's depot partition, the same one its SubmitJob was appended to.
+                .hashPartition(admittedJobIdVar)
+                .each((String jobId) -> new AdvanceJob(jobId, 0), admittedJobIdVar).out(startVar)
+                .depotPartitionAppend("*researchJobsDepot", startVar, AckLevel.APPEND_ACK);
+  }
+
+  // Runs the next wave of gathering steps that have no artifact yet. When the last step of the wave is checkpointed,
+  // the job advances to the next wave; when nothing is left, to SYNTHESIZING.
+  private static Block.Impl gather(int gatherConcurrency) {
+    return Block.localSelect("$$jobResults", Path.subselect(Path.key("*jobId").mapKeys())).out("*doneSteps")
+                .each(ResearchJobs::nextWave, "*job", "*doneSteps", gatherConcurrency).out("*wave")
+                .ifTrue(new Expr((List wave) -> wave.isEmpty(), "*wave"),
+                  Block.each((ResearchJob job) -> job.advance(JobState.SYNTHESIZING), "*job").out("*nextJob")
+                       .macro(transition("*nextJob")),
+                  Block.each((List done, List wave) -> done.size() + wave.size(), "*doneSteps", "*wave").out("*target")
+                       .each(Ops.EXPLODE, "*wave").out("*step")
+                       .eachAsync((MetricsTaskGlobal metrics, AsyncHttpClientTaskGlobal client, String step) ->
+                                    metrics.timeAsync("researchJobs.step", () -> ResearchJobs.runStep(client, step)),
+                                  "*metrics", "*httpClient", "*step").out("*outcome")
+                       .each(ResearchJobs::toArtifact, "*step", "*outcome").out("*artifact")
+                       .macro(ArtifactStore.store("*artifact", "*storedArtifact", "*jobId"))
+                       // A retried step can also complete from the run it replaced, e.g. a request still in flight
+                       // from before a restart. Whichever completes second finds the job already moved on and is
+                       // dropped, so it can't advance the job again or overwrite a later state.
+                       .localSelect("$$researchJobs", Path.key("*jobId")).out("*currentJob")
+                       .keepTrue(new Expr((ResearchJob current, ResearchJob job) -> current.version.equals(job.version),
+                                          "*currentJob", "*job"))
+                       .localTransform("$$jobResults", Path.key("*jobId", "*step").termVal("*storedArtifact"))
+                       // Completions run one at a time on the task thread, so exactly one of them sees the wave
+                       // finished.
+                       .localSelect("$$jobResults", Path.key("*jobId").view(Ops.SIZE)).out("*doneCount")
+                       .keepTrue(new Expr((Number count, Integer target) -> count.intValue() == target,
+                                          "*doneCount", "*target"))
+                       .each((ResearchJob job) -> job.advance(JobState.GATHERING), "*job").out("*nextJob")
+                       .macro(transition("*nextJob")));
+  }
+
+  // With a model configured, the digest of the gathered artifacts is summarized by the model through LlmCache, so
+  // re-running a synthesis over the same inputs reuses the cached response. The digest is kept if the call fails.
+  private static Block.Impl synthesize(boolean useLlm) {
+    Block.Impl digest = Block.localSelect("$$jobResults", Path.subselect(Path.key("*jobId").mapVals())).out("*gathered")
+                             .each(ResearchJobs::synthesize, "*job", "*gathered").out("*digest");
+    if (useLlm) {
+      digest = digest.each(ResearchJobs::synthesisRequest, "*llm", "*digest").out("*llmRequest")
+                     .macro(LlmCache.cachedCompletion("*llmRequest", "*completion"))
+                     .hashPartition("*jobId")
+                     .each(ResearchJobs::withCompletion, "*digest", "*completion").out("*synthesis");
+    } else {
+      digest = digest.each(Ops.IDENTITY, "*digest").out("*synthesis");
+    }
+    return digest.macro(ArtifactStore.store("*synthesis", "*storedSynthesis", "*jobId"))
+                 .localTransform("$$jobResults", Path.key("*jobId", ResearchJobs.SYNTHESIS_KEY).termVal("*storedSynthesis"))
+                 .each((ResearchJob job) -> job.advance(JobState.COMPLETE), "*job").out("*nextJob")
+                 .macro(transition("*nextJob"));
+  }
+}
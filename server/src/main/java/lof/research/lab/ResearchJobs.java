@@ -0,0 +1,128 @@
+package lof.research.lab;
+
+import lof.research.lab.data.Artifact;
+import lof.research.lab.data.JobState;
+import lof.research.lab.data.LlmRequest;
+import lof.research.lab.data.ResearchJob;
+import lof.restapi.exa.FetchOutcome;
+import lof.restapi.exa.RestAPIIntegrationModule.AsyncHttpClientTaskGlobal;
+import lof.restapi.exa.data.SearchRequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Step logic for the research job state machine in ResearchJobModule.
+ */
+public class ResearchJobs {
+  public static final String SEARCH_PREFIX = "search:";
+  public static final String FETCH_PREFIX = "fetch:";
+  public static final String SYNTHESIS_KEY = "synthesis";
+  // Bounds the plan size, which in turn bounds how much a gathering or synthesis step reads from $$jobResults.
+  public static final int MAX_STEPS = 256;
+  // How much of each gathered artifact the synthesis quotes.
+  private static final int EXCERPT_CHARS = 200;
+
+  public static ResearchJob plan(ResearchJob job) {
+    ResearchJob ret = job.advance(JobState.GATHERING);
+    ret.steps = planSteps(job);
+    return ret;
+  }
+
+  /**
+   * Turns the job's seeds into gathering steps, deduplicated and in order. This is where an LLM planner expanding the
+   * question into queries would plug in.
+   */
+  public static List<String> planSteps(ResearchJob job) {
+    Set<String> ret = new LinkedHashSet<>();
+    for (String query : job.queries) ret.add(SEARCH_PREFIX + query);
+    for (String url : job.urls) ret.add(FETCH_PREFIX + url);
+    if (ret.isEmpty()) ret.add(SEARCH_PREFIX + job.question);
+    List<String> steps = new ArrayList<>(ret);
+    return steps.size() > MAX_STEPS ? new ArrayList<>(steps.subList(0, MAX_STEPS)) : steps;
+  }
+
+  /**
+   * The next steps to run: up to maxConcurrency steps of the plan, in plan order, that don't have an artifact yet.
+   * An empty wave means gathering is done.
+   */
+  public static List<String> nextWave(ResearchJob job, Collection<String> doneSteps, Integer maxConcurrency) {
+    Set<String> done = new HashSet<>(doneSteps);
+    List<String> ret = new ArrayList<>();
+    for (String step : job.steps) {
+      if (ret.size() >= maxConcurrency) break;
+      if (!done.contains(step)) ret.add(step);
+    }
+    return ret;
+  }
+
+  public static CompletableFuture<FetchOutcome> runStep(AsyncHttpClientTaskGlobal client, String step) {
+    try {
+      if (step.startsWith(SEARCH_PREFIX)) {
+        return client.search(new SearchRequest(step.substring(SEARCH_PREFIX.length())));
+      } else if (step.startsWith(FETCH_PREFIX)) {
+        return client.get(step.substring(FETCH_PREFIX.length()));
+      }
+      return CompletableFuture.completedFuture(FetchOutcome.terminal(step, "unknown step type", 0));
+    } catch (RuntimeException e) {
+      // e.g. the IllegalStateException SearchRequestEncoder throws if a request can't be encoded, or an
+      // ArithmeticException from picking a search endpoint when none are configured. The step is recorded as failed
+      // rather than failing the job.
+      return CompletableFuture.completedFuture(FetchOutcome.terminal(step, String.valueOf(e), 0));
+    }
+  }
+
+  public static Artifact toArtifact(String step, FetchOutcome outcome) {
+    String kind = step.startsWith(SEARCH_PREFIX) ? "search" : "fetch";
+    if (outcome.success) return new Artifact(step, kind, outcome.body, null);
+    return new Artifact(step, kind, null, outcome.toDeadLetter(step));
+  }
+
+  /**
+   * Combines the gathered artifacts into the job's report. This is a plain digest for now; it's the step an LLM
+   * summarization plugs into.
+   */
+  public static Artifact synthesize(ResearchJob job, List<Artifact> gathered) {
+    List<Artifact> sources = new ArrayList<>();
+    for (Artifact a : gathered) {
+      if (!SYNTHESIS_KEY.equals(a.key)) sources.add(a);
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append("Question: ").append(job.question).append('\n');
+    int succeeded = 0;
+    for (Artifact a : sources) {
+      if (a.succeeded()) succeeded++;
+    }
+    sb.append("Sources: ").append(succeeded).append(" gathered, ")
+      .append(sources.size() - succeeded).append(" failed\n");
+    for (Artifact a : sources) {
+      sb.append("\n- ").append(a.key).append(": ");
+      if (a.succeeded()) {
+        String content = a.inlineText() != null ? a.inlineText() : "";
+        sb.append(content, 0, Math.min(EXCERPT_CHARS, content.length()));
+      } else {
+        sb.append("FAILED (").append(a.failure.reason).append(')');
+      }
+    }
+    return new Artifact(SYNTHESIS_KEY, "synthesis", sb.toString(), null);
+  }
+
+  public static LlmRequest synthesisRequest(LlmTaskGlobal llm, Artifact digest) {
+    LlmRequest ret = new LlmRequest(llm.config.model,
+      "Write a concise research summary answering the question below, citing the sources by their keys.\n\n"
+      + digest.content);
+    // Deterministic sampling, so a cached response is the answer a re-run would have produced anyway.
+    ret.params.put("temperature", 0);
+    return ret;
+  }
+
+  public static Artifact withCompletion(Artifact digest, String completion) {
+    if (completion == null) return digest;
+    return new Artifact(SYNTHESIS_KEY, "synthesis", completion, null);
+  }
+}
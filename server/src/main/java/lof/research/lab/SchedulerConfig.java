@@ -0,0 +1,29 @@
+package lof.research.lab;
+
+import com.rpl.rama.RamaSerializable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits and weights for the research job scheduler. See JobScheduler.
+ */
+public class SchedulerConfig implements RamaSerializable {
+  // Jobs running at once across all owners.
+  public int maxRunning = 64;
+  // Jobs running at once for any single owner.
+  public int maxRunningPerOwner = 16;
+  // Slots batch jobs can never take, so interactive jobs start immediately even when batch work is queued.
+  public int interactiveReserved = 8;
+  // Jobs with at most this many seed queries and URLs default to the interactive lane.
+  public int interactiveMaxSteps = 3;
+  // Relative share of batch slots per owner. Owners not listed get defaultWeight.
+  public Map<String, Double> ownerWeights = new HashMap<>();
+  public double defaultWeight = 1.0;
+  // How often queued work is re-examined even if no job submits or completes.
+  public long tickMillis = 1000;
+
+  public double weight(String owner) {
+    return Math.max(0.01, ownerWeights.getOrDefault(owner, defaultWeight));
+  }
+}
@@ -0,0 +1,119 @@
+package lof.research.lab;
+
+import com.rpl.rama.Depot;
+import com.rpl.rama.DepotPartitionInfo;
+import com.rpl.rama.ops.RamaCombinerAgg;
+import lof.metrics.MetricsTaskGlobal;
+import lof.research.lab.data.MicrobatchBucket;
+import lof.research.lab.data.MicrobatchStats;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Helpers for RecordSeederModule's per-microbatch telemetry.
+ *
+ * Every non-empty microbatch is summarized into a MicrobatchStats and folded into the BUCKET_MILLIS bucket it started
+ * in, in $$seederTelemetry. Only the newest RETAINED_BUCKETS buckets are kept, so the PState stays the size of a
+ * dashboard's time range however long the module runs. $$seederOffsets counts the records processed from each depot
+ * partition, which is what offsetLag compares against the depot's end offsets.
+ */
+public class SeederTelemetry {
+  public static final long BUCKET_MILLIS = 60 * 1000;
+  // One day of minute buckets.
+  public static final int RETAINED_BUCKETS = 24 * 60;
+  // Bounds the buckets examined by one retention pass, as RecordVersions.COMPACTION_SCAN_LIMIT does for snapshots.
+  public static final int RETENTION_SCAN_LIMIT = 16;
+
+  /**
+   * Union of the task IDs each record was written to. Usually every record after the first few touches partitions
+   * already in the set, so combining allocates nothing.
+   */
+  public static class TaskSetCombiner implements RamaCombinerAgg<Set<Integer>> {
+    @Override
+    public Set<Integer> combine(Set<Integer> curr, Set<Integer> arg) {
+      if (curr.containsAll(arg)) return curr;
+      if (arg.containsAll(curr)) return arg;
+      Set<Integer> ret = new HashSet<>(curr);
+      ret.addAll(arg);
+      return ret;
+    }
+
+    @Override
+    public Set<Integer> zeroVal() {
+      return Collections.emptySet();
+    }
+  }
+
+  public static Set<Integer> touched(Integer taskId, Integer otherTaskId) {
+    if (taskId.equals(otherTaskId)) return Collections.singleton(taskId);
+    Set<Integer> ret = new HashSet<>();
+    ret.add(taskId);
+    ret.add(otherTaskId);
+    return ret;
+  }
+
+  public static boolean nonEmpty(Number records) {
+    return records != null && records.longValue() > 0;
+  }
+
+  public static MicrobatchStats stats(Long startedAtMillis, Long endedAtMillis, Number records, Number pstateWrites,
+                                      Set<Integer> partitionsTouched) {
+    return new MicrobatchStats(startedAtMillis, endedAtMillis - startedAtMillis, records.longValue(),
+                               pstateWrites.longValue(), partitionsTouched.size());
+  }
+
+  public static void record(MetricsTaskGlobal metrics, MicrobatchStats stats) {
+    metrics.recordValue("recordSeeder.batchRecords", stats.records);
+    metrics.recordValue("recordSeeder.batchMillis", stats.processingMillis);
+    metrics.recordValue("recordSeeder.batchPartitionsTouched", stats.partitionsTouched);
+  }
+
+  public static long bucketOf(long millis) {
+    return millis - Math.floorMod(millis, BUCKET_MILLIS);
+  }
+
+  // Buckets that started before the returned time are past retention.
+  public static long retentionHorizon(long bucketStartMillis) {
+    return bucketStartMillis - (RETAINED_BUCKETS - 1) * BUCKET_MILLIS;
+  }
+
+  public static MicrobatchBucket addBatch(MicrobatchBucket bucket, MicrobatchStats stats) {
+    MicrobatchBucket ret = bucket == null ? new MicrobatchBucket(bucketOf(stats.startedAtMillis)) : bucket.copy();
+    ret.batches += 1;
+    ret.records += stats.records;
+    ret.pstateWrites += stats.pstateWrites;
+    ret.totalProcessingMillis += stats.processingMillis;
+    ret.maxRecords = Math.max(ret.maxRecords, stats.records);
+    ret.maxPartitionsTouched = Math.max(ret.maxPartitionsTouched, stats.partitionsTouched);
+    if (ret.slowest == null || stats.processingMillis > ret.slowest.processingMillis) ret.slowest = stats;
+    return ret;
+  }
+
+  public static Map<Integer, Long> advanceOffsets(Map<Integer, Long> offsets, Map<Integer, Number> recordsBySource) {
+    Map<Integer, Long> ret = offsets == null ? new HashMap<>() : new HashMap<>(offsets);
+    for (Map.Entry<Integer, Number> e : recordsBySource.entrySet()) {
+      ret.merge(e.getKey(), e.getValue().longValue(), Long::sum);
+    }
+    return ret;
+  }
+
+  /**
+   * How many records each partition of *recordsDepot holds that recordSeeder hasn't processed yet, given the
+   * contents of $$seederOffsets. Depot partitions and task IDs coincide since the depot has one partition per task.
+   */
+  public static SortedMap<Integer, Long> offsetLag(Depot recordsDepot, Map<Integer, Long> processed, int numPartitions) {
+    SortedMap<Integer, Long> ret = new TreeMap<>();
+    for (int i = 0; i < numPartitions; i++) {
+      DepotPartitionInfo info = recordsDepot.getPartitionInfo(i);
+      long done = processed == null ? 0 : processed.getOrDefault(i, 0L);
+      ret.put(i, Math.max(0, info.getEndOffset() - done));
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,273 @@
+package lof.research.lab;
+
+import lof.research.lab.data.Record;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates bibliographies of any size for scale testing, either as Records or as Zotero XML that ZoteroXmlParser
+ * reads like a real export. The distributions come from SyntheticBibliographyConfig, and output is fully determined
+ * by the config, seed included.
+ *
+ * Generation streams: memory is bounded by recentWindow regardless of how many records are generated.
+ *
+ *   new SyntheticBibliography(config).writeZoteroXml(new File("bib-1m.xml"), 1000000);
+ */
+public class SyntheticBibliography {
+  private static final String[] SYLLABLES = {
+    "an", "ber", "cal", "dor", "el", "fen", "gar", "hol", "is", "ka", "lin", "mor", "nor", "ost", "pa", "quin", "ros",
+    "sel", "tor", "ul", "var", "wen", "xa", "yor", "zen", "bra", "cre", "dro", "fla", "gri", "kle", "ste", "tre", "vo"};
+  private static final String[] GIVEN_NAMES = {
+    "George", "Louis H.", "Francisco", "Heinz", "Niklas", "Gregory", "Humberto", "Leon", "Ranulph", "Dirk",
+    "Sebastjan", "Elena", "Maria", "Paul", "William", "Ana", "Yuki", "Omar", "Ingrid", "Chen"};
+  private static final String[] TITLE_WORDS = {
+    "form", "distinction", "laws", "calculus", "indications", "re-entry", "self-reference", "cybernetics", "second-order",
+    "observer", "autopoiesis", "logic", "boolean", "imaginary", "values", "paradox", "mark", "void", "systems", "theory",
+    "notes", "on", "the", "of", "and", "a", "in", "toward", "towards", "beyond", "between", "time", "cognition", "mind",
+    "knots", "algebra", "boundary", "space", "meaning", "communication", "society", "nature", "mathematics"};
+  private static final String[][] REF_TYPES = {
+    {"Journal Article", "17"}, {"Book", "6"}, {"Book Section", "5"}, {"Conference Proceedings", "10"},
+    {"Report", "27"}, {"Thesis", "32"}, {"Conference Paper", "47"}};
+  private static final double[] REF_TYPE_WEIGHTS = {87, 40, 19, 17, 15, 5, 1};
+
+  /**
+   * Samples ranks 0..n-1 with probability proportional to 1 / (rank + 1)^exponent.
+   */
+  public static class Zipf {
+    private final double[] _cdf;
+
+    public Zipf(int n, double exponent) {
+      _cdf = new double[n];
+      double sum = 0;
+      for (int i = 0; i < n; i++) {
+        sum += 1.0 / Math.pow(i + 1, exponent);
+        _cdf[i] = sum;
+      }
+      for (int i = 0; i < n; i++) _cdf[i] /= sum;
+    }
+
+    public int sample(Random random) {
+      int i = Arrays.binarySearch(_cdf, random.nextDouble());
+      return i >= 0 ? i : Math.min(_cdf.length - 1, -i - 1);
+    }
+  }
+
+  // A generated record plus the export details that aren't part of Record.
+  private static class Entry {
+    Record record;
+    String[] refType;
+    boolean secondaryAuthors;
+  }
+
+  private final SyntheticBibliographyConfig _config;
+  private final Random _random;
+  private final Zipf _surnames;
+  private final Zipf _titleWords;
+  private final Entry[] _recent;
+  private long _generated = 0;
+
+  public SyntheticBibliography(SyntheticBibliographyConfig config) {
+    _config = config;
+    _random = new Random(config.seed);
+    _surnames = new Zipf(config.surnamePoolSize, config.authorSkew);
+    _titleWords = new Zipf(config.titleVocabularySize, config.titleSkew);
+    _recent = new Entry[config.recentWindow];
+  }
+
+  public Record next() {
+    return nextEntry().record;
+  }
+
+  public List<Record> next(int count) {
+    List<Record> ret = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) ret.add(next());
+    return ret;
+  }
+
+  private Entry nextEntry() {
+    Entry ret;
+    double roll = _random.nextDouble();
+    int recentCount = (int) Math.min(_generated, _recent.length);
+    if (recentCount > 0 && roll < _config.duplicateRate) {
+      ret = _recent[_random.nextInt(recentCount)];
+    } else if (recentCount > 0 && roll < _config.duplicateRate + _config.idCollisionRate) {
+      ret = collisionWith(_recent[_random.nextInt(recentCount)]);
+    } else {
+      ret = freshEntry();
+    }
+    _recent[(int) (_generated % _recent.length)] = ret;
+    _generated++;
+    return ret;
+  }
+
+  private Entry freshEntry() {
+    Entry ret = new Entry();
+    ret.refType = REF_TYPES[weightedIndex(REF_TYPE_WEIGHTS)];
+    ret.secondaryAuthors = _random.nextDouble() < _config.secondaryAuthorRate;
+    int authorCount = weightedIndex(_config.authorCountWeights);
+    List<String> authors = new ArrayList<>(authorCount);
+    for (int i = 0; i < authorCount; i++) authors.add(author());
+    Integer year = _random.nextDouble() < _config.missingYearRate
+      ? null : _config.minYear + _random.nextInt(_config.maxYear - _config.minYear + 1);
+    ret.record = new Record(authors, title(), year, doi(), url());
+    return ret;
+  }
+
+  private Entry collisionWith(Entry original) {
+    Record o = original.record;
+    Entry ret = new Entry();
+    ret.refType = REF_TYPES[weightedIndex(REF_TYPE_WEIGHTS)];
+    ret.secondaryAuthors = original.secondaryAuthors;
+    List<String> authors = new ArrayList<>();
+    if (!o.authors.isEmpty()) authors.add(o.authors.get(0));
+    authors.add(author());
+    String title = o.title;
+    if (title != null) {
+      String[] words = title.split("\\s+");
+      title = String.join(" ", Arrays.copyOfRange(words, 0, Math.min(3, words.length))) + " " + title();
+    }
+    ret.record = new Record(authors, title, o.year, doi(), url());
+    return ret;
+  }
+
+  private int weightedIndex(double[] weights) {
+    double total = 0;
+    for (double w : weights) total += w;
+    double roll = _random.nextDouble() * total;
+    for (int i = 0; i < weights.length; i++) {
+      roll -= weights[i];
+      if (roll < 0) return i;
+    }
+    return weights.length - 1;
+  }
+
+  // Surnames are built from syllables by rank, so every rank has the same surname in every run.
+  static String surname(int rank) {
+    StringBuilder sb = new StringBuilder();
+    int n = rank;
+    do {
+      sb.append(SYLLABLES[n % SYLLABLES.length]);
+      n /= SYLLABLES.length;
+    } while (n > 0);
+    sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+    return sb.toString();
+  }
+
+  private String author() {
+    String surname = surname(_surnames.sample(_random));
+    if (_random.nextDouble() < _config.diacriticRate) {
+      surname = surname.replaceFirst("o", "\u00f6").replaceFirst("a", "\u00e1");
+    }
+    return surname + ", " + GIVEN_NAMES[_random.nextInt(GIVEN_NAMES.length)];
+  }
+
+  private String titleWord() {
+    int rank = _titleWords.sample(_random);
+    return rank < TITLE_WORDS.length ? TITLE_WORDS[rank] : surname(rank).toLowerCase();
+  }
+
+  private String title() {
+    int words = _config.minTitleWords + _random.nextInt(_config.maxTitleWords - _config.minTitleWords + 1);
+    boolean subtitle = words >= 4 && _random.nextDouble() < _config.subtitleRate;
+    int subtitleAt = subtitle ? 1 + _random.nextInt(words - 2) : -1;
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < words; i++) {
+      if (i > 0) sb.append(i == subtitleAt + 1 ? ": " : " ");
+      String word = titleWord();
+      sb.append(i == 0 || i == subtitleAt + 1 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+    }
+    return sb.toString();
+  }
+
+  private String doi() {
+    if (_random.nextDouble() < _config.missingDoiRate) return null;
+    return "10." + (1000 + _random.nextInt(9000)) + "/synthetic." + Long.toString(_random.nextLong() & Long.MAX_VALUE, 36);
+  }
+
+  private String url() {
+    if (_random.nextDouble() < _config.missingUrlRate) return null;
+    return "https://example.org/works/" + Long.toString(_random.nextLong() & Long.MAX_VALUE, 36);
+  }
+
+  /**
+   * Writes count records as a Zotero XML export, in the layout of gsbbib__pretty.xml.
+   */
+  public void writeZoteroXml(Writer out, long count) throws IOException {
+    out.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<xml>\n  <records>\n");
+    for (long i = 0; i < count; i++) {
+      writeRecord(out, nextEntry());
+    }
+    out.write("  </records>\n</xml>\n");
+  }
+
+  public void writeZoteroXml(File file, long count) throws IOException {
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8),
+                                         1 << 16)) {
+      writeZoteroXml(out, count);
+    }
+  }
+
+  private static void writeRecord(Writer out, Entry entry) throws IOException {
+    Record r = entry.record;
+    out.write("    <record>\n");
+    out.write("      <database name=\"MyLibrary\">MyLibrary</database>\n");
+    out.write("      <source-app name=\"Zotero\">Zotero</source-app>\n");
+    out.write("      <ref-type name=\"" + entry.refType[0] + "\">" + entry.refType[1] + "</ref-type>\n");
+    if (!r.authors.isEmpty()) {
+      String authorsTag = entry.secondaryAuthors ? "secondary-authors" : "authors";
+      out.write("      <contributors>\n        <" + authorsTag + ">\n");
+      for (String author : r.authors) {
+        out.write("          <author>" + escape(author) + "</author>\n");
+      }
+      out.write("        </" + authorsTag + ">\n      </contributors>\n");
+    }
+    if (r.title != null) {
+      out.write("      <titles>\n        <title>" + escape(r.title) + "</title>\n      </titles>\n");
+    }
+    if (r.year != null) {
+      out.write("      <dates>\n        <year>" + r.year + "</year>\n        <pub-dates>\n          <date>" + r.year
+                + "</date>\n        </pub-dates>\n      </dates>\n");
+    }
+    if (r.doi != null) {
+      out.write("      <electronic-resource-num>" + escape(r.doi) + "</electronic-resource-num>\n");
+    }
+    if (r.url != null) {
+      out.write("      <urls>\n        <web-urls>\n          <url>" + escape(r.url) + "</url>\n        </web-urls>\n      </urls>\n");
+    }
+    out.write("    </record>\n");
+  }
+
+  private static String escape(String s) {
+    StringBuilder sb = null;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      String replacement = c == '&' ? "&amp;" : c == '<' ? "&lt;" : c == '>' ? "&gt;" : c == '"' ? "&quot;" : null;
+      if (replacement != null && sb == null) sb = new StringBuilder(s.substring(0, i));
+      if (sb != null) {
+        if (replacement != null) sb.append(replacement);
+        else sb.append(c);
+      }
+    }
+    return sb != null ? sb.toString() : s;
+  }
+
+  // Usage: SyntheticBibliography <output.xml> <records> [seed]
+  public static void main(String[] args) throws IOException {
+    SyntheticBibliographyConfig config = new SyntheticBibliographyConfig();
+    if (args.length > 2) config.seed = Long.parseLong(args[2]);
+    long count = Long.parseLong(args[1]);
+    long start = System.currentTimeMillis();
+    new SyntheticBibliography(config).writeZoteroXml(new File(args[0]), count);
+    System.out.println("Wrote " + count + " records to " + args[0] + " in " + (System.currentTimeMillis() - start) + "ms");
+  }
+}
@@ -0,0 +1,42 @@
+package lof.research.lab;
+
+/**
+ * Shape of the bibliographies SyntheticBibliography generates. The defaults are close to gsbbib__pretty.xml. Rates
+ * are probabilities per record.
+ */
+public class SyntheticBibliographyConfig {
+  // Equal seeds and configs generate identical bibliographies.
+  public long seed = 42;
+
+  // Relative weight of each author count: index 0 is records with no authors at all.
+  public double[] authorCountWeights = {0.02, 0.55, 0.25, 0.10, 0.05, 0.03};
+  // Authors listed under secondary-authors (editors) rather than authors, which the parser falls back to.
+  public double secondaryAuthorRate = 0.05;
+  // Distinct surnames, and the Zipf exponent of how often each appears. Prolific authors make the citation
+  // matcher's blocks uneven the way real ones are.
+  public int surnamePoolSize = 20000;
+  public double authorSkew = 1.1;
+  // Surnames with a non-ASCII letter, which canonical IDs have to normalize away.
+  public double diacriticRate = 0.05;
+
+  public int minTitleWords = 2;
+  public int maxTitleWords = 14;
+  // Titles of the form "Title: Subtitle".
+  public double subtitleRate = 0.4;
+  public int titleVocabularySize = 50000;
+  public double titleSkew = 1.0;
+
+  public int minYear = 1900;
+  public int maxYear = 2024;
+  public double missingYearRate = 0.03;
+  public double missingDoiRate = 0.7;
+  public double missingUrlRate = 0.6;
+
+  // Exact re-emissions of a recent record, as when the same item is exported twice.
+  public double duplicateRate = 0.02;
+  // Different records that share a recent record's first author, year and first three title words, and so its
+  // canonical ID.
+  public double idCollisionRate = 0.01;
+  // How many recent records duplicates and collisions are drawn from. Bounds memory for very large runs.
+  public int recentWindow = 1024;
+}
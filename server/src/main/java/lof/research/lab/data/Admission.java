@@ -0,0 +1,27 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * A scheduler decision: start the next count jobs from the owner's interactive or batch queue.
+ */
+public class Admission implements RamaSerializable {
+  public String owner;
+  public Boolean interactive;
+  public Integer count;
+
+  public Admission() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public Admission(String owner, Boolean interactive, Integer count) {
+    this.owner = owner;
+    this.interactive = interactive;
+    this.count = count;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Admission{owner='%s', interactive=%s, count=%d}", owner, interactive, count);
+  }
+}
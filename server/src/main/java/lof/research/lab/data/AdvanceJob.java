@@ -0,0 +1,20 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * Runs the next step of a job's state machine if the job is still at the given version.
+ */
+public class AdvanceJob implements RamaSerializable {
+  public String jobId;
+  public Integer version;
+
+  public AdvanceJob() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public AdvanceJob(String jobId, Integer version) {
+    this.jobId = jobId;
+    this.version = version;
+  }
+}
@@ -0,0 +1,53 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+import lof.restapi.exa.data.DeadLetter;
+
+/**
+ * An output of a research job in $$jobResults: a gathered search result or page, or the synthesis. A step that
+ * failed is still recorded, with the failure in place of content, so the job can move on.
+ *
+ * Large content is moved out to $$artifactChunks by ArtifactStore, leaving content null and a manifest and preview
+ * in its place. Use ArtifactStore.open to read content either way.
+ */
+public class Artifact implements RamaSerializable {
+  public String key;
+  public String kind;
+  public String content;
+  public ArtifactManifest manifest;
+  // The start of the content, kept inline when the content is chunked.
+  public String preview;
+  public DeadLetter failure;
+  public Long createdAtMillis;
+
+  public Artifact() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public Artifact(String key, String kind, String content, DeadLetter failure) {
+    this.key = key;
+    this.kind = kind;
+    this.content = content;
+    this.failure = failure;
+    this.createdAtMillis = System.currentTimeMillis();
+  }
+
+  public Artifact withChunkedContent(ArtifactManifest manifest, String preview) {
+    Artifact ret = new Artifact();
+    ret.key = key;
+    ret.kind = kind;
+    ret.failure = failure;
+    ret.createdAtMillis = createdAtMillis;
+    ret.manifest = manifest;
+    ret.preview = preview;
+    return ret;
+  }
+
+  public String inlineText() {
+    return content != null ? content : preview;
+  }
+
+  public boolean succeeded() {
+    return failure == null;
+  }
+}
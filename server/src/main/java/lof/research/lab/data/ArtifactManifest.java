@@ -0,0 +1,25 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * Where a large artifact's content lives: chunkCount chunks of chunkBytes (the last may be shorter) under
+ * contentHash in $$artifactChunks.
+ */
+public class ArtifactManifest implements RamaSerializable {
+  public String contentHash;
+  public Long totalBytes;
+  public Integer chunkBytes;
+  public Integer chunkCount;
+
+  public ArtifactManifest() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public ArtifactManifest(String contentHash, Long totalBytes, Integer chunkBytes, Integer chunkCount) {
+    this.contentHash = contentHash;
+    this.totalBytes = totalBytes;
+    this.chunkBytes = chunkBytes;
+    this.chunkCount = chunkCount;
+  }
+}
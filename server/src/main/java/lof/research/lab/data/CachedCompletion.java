@@ -0,0 +1,24 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * A model response in $$llmCache, keyed by the fingerprint of the request that produced it.
+ */
+public class CachedCompletion implements RamaSerializable {
+  public String fingerprint;
+  public String response;
+  public Long createdAtMillis;
+  public Long expiresAtMillis;
+
+  public CachedCompletion() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public CachedCompletion(String fingerprint, String response, Long createdAtMillis, Long expiresAtMillis) {
+    this.fingerprint = fingerprint;
+    this.response = response;
+    this.createdAtMillis = createdAtMillis;
+    this.expiresAtMillis = expiresAtMillis;
+  }
+}
@@ -0,0 +1,25 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * A citation extracted from a paper: sourceId cites targetId. Both are canonical record IDs.
+ */
+public class CitationEdge implements RamaSerializable {
+  public String sourceId;
+  public String targetId;
+
+  public CitationEdge() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public CitationEdge(String sourceId, String targetId) {
+    this.sourceId = sourceId;
+    this.targetId = targetId;
+  }
+
+  @Override
+  public String toString() {
+    return sourceId + " -> " + targetId;
+  }
+}
@@ -0,0 +1,10 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+
+public enum JobState implements RamaSerializable {
+  PLANNING,
+  GATHERING,
+  SYNTHESIZING,
+  COMPLETE
+}
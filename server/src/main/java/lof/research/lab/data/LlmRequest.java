@@ -0,0 +1,24 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A single-turn chat completion request. params holds sampling options such as temperature, passed through to the
+ * model API as top-level fields.
+ */
+public class LlmRequest implements RamaSerializable {
+  public String model;
+  public String prompt;
+  public Map<String, Object> params = new TreeMap<>();
+
+  public LlmRequest() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public LlmRequest(String model, String prompt) {
+    this.model = model;
+    this.prompt = prompt;
+  }
+}
@@ -0,0 +1,52 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * Every recordSeeder microbatch that started in one telemetry bucket, summed up, along with the slowest of them.
+ */
+public class MicrobatchBucket implements RamaSerializable {
+  public Long bucketStartMillis;
+  public Long batches = 0L;
+  public Long records = 0L;
+  public Long pstateWrites = 0L;
+  public Long totalProcessingMillis = 0L;
+  public Long maxRecords = 0L;
+  public Integer maxPartitionsTouched = 0;
+  public MicrobatchStats slowest;
+
+  public MicrobatchBucket() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public MicrobatchBucket(Long bucketStartMillis) {
+    this.bucketStartMillis = bucketStartMillis;
+  }
+
+  public MicrobatchBucket copy() {
+    MicrobatchBucket ret = new MicrobatchBucket(bucketStartMillis);
+    ret.batches = batches;
+    ret.records = records;
+    ret.pstateWrites = pstateWrites;
+    ret.totalProcessingMillis = totalProcessingMillis;
+    ret.maxRecords = maxRecords;
+    ret.maxPartitionsTouched = maxPartitionsTouched;
+    ret.slowest = slowest;
+    return ret;
+  }
+
+  public double meanRecords() {
+    return batches == 0 ? 0 : (double) records / batches;
+  }
+
+  public double meanProcessingMillis() {
+    return batches == 0 ? 0 : (double) totalProcessingMillis / batches;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("MicrobatchBucket{bucketStartMillis=%d, batches=%d, records=%d, pstateWrites=%d, meanProcessingMillis=%.1f, maxRecords=%d, maxPartitionsTouched=%d, slowest=%s}",
+                         bucketStartMillis, batches, records, pstateWrites, meanProcessingMillis(), maxRecords,
+                         maxPartitionsTouched, slowest);
+  }
+}
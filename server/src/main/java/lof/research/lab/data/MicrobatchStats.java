@@ -0,0 +1,34 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * One recordSeeder microbatch: when it started, how long it took end to end, how many records it seeded, how many
+ * PState writes they cost and how many partitions they were written to.
+ */
+public class MicrobatchStats implements RamaSerializable {
+  public Long startedAtMillis;
+  public Long processingMillis;
+  public Long records;
+  public Long pstateWrites;
+  public Integer partitionsTouched;
+
+  public MicrobatchStats() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public MicrobatchStats(Long startedAtMillis, Long processingMillis, Long records, Long pstateWrites,
+                         Integer partitionsTouched) {
+    this.startedAtMillis = startedAtMillis;
+    this.processingMillis = processingMillis;
+    this.records = records;
+    this.pstateWrites = pstateWrites;
+    this.partitionsTouched = partitionsTouched;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("MicrobatchStats{startedAtMillis=%d, processingMillis=%d, records=%d, pstateWrites=%d, partitionsTouched=%d}",
+                         startedAtMillis, processingMillis, records, pstateWrites, partitionsTouched);
+  }
+}
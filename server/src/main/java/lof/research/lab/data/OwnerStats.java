@@ -0,0 +1,36 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * Per-owner queued and running job counts, kept by the research job scheduler.
+ */
+public class OwnerStats implements RamaSerializable {
+  public Integer queuedInteractive = 0;
+  public Integer queuedBatch = 0;
+  public Integer running = 0;
+
+  public OwnerStats() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public OwnerStats(Integer queuedInteractive, Integer queuedBatch, Integer running) {
+    this.queuedInteractive = queuedInteractive;
+    this.queuedBatch = queuedBatch;
+    this.running = running;
+  }
+
+  public OwnerStats copy() {
+    return new OwnerStats(queuedInteractive, queuedBatch, running);
+  }
+
+  public int queued(boolean interactive) {
+    return interactive ? queuedInteractive : queuedBatch;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("OwnerStats{queuedInteractive=%d, queuedBatch=%d, running=%d}",
+                         queuedInteractive, queuedBatch, running);
+  }
+}
@@ -0,0 +1,32 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parts of a raw reference string the citation matcher works with. surname and titleTokens are already
+ * normalized the same way Record.generateCanonicalId normalizes them.
+ */
+public class ParsedReference implements RamaSerializable {
+  public String raw;
+  public String surname;
+  public Integer year;
+  public List<String> titleTokens;
+
+  public ParsedReference() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public ParsedReference(String raw, String surname, Integer year, List<String> titleTokens) {
+    this.raw = raw;
+    this.surname = surname;
+    this.year = year;
+    this.titleTokens = titleTokens != null ? new ArrayList<>(titleTokens) : new ArrayList<>();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ParsedReference{surname='%s', year=%s, titleTokens=%s}", surname, year, titleTokens);
+  }
+}
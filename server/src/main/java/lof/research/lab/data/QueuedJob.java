@@ -0,0 +1,24 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * A research job waiting in an owner's run queue.
+ */
+public class QueuedJob implements RamaSerializable {
+  public String jobId;
+  public String owner;
+  public Boolean interactive;
+  public Long enqueuedAtMillis;
+
+  public QueuedJob() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public QueuedJob(String jobId, String owner, Boolean interactive) {
+    this.jobId = jobId;
+    this.owner = owner;
+    this.interactive = interactive;
+    this.enqueuedAtMillis = System.currentTimeMillis();
+  }
+}
@@ -0,0 +1,26 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * Per-paper state of the incremental citation-influence computation: the settled rank and the residual mass that
+ * has not been pushed to the papers it cites yet.
+ */
+public class RankState implements RamaSerializable {
+  public Double rank;
+  public Double residual;
+
+  public RankState() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public RankState(Double rank, Double residual) {
+    this.rank = rank;
+    this.residual = residual;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("RankState{rank=%.6f, residual=%.6f}", rank, residual);
+  }
+}
@@ -34,21 +34,7 @@ public class Record implements RamaSerializable {
     StringBuilder id = new StringBuilder();
 
     // 1. First author's last name (or "unknown")
-    String authorPart = "unknown";
-    if (authors != null && !authors.isEmpty()) {
-      String firstAuthor = authors.get(0);
-      // Extract last name (assume "LastName, FirstName" or "FirstName LastName" format)
-      String[] parts = firstAuthor.split(",");
-      if (parts.length > 0) {
-        authorPart = parts[0].trim();
-      } else {
-        String[] spaceParts = firstAuthor.split(" ");
-        if (spaceParts.length > 0) {
-          authorPart = spaceParts[spaceParts.length - 1];
-        }
-      }
-      authorPart = normalize(authorPart);
-    }
+    String authorPart = firstAuthorPart(authors);
     id.append(authorPart);
 
     // 2. Year (or "nodate")
@@ -75,10 +61,36 @@ public class Record implements RamaSerializable {
     return id.toString();
   }
 
+  /**
+   * First-author part of a canonical ID: the normalized text before the first comma, or "unknown". That's the surname
+   * for "LastName, FirstName" authors but the whole name for "FirstName LastName" ones. Stored IDs depend on it, so
+   * it stays that way; use firstAuthorSurname for the surname itself.
+   */
+  public static String firstAuthorPart(List<String> authors) {
+    if (authors == null || authors.isEmpty()) return "unknown";
+    String firstAuthor = authors.get(0);
+    int comma = firstAuthor.indexOf(',');
+    return normalize(comma >= 0 ? firstAuthor.substring(0, comma) : firstAuthor);
+  }
+
+  /**
+   * Normalized last name of the first author in either "LastName, FirstName" or "FirstName LastName" form, or
+   * "unknown". Shared with the citation matcher's blocking keys so a reference and the record it cites block
+   * together.
+   */
+  public static String firstAuthorSurname(List<String> authors) {
+    if (authors == null || authors.isEmpty()) return "unknown";
+    String firstAuthor = authors.get(0).trim();
+    int comma = firstAuthor.indexOf(',');
+    if (comma >= 0) return normalize(firstAuthor.substring(0, comma));
+    String[] words = firstAuthor.split("\\s+");
+    return normalize(words[words.length - 1]);
+  }
+
   /**
    * Normalize a string: lowercase, remove punctuation, trim
    */
-  private String normalize(String s) {
+  public static String normalize(String s) {
     if (s == null) return "";
     return s.toLowerCase()
             .replaceAll("[^a-z0-9]", "")
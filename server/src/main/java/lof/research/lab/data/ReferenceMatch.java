@@ -0,0 +1,25 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * A raw reference resolved to a known record, with the similarity score of the match.
+ */
+public class ReferenceMatch implements RamaSerializable {
+  public String canonicalId;
+  public Double score;
+
+  public ReferenceMatch() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public ReferenceMatch(String canonicalId, Double score) {
+    this.canonicalId = canonicalId;
+    this.score = score;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ReferenceMatch{id='%s', score=%.3f}", canonicalId, score);
+  }
+}
@@ -0,0 +1,61 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of a research job in $$researchJobs. version increases with every transition and is checked against the
+ * AdvanceJob that triggers the next one, so a stale or duplicated AdvanceJob is ignored.
+ */
+public class ResearchJob implements RamaSerializable {
+  public String jobId;
+  public String owner;
+  public String question;
+  public JobState state;
+  public Integer version;
+  // Seeds for planning, from the SubmitJob.
+  public List<String> queries;
+  public List<String> urls;
+  // Gathering steps, e.g. "search:<query>" or "fetch:<url>". Filled in during planning.
+  public List<String> steps;
+  public Long submittedAtMillis;
+  public Long updatedAtMillis;
+
+  public ResearchJob() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public ResearchJob(SubmitJob submission, Long submittedAtMillis) {
+    this.jobId = submission.jobId;
+    this.owner = submission.owner;
+    this.question = submission.question;
+    this.state = JobState.PLANNING;
+    this.version = 0;
+    this.queries = new ArrayList<>(submission.queries);
+    this.urls = new ArrayList<>(submission.urls);
+    this.steps = new ArrayList<>();
+    this.submittedAtMillis = submittedAtMillis;
+    this.updatedAtMillis = submittedAtMillis;
+  }
+
+  public ResearchJob advance(JobState next) {
+    ResearchJob ret = new ResearchJob();
+    ret.jobId = jobId;
+    ret.owner = owner;
+    ret.question = question;
+    ret.state = next;
+    ret.version = version + 1;
+    ret.queries = queries;
+    ret.urls = urls;
+    ret.steps = steps;
+    ret.submittedAtMillis = submittedAtMillis;
+    ret.updatedAtMillis = System.currentTimeMillis();
+    return ret;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ResearchJob{id='%s', state=%s, version=%d, steps=%d}", jobId, state, version, steps.size());
+  }
+}
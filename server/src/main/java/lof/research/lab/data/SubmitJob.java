@@ -0,0 +1,35 @@
+package lof.research.lab.data;
+
+import com.rpl.rama.RamaSerializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts a research job. queries and urls seed the plan; a job with neither searches for its question.
+ *
+ * Jobs are scheduled fairly across owners. interactive puts the job in its owner's low-latency lane; when null, small
+ * jobs are treated as interactive (see SchedulerConfig).
+ */
+public class SubmitJob implements RamaSerializable {
+  public String jobId;
+  public String owner = "default";
+  public Boolean interactive;
+  public String question;
+  public List<String> queries = new ArrayList<>();
+  public List<String> urls = new ArrayList<>();
+
+  public SubmitJob() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public SubmitJob(String jobId, String question) {
+    this.jobId = jobId;
+    this.question = question;
+  }
+
+  public SubmitJob(String jobId, String owner, String question) {
+    this.jobId = jobId;
+    this.owner = owner;
+    this.question = question;
+  }
+}
@@ -0,0 +1,55 @@
+package lof.restapi.exa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*
+ * Runs an async function over a list of inputs with at most maxConcurrency calls outstanding. Each completion starts
+ * the next pending input, so concurrency stays at the bound until the inputs run out. Results are gathered with
+ * CompletableFuture.allOf and returned in input order.
+ */
+public class BoundedFanOut {
+  public static <T, R> CompletableFuture<List<R>> run(List<T> inputs, int maxConcurrency,
+                                                      Function<T, CompletableFuture<R>> fn) {
+    int n = inputs.size();
+    List<CompletableFuture<R>> slots = new ArrayList<>(n);
+    for(int i = 0; i < n; i++) {
+      slots.add(new CompletableFuture<>());
+    }
+    AtomicInteger next = new AtomicInteger();
+    int workers = Math.max(1, Math.min(maxConcurrency, n));
+    for(int i = 0; i < workers; i++) {
+      launchNext(inputs, slots, next, fn);
+    }
+    return CompletableFuture.allOf(slots.toArray(new CompletableFuture[0]))
+                            .thenApply(v -> {
+                              List<R> ret = new ArrayList<>(n);
+                              for(CompletableFuture<R> f: slots) {
+                                ret.add(f.join());
+                              }
+                              return ret;
+                            });
+  }
+
+  private static <T, R> void launchNext(List<T> inputs, List<CompletableFuture<R>> slots, AtomicInteger next,
+                                        Function<T, CompletableFuture<R>> fn) {
+    int i = next.getAndIncrement();
+    if(i >= inputs.size()) return;
+    CompletableFuture<R> slot = slots.get(i);
+    CompletableFuture<R> result;
+    try {
+      result = fn.apply(inputs.get(i));
+    } catch(RuntimeException e) {
+      result = new CompletableFuture<>();
+      result.completeExceptionally(e);
+    }
+    result.whenComplete((r, error) -> {
+      if(error != null) slot.completeExceptionally(error);
+      else slot.complete(r);
+      launchNext(inputs, slots, next, fn);
+    });
+  }
+}
@@ -0,0 +1,102 @@
+package lof.restapi.exa;
+
+import java.util.function.LongSupplier;
+
+/*
+ * Per-endpoint circuit breaker. After failureThreshold consecutive retryable failures the circuit opens and requests
+ * to the endpoint fail fast for openMillis. After that a single probe request is let through (half-open): success
+ * closes the circuit, failure re-opens it.
+ *
+ * HTTP responses complete on AsyncHttpClient's event loop threads rather than the task thread, so all state changes
+ * are synchronized.
+ *
+ * Callers that find the circuit open wait for millisUntilAvailable() rather than spending a retry attempt, so work
+ * that arrives during an outage is delayed instead of dead-lettered.
+ */
+public class CircuitBreaker {
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+
+  private final int _failureThreshold;
+  private final long _openMillis;
+  private final LongSupplier _clock;
+
+  private State _state = State.CLOSED;
+  private int _consecutiveFailures = 0;
+  private long _openedAtMillis = 0;
+  private boolean _probeInFlight = false;
+
+  public CircuitBreaker(int failureThreshold, long openMillis) {
+    this(failureThreshold, openMillis, System::currentTimeMillis);
+  }
+
+  // The clock is only substituted in tests.
+  public CircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+    _failureThreshold = failureThreshold;
+    _openMillis = openMillis;
+    _clock = clock;
+  }
+
+  /**
+   * Returns true if a request may be sent now. In the half-open state only one probe is allowed at a time.
+   */
+  public synchronized boolean tryAcquire() {
+    if(_state == State.OPEN) {
+      if(_clock.getAsLong() - _openedAtMillis < _openMillis) return false;
+      _state = State.HALF_OPEN;
+      _probeInFlight = false;
+    }
+    if(_state == State.HALF_OPEN) {
+      if(_probeInFlight) return false;
+      _probeInFlight = true;
+    }
+    return true;
+  }
+
+  /**
+   * Records that the endpoint responded. Terminal errors like a 400 also count, since the endpoint itself is healthy.
+   */
+  public synchronized void recordSuccess() {
+    _state = State.CLOSED;
+    _consecutiveFailures = 0;
+    _probeInFlight = false;
+  }
+
+  /**
+   * Gives back a half-open probe claimed by tryAcquire for a request that was never sent, leaving the state and the
+   * failure count as they were.
+   */
+  public synchronized void releaseProbe() {
+    _probeInFlight = false;
+  }
+
+  public synchronized void recordFailure() {
+    _consecutiveFailures++;
+    if(_state == State.HALF_OPEN || _consecutiveFailures >= _failureThreshold) {
+      _state = State.OPEN;
+      _openedAtMillis = _clock.getAsLong();
+      _probeInFlight = false;
+    }
+  }
+
+  /**
+   * Whether a request would currently be considered, without claiming the half-open probe. Used for load balancing.
+   */
+  public synchronized boolean isAvailable() {
+    if(_state == State.OPEN) return _clock.getAsLong() - _openedAtMillis >= _openMillis;
+    return _state == State.CLOSED || !_probeInFlight;
+  }
+
+  /**
+   * How long until tryAcquire could next succeed: 0 when it could now, the rest of the open period when open. While a
+   * half-open probe is in flight its result isn't known in advance, so this is a tenth of the open period.
+   */
+  public synchronized long millisUntilAvailable() {
+    if(_state == State.OPEN) return Math.max(0, _openedAtMillis + _openMillis - _clock.getAsLong());
+    if(_state == State.HALF_OPEN && _probeInFlight) return Math.max(1, _openMillis / 10);
+    return 0;
+  }
+
+  public synchronized State getState() {
+    return _state;
+  }
+}
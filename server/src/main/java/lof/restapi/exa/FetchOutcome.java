@@ -0,0 +1,72 @@
+package lof.restapi.exa;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+import org.asynchttpclient.Response;
+import lof.restapi.exa.data.DeadLetter;
+
+/*
+ * Result of an HTTP call made through AsyncHttpClientTaskGlobal, after retries. Failures are values rather than
+ * exceptions so that a terminal failure completes the topology event (and is dead-lettered) instead of failing it
+ * and causing the depot record to be retried immediately.
+ */
+public class FetchOutcome {
+  public final String endpoint;
+  public final boolean success;
+  public final boolean retryable;
+  public final Integer statusCode;
+  public final String body;
+  public final String reason;
+  public final int attempts;
+
+  private FetchOutcome(String endpoint, boolean success, boolean retryable, Integer statusCode, String body,
+                       String reason, int attempts) {
+    this.endpoint = endpoint;
+    this.success = success;
+    this.retryable = retryable;
+    this.statusCode = statusCode;
+    this.body = body;
+    this.reason = reason;
+    this.attempts = attempts;
+  }
+
+  // A call that waited maxCircuitWaitMillis for open circuits. attempts counts only the requests actually sent.
+  public static FetchOutcome circuitOpen(String endpoint, int attempts) {
+    return new FetchOutcome(endpoint, false, true, null, null, "circuit open", attempts);
+  }
+
+  public static FetchOutcome terminal(String endpoint, String reason, int attempts) {
+    return new FetchOutcome(endpoint, false, false, null, null, reason, attempts);
+  }
+
+  /**
+   * Classifies a completed request. Connection errors, timeouts, 429 and 5xx responses are retryable; any other
+   * non-2xx response is terminal since repeating the same request won't change the answer.
+   */
+  public static FetchOutcome classify(String endpoint, int attempt, Response response, Throwable error) {
+    if(error != null) {
+      Throwable cause = unwrap(error);
+      boolean retryable = cause instanceof IOException || cause instanceof TimeoutException;
+      return new FetchOutcome(endpoint, false, retryable, null, null, String.valueOf(cause), attempt);
+    }
+    int status = response.getStatusCode();
+    if(status >= 200 && status < 300) {
+      return new FetchOutcome(endpoint, true, false, status, response.getResponseBody(), null, attempt);
+    }
+    boolean retryable = status == 429 || status >= 500;
+    return new FetchOutcome(endpoint, false, retryable, status, null, "HTTP " + status, attempt);
+  }
+
+  private static Throwable unwrap(Throwable t) {
+    while(t instanceof CompletionException && t.getCause() != null) {
+      t = t.getCause();
+    }
+    return t;
+  }
+
+  public DeadLetter toDeadLetter(String key) {
+    return new DeadLetter(key, endpoint, reason, statusCode, attempts, retryable, System.currentTimeMillis());
+  }
+}
@@ -0,0 +1,49 @@
+package lof.restapi.exa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.rpl.rama.RamaSerializable;
+
+/*
+ * Configuration for AsyncHttpClientTaskGlobal. It's serialized along with the task global and resolved once per task
+ * in prepareForTask, so nothing here is looked up on the request path.
+ *
+ * Search requests are load balanced round-robin across searchEndpoints, skipping endpoints whose circuit breaker is
+ * open. Retries go to the next endpoint in the rotation.
+ */
+public class HttpClientConfig implements RamaSerializable {
+  public static final String EXA_SEARCH_URL = "https://api.exa.ai/search";
+
+  public List<String> searchEndpoints = new ArrayList<>(Arrays.asList(EXA_SEARCH_URL));
+  // When null, the key is read from the apiKeyEnvVar environment variable when the task starts.
+  public String apiKey;
+  public String apiKeyEnvVar = "EXA_API_KEY";
+
+  public int connectTimeoutMillis = 5000;
+  public int requestTimeoutMillis = 20000;
+  public int maxConnectionsPerHost = 64;
+  public int maxConnections = 256;
+
+  // Default bound on concurrent searches for a SearchBatch that doesn't set its own.
+  public int batchMaxConcurrency = 8;
+
+  public RetryPolicy retryPolicy = new RetryPolicy();
+  public int breakerFailureThreshold = 5;
+  public long breakerOpenMillis = 10000;
+  // How long a call may wait in total for open circuits to close before it's dead-lettered. Waiting doesn't use up
+  // retry attempts.
+  public long maxCircuitWaitMillis = 60000;
+
+  public HttpClientConfig() {}
+
+  public HttpClientConfig(List<String> searchEndpoints, String apiKey) {
+    this.searchEndpoints = new ArrayList<>(searchEndpoints);
+    this.apiKey = apiKey;
+  }
+
+  public static HttpClientConfig forEndpoint(String searchUrl, String apiKey) {
+    return new HttpClientConfig(Arrays.asList(searchUrl), apiKey);
+  }
+}
@@ -0,0 +1,201 @@
+package lof.restapi.exa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import lof.restapi.exa.data.LineHunk;
+import lof.restapi.exa.data.PageVersion;
+
+/*
+ * Delta encoding for crawled page versions. Each crawl that changes a page stores line-level hunks against the
+ * version before it, and every BASE_INTERVAL versions a full base is stored, so reconstructing any version applies at
+ * most BASE_INTERVAL - 1 deltas. A page that changes a little between crawls costs roughly the size of the changed
+ * lines per version.
+ *
+ * Diffs trim the common prefix and suffix, then align what's left by LCS with Hirschberg's algorithm, which needs three
+ * rows of the LCS table rather than the whole table, so memory is linear in the number of lines. Time is still
+ * proportional to the table's size, so above MAX_DIFF_CELLS the LCS is skipped and the middle is replaced as one
+ * hunk. That delta is usually large enough that nextVersion stores a base instead.
+ */
+public class PageVersions {
+  public static final int BASE_INTERVAL = 16;
+  // About 15ms of LCS on the task thread in the worst case.
+  public static final long MAX_DIFF_CELLS = 1_000_000;
+  // Rough per-hunk storage overhead, used to decide when a delta isn't worth it.
+  private static final int HUNK_OVERHEAD = 16;
+
+  private static String[] lines(String text) {
+    return text.split("\n", -1);
+  }
+
+  public static List<LineHunk> diff(String oldText, String newText) {
+    String[] a = lines(oldText);
+    String[] b = lines(newText);
+    int prefix = 0;
+    while(prefix < a.length && prefix < b.length && a[prefix].equals(b[prefix])) prefix++;
+    int suffix = 0;
+    while(suffix < a.length - prefix && suffix < b.length - prefix
+          && a[a.length - 1 - suffix].equals(b[b.length - 1 - suffix])) suffix++;
+    int n = a.length - prefix - suffix;
+    int m = b.length - prefix - suffix;
+
+    List<LineHunk> ret = new ArrayList<>();
+    if(n == 0 && m == 0) return ret;
+    if(n == 0 || m == 0 || (long) n * m > MAX_DIFF_CELLS) {
+      ret.add(new LineHunk(prefix, n, Arrays.asList(b).subList(prefix, prefix + m)));
+      return ret;
+    }
+
+    // Lines are compared as IDs, so the LCS compares ints rather than strings.
+    Map<String, Integer> ids = new HashMap<>();
+    int[] x = new int[n];
+    int[] y = new int[m];
+    for(int k = 0; k < n; k++) x[k] = ids.computeIfAbsent(a[prefix + k], line -> ids.size());
+    for(int k = 0; k < m; k++) y[k] = ids.computeIfAbsent(b[prefix + k], line -> ids.size());
+    // matchOf[i] is the line of the middle of b that line i of the middle of a is aligned with, or -1.
+    int[] matchOf = new int[n];
+    Arrays.fill(matchOf, -1);
+    align(x, 0, n, y, 0, m, matchOf, new int[m + 1], new int[m + 1], new int[m + 1]);
+
+    int i = 0;
+    int j = 0;
+    int hunkStart = -1;
+    int deleted = 0;
+    List<String> inserted = new ArrayList<>();
+    while(i < n || j < m) {
+      if(i < n && matchOf[i] == j) {
+        if(hunkStart >= 0) {
+          ret.add(new LineHunk(hunkStart, deleted, inserted));
+          hunkStart = -1;
+          deleted = 0;
+          inserted = new ArrayList<>();
+        }
+        i++;
+        j++;
+        continue;
+      }
+      if(hunkStart < 0) hunkStart = prefix + i;
+      if(i < n && matchOf[i] < 0) {
+        deleted++;
+        i++;
+      } else {
+        inserted.add(b[prefix + j]);
+        j++;
+      }
+    }
+    if(hunkStart >= 0) ret.add(new LineHunk(hunkStart, deleted, inserted));
+    return ret;
+  }
+
+  // Hirschberg: splits x in half, finds where an LCS crosses the middle from the LCS lengths of the top half
+  // against every prefix of y and of the bottom half against every suffix, and recurses on the two quarters.
+  private static void align(int[] x, int xLo, int xHi, int[] y, int yLo, int yHi, int[] matchOf, int[] row,
+                            int[] prev, int[] top) {
+    if(xLo == xHi || yLo == yHi) return;
+    if(xHi - xLo == 1) {
+      for(int j = yLo; j < yHi; j++) {
+        if(x[xLo] == y[j]) {
+          matchOf[xLo] = j;
+          return;
+        }
+      }
+      return;
+    }
+    int xMid = (xLo + xHi) >>> 1;
+    int width = yHi - yLo;
+    System.arraycopy(lcsLengths(x, xLo, xMid, y, yLo, yHi, false, row, prev), 0, top, 0, width + 1);
+    int[] bottom = lcsLengths(x, xMid, xHi, y, yLo, yHi, true, row, prev);
+    int split = 0;
+    int best = -1;
+    for(int k = 0; k <= width; k++) {
+      int total = top[k] + bottom[width - k];
+      if(total > best) {
+        best = total;
+        split = k;
+      }
+    }
+    align(x, xLo, xMid, y, yLo, yLo + split, matchOf, row, prev, top);
+    align(x, xMid, xHi, y, yLo + split, yHi, matchOf, row, prev, top);
+  }
+
+  // LCS lengths of x[xLo, xHi) against the first k lines of y[yLo, yHi) for every k, or with reversed set, of the
+  // reversed ranges. Returns one of the two scratch rows.
+  private static int[] lcsLengths(int[] x, int xLo, int xHi, int[] y, int yLo, int yHi, boolean reversed, int[] row,
+                                  int[] prev) {
+    int width = yHi - yLo;
+    Arrays.fill(prev, 0, width + 1, 0);
+    for(int i = 0; i < xHi - xLo; i++) {
+      int xi = reversed ? x[xHi - 1 - i] : x[xLo + i];
+      row[0] = 0;
+      for(int k = 1; k <= width; k++) {
+        int yk = reversed ? y[yHi - k] : y[yLo + k - 1];
+        row[k] = xi == yk ? prev[k - 1] + 1 : Math.max(prev[k], row[k - 1]);
+      }
+      int[] t = prev;
+      prev = row;
+      row = t;
+    }
+    return prev;
+  }
+
+  public static String apply(String oldText, List<LineHunk> hunks) {
+    String[] a = lines(oldText);
+    List<String> out = new ArrayList<>(a.length);
+    int pos = 0;
+    for(LineHunk hunk: hunks) {
+      for(; pos < hunk.start; pos++) out.add(a[pos]);
+      out.addAll(hunk.inserted);
+      pos += hunk.deleted;
+    }
+    for(; pos < a.length; pos++) out.add(a[pos]);
+    return String.join("\n", out);
+  }
+
+  private static long deltaSize(List<LineHunk> hunks) {
+    long ret = 0;
+    for(LineHunk hunk: hunks) {
+      ret += HUNK_OVERHEAD;
+      for(String line: hunk.inserted) ret += line.length() + 1;
+    }
+    return ret;
+  }
+
+  /**
+   * Builds the version to store for a fetch, given the page's previous body and its latest stored version (a map of
+   * at most one entry). Returns null if the fetch failed or the page is unchanged, so nothing is stored.
+   */
+  public static PageVersion nextVersion(FetchOutcome outcome, String previousBody, SortedMap<Long, PageVersion> latest) {
+    if(!outcome.success || outcome.body == null) return null;
+    String body = outcome.body;
+    long now = System.currentTimeMillis();
+    if(latest == null || latest.isEmpty() || previousBody == null) return PageVersion.base(now, body);
+    if(body.equals(previousBody)) return null;
+
+    // Versions are keyed by fetch time, which must increase along the chain.
+    PageVersion last = latest.get(latest.lastKey());
+    long fetchedAt = Math.max(now, latest.lastKey() + 1);
+    if(last.deltasSinceBase + 1 >= BASE_INTERVAL) return PageVersion.base(fetchedAt, body);
+    List<LineHunk> hunks = diff(previousBody, body);
+    if(deltaSize(hunks) * 2 >= body.length()) return PageVersion.base(fetchedAt, body);
+    return PageVersion.delta(fetchedAt, last.deltasSinceBase + 1, hunks);
+  }
+
+  /**
+   * Reconstructs the newest version in a window of consecutive versions that contains its base. Returns null for an
+   * empty window.
+   */
+  public static String reconstruct(SortedMap<Long, PageVersion> window) {
+    if(window == null) return null;
+    String ret = null;
+    for(Map.Entry<Long, PageVersion> e: window.entrySet()) {
+      PageVersion version = e.getValue();
+      if(version.isBase()) ret = version.body;
+      else if(ret != null) ret = apply(ret, version.hunks);
+    }
+    return ret;
+  }
+}
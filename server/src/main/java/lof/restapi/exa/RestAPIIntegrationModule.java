@@ -1,9 +1,17 @@
 package lof.restapi.exa;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import com.rpl.rama.*;
 import com.rpl.rama.integration.*;
@@ -11,10 +19,14 @@ import com.rpl.rama.module.*;
 import com.rpl.rama.helpers.TopologyUtils.ExtractJavaField;
 import com.rpl.rama.ops.*;
 import org.asynchttpclient.*;
-import org.asynchttpclient.netty.NettyResponse;
+import lof.restapi.exa.data.BatchSearchResult;
+import lof.restapi.exa.data.DeadLetter;
+import lof.restapi.exa.data.PageVersion;
+import lof.restapi.exa.data.SearchBatch;
 import lof.restapi.exa.data.SearchRequest;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import lof.metrics.Metrics;
+import lof.metrics.MetricsConfig;
+import lof.metrics.MetricsTaskGlobal;
 
 /*
  * This module demonstrates integrating Rama with an external service, in this case a REST API.
@@ -35,24 +47,222 @@ public class RestAPIIntegrationModule implements RamaModule {
   //  - https://github.com/redplanetlabs/rama-kafka
   //   This example is using AsyncHttpClient as a demonstration of integrating with any Java API. From this example you can
   // see how you'd interact with external databases, monitoring systems, or other tools as well.
+  //   On top of the raw client, the task global guards every call with a per-endpoint circuit breaker and retries
+  // retryable failures with exponential backoff and jitter. A call that finds a circuit open waits for it without
+  // using up an attempt. Calls made through "execute" never fail the topology event: once retries or
+  // maxCircuitWaitMillis are exhausted, or the failure is terminal, they complete with a failed FetchOutcome which
+  // the topology records in a dead-letter PState.
+  //   Endpoints, the API key and client tuning come from an HttpClientConfig, resolved once per task in
+  // prepareForTask. This keeps environment lookups off the request path and lets tests and benchmarks point the
+  // module at local stand-ins.
   public static class AsyncHttpClientTaskGlobal implements TaskGlobalObject {
+    public final HttpClientConfig config;
     public AsyncHttpClient client;
 
+    private String _apiKey;
+    private Endpoint[] _searchEndpoints;
+    private AtomicInteger _nextSearchEndpoint;
+    private Map<String, CircuitBreaker> _breakers;
+    private ScheduledExecutorService _retryScheduler;
+
+    public AsyncHttpClientTaskGlobal() {
+      this(new HttpClientConfig());
+    }
+
+    public AsyncHttpClientTaskGlobal(HttpClientConfig config) {
+      this.config = config;
+    }
+
+    public AsyncHttpClientTaskGlobal(String searchUrl, String apiKey) {
+      this(HttpClientConfig.forEndpoint(searchUrl, apiKey));
+    }
+
     @Override
     public void prepareForTask(int taskId, TaskGlobalContext context) {
-      client = Dsl.asyncHttpClient();
+      client = Dsl.asyncHttpClient(Dsl.config()
+                                      .setConnectTimeout(config.connectTimeoutMillis)
+                                      .setRequestTimeout(config.requestTimeoutMillis)
+                                      .setMaxConnectionsPerHost(config.maxConnectionsPerHost)
+                                      .setMaxConnections(config.maxConnections));
+      _apiKey = config.apiKey != null ? config.apiKey : System.getenv(config.apiKeyEnvVar);
+      _searchEndpoints = new Endpoint[config.searchEndpoints.size()];
+      for(int i = 0; i < _searchEndpoints.length; i++) {
+        _searchEndpoints[i] = Endpoint.of(config.searchEndpoints.get(i));
+      }
+      // Starting the rotation at the task ID spreads tasks across endpoints from the first request.
+      _nextSearchEndpoint = new AtomicInteger(taskId);
+      _breakers = new ConcurrentHashMap<>();
+      _retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "http-retry-task-" + taskId);
+        t.setDaemon(true);
+        return t;
+      });
+    }
+
+    public CircuitBreaker breakerFor(String endpoint) {
+      return _breakers.computeIfAbsent(endpoint, e -> new CircuitBreaker(config.breakerFailureThreshold,
+                                                                         config.breakerOpenMillis));
+    }
+
+    public CompletableFuture<FetchOutcome> get(String url) {
+      Endpoint endpoint;
+      try {
+        endpoint = Endpoint.of(url);
+      } catch(IllegalArgumentException e) {
+        return CompletableFuture.completedFuture(FetchOutcome.terminal(url, e.getMessage(), 0));
+      }
+      return execute(() -> endpoint, client::prepareGet);
+    }
+
+    // Without an API key every search would be rejected, so it's dead-lettered without being sent. Throwing would
+    // fail the topology event and retry the depot record forever.
+    public CompletableFuture<FetchOutcome> search(SearchRequest req) {
+      if(_apiKey == null || _apiKey.isEmpty()) {
+        String reason = config.apiKeyEnvVar + " env var must be set for Exa search";
+        String endpoint = _searchEndpoints.length > 0 ? _searchEndpoints[0].key : null;
+        return CompletableFuture.completedFuture(FetchOutcome.terminal(endpoint, reason, 0));
+      }
+      String body = SearchRequestEncoder.encode(req);
+      return execute(this::nextSearchEndpoint, url ->
+        client.preparePost(url)
+              .setHeader("accept", "application/json")
+              .setHeader("content-type", "application/json")
+              .setHeader("x-api-key", _apiKey)
+              .setBody(body));
+    }
+
+    /**
+     * Runs many searches with at most maxConcurrency in flight, returning outcomes in request order.
+     */
+    public CompletableFuture<List<FetchOutcome>> searchAll(List<SearchRequest> requests, Integer maxConcurrency) {
+      int bound = maxConcurrency != null ? maxConcurrency : config.batchMaxConcurrency;
+      return BoundedFanOut.run(requests, bound, this::search);
+    }
+
+    // Round-robin over the endpoint pool, skipping endpoints whose circuit is open. If every circuit is open the
+    // next endpoint in rotation is returned and "attempt" waits for its circuit.
+    private Endpoint nextSearchEndpoint() {
+      int n = _searchEndpoints.length;
+      int start = Math.floorMod(_nextSearchEndpoint.getAndIncrement(), n);
+      for(int i = 0; i < n; i++) {
+        Endpoint e = _searchEndpoints[(start + i) % n];
+        if(breakerFor(e.key).isAvailable()) return e;
+      }
+      return _searchEndpoints[start];
+    }
+
+    /**
+     * Runs the request built for the endpoint chosen by the selector, retrying according to the configured retry
+     * policy. Both functions are invoked once per attempt, so retries can move to a different endpoint.
+     */
+    public CompletableFuture<FetchOutcome> execute(Supplier<Endpoint> selector,
+                                                   Function<String, BoundRequestBuilder> request) {
+      CompletableFuture<FetchOutcome> ret = new CompletableFuture<>();
+      attempt(selector, request, 1, System.currentTimeMillis() + config.maxCircuitWaitMillis, ret);
+      return ret;
+    }
+
+    private void attempt(Supplier<Endpoint> selector, Function<String, BoundRequestBuilder> request, int attempt,
+                         long circuitDeadlineMillis, CompletableFuture<FetchOutcome> ret) {
+      Endpoint endpoint = selector.get();
+      CircuitBreaker breaker = breakerFor(endpoint.key);
+      if(!breaker.tryAcquire()) {
+        waitForCircuit(selector, request, attempt, circuitDeadlineMillis, endpoint, breaker, ret);
+        return;
+      }
+      CompletableFuture<Response> response;
+      try {
+        response = request.apply(endpoint.url).execute().toCompletableFuture();
+      } catch(RuntimeException e) {
+        // The request never left this process, so the endpoint isn't judged, only a half-open probe is given back.
+        breaker.releaseProbe();
+        ret.complete(FetchOutcome.terminal(endpoint.key, String.valueOf(e), attempt));
+        return;
+      }
+      response.whenComplete((r, error) -> {
+        FetchOutcome outcome = FetchOutcome.classify(endpoint.key, attempt, r, error);
+        if(outcome.success || !outcome.retryable) breaker.recordSuccess();
+        else breaker.recordFailure();
+        retryOrComplete(selector, request, outcome, circuitDeadlineMillis, ret);
+      });
+    }
+
+    // Nothing was sent, so the same attempt is made again once the circuit could let it through. The jitter keeps
+    // every waiting call from arriving at the moment the circuit half-opens.
+    private void waitForCircuit(Supplier<Endpoint> selector, Function<String, BoundRequestBuilder> request,
+                                int attempt, long circuitDeadlineMillis, Endpoint endpoint, CircuitBreaker breaker,
+                                CompletableFuture<FetchOutcome> ret) {
+      long delay = breaker.millisUntilAvailable() + config.retryPolicy.delayMillis(1);
+      if(System.currentTimeMillis() + delay > circuitDeadlineMillis) {
+        ret.complete(FetchOutcome.circuitOpen(endpoint.key, attempt - 1));
+      } else {
+        _retryScheduler.schedule(() -> attempt(selector, request, attempt, circuitDeadlineMillis, ret),
+                                 delay,
+                                 TimeUnit.MILLISECONDS);
+      }
+    }
+
+    private void retryOrComplete(Supplier<Endpoint> selector, Function<String, BoundRequestBuilder> request,
+                                 FetchOutcome outcome, long circuitDeadlineMillis,
+                                 CompletableFuture<FetchOutcome> ret) {
+      RetryPolicy retryPolicy = config.retryPolicy;
+      if(outcome.success || !outcome.retryable || !retryPolicy.shouldRetry(outcome.attempts)) {
+        ret.complete(outcome);
+      } else {
+        _retryScheduler.schedule(() -> attempt(selector, request, outcome.attempts + 1, circuitDeadlineMillis, ret),
+                                 retryPolicy.delayMillis(outcome.attempts),
+                                 TimeUnit.MILLISECONDS);
+      }
     }
 
     @Override
     public void close() throws IOException {
+      _retryScheduler.shutdownNow();
       client.close();
     }
   }
 
+  // A URL together with the host:port key its circuit breaker is tracked under.
+  public static class Endpoint {
+    public final String url;
+    public final String key;
+
+    private Endpoint(String url, String key) {
+      this.url = url;
+      this.key = key;
+    }
+
+    public static Endpoint of(String url) {
+      URI uri;
+      try {
+        uri = URI.create(url);
+      } catch(IllegalArgumentException e) {
+        throw new IllegalArgumentException("invalid URL: " + url, e);
+      }
+      if(uri.getHost() == null) throw new IllegalArgumentException("URL has no host: " + url);
+      return new Endpoint(url, uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort());
+    }
+  }
+
   public static class ExtractQuery extends ExtractJavaField {
     public ExtractQuery() { super("query"); }
   }
 
+  public static class ExtractBatchId extends ExtractJavaField {
+    public ExtractBatchId() { super("batchId"); }
+  }
+
+  private final AsyncHttpClientTaskGlobal _httpClient;
+
+  public RestAPIIntegrationModule() {
+    this(new AsyncHttpClientTaskGlobal());
+  }
+
+  // Allows substituting the HTTP task global, e.g. to target a stub server in tests.
+  public RestAPIIntegrationModule(AsyncHttpClientTaskGlobal httpClient) {
+    _httpClient = httpClient;
+  }
+
   // This method is the entry point to all modules. It defines all depots, ETLs, PStates, and query topologies.
   @Override
   public void define(Setup setup, Topologies topologies) {
@@ -61,10 +271,16 @@ public class RestAPIIntegrationModule implements RamaModule {
     // processing in ETLs.
     setup.declareDepot("*getDepot", Depot.hashBy(Ops.IDENTITY));
     setup.declareDepot("*postDepot", Depot.hashBy(ExtractQuery.class));
+    // Batches of related searches, e.g. all the queries from one research plan, are processed as a single topology
+    // event instead of one event per query.
+    setup.declareDepot("*batchPostDepot", Depot.hashBy(ExtractBatchId.class));
     // This declares a task global with the given value. Since AsyncHttpClientTaskGlobal implements the TaskGlobalObject
     // interface, the value is specialized per task. Accessing the variable "*httpClient" in topologies always accesses the
     // value local to the task where the topology event is running.
-    setup.declareObject("*httpClient", new AsyncHttpClientTaskGlobal());
+    setup.declareObject("*httpClient", _httpClient);
+    // Latency, call and in-flight metrics for every request, see Metrics. In-flight counts include requests waiting
+    // on a connection or a retry backoff, so "http.get.inFlight" is the depth of the fetch queue.
+    Metrics.declare(setup, topologies, new MetricsConfig("restapi"));
 
     // Stream topologies process appended data within a few milliseconds and guarantee all data will be fully processed.
     StreamTopology s = topologies.stream("getHttp");
@@ -72,54 +288,101 @@ public class RestAPIIntegrationModule implements RamaModule {
     // and writes to PStates go to disk and are not purely in-memory operations.
     //   This PState stores the latest response for each URL, a map from a URL to the body of the HTTP response.
     s.pstate("$$responses", PState.mapSchema(String.class, String.class));
+    // Requests that failed terminally, or ran out of retries, are recorded here keyed the same way as "$$responses".
+    // A later successful request for the same key clears the entry.
+    s.pstate("$$deadLetters", PState.mapSchema(String.class, DeadLetter.class));
+    // The results of a batch search, keyed by batch ID. Successes and failures for every query in the batch are
+    // stored in one value so the whole batch is written in a single localTransform.
+    s.pstate("$$batchResponses", PState.mapSchema(String.class, BatchSearchResult.class));
+    // Every crawl that changed a page, keyed by URL and then fetch time. Most versions are stored as line-level deltas
+    // against the previous version, see PageVersions.
+    s.pstate(
+      "$$pageVersions",
+      PState.mapSchema(
+        String.class,
+        PState.mapSchema(Long.class, PageVersion.class).subindexed()));
     // This subscribes the ETL to "*getDepot", binding all URLs to the variable "*url". Because of the depot partitioner
     // on "*getDepot", computation starts on the same task where registration info is stored for that URL in
     // the "$$responses" PState.
     s.source("*getDepot").out("*url")
      // eachAsync integrates arbitrary asynchronous work represented by a CompletableFuture within a topology. It ties
-     // the success/failure of the asynchronous task with the success/failure of the topology. So if the asynchronous
-     // work fails or times out, the topology will fail as well and the depot record will be retried. eachAsync is a
-     // non-blocking operation.
-     .eachAsync((AsyncHttpClientTaskGlobal client, String url) ->
-                 client.client.prepareGet(url).execute().toCompletableFuture(),
-                "*httpClient", "*url").out("*response")
-     .each((RamaFunction1<NettyResponse, String>) NettyResponse::getResponseBody, "*response").out("*body")
-     // This records the latest response in the PState.
-     .localTransform("$$responses", Path.key("*url").termVal("*body"));
+     // the success/failure of the asynchronous task with the success/failure of the topology. The task global handles
+     // retries itself and always completes the future with a FetchOutcome, so an upstream outage results in
+     // dead-lettered records rather than a storm of immediate depot record retries. eachAsync is a non-blocking
+     // operation.
+     .eachAsync((AsyncHttpClientTaskGlobal client, MetricsTaskGlobal metrics, String url) ->
+                  metrics.timeAsync("http.get", () -> client.get(url)),
+                "*httpClient", "*metrics", "*url").out("*outcome")
+     // This must come before recordOutcome, which overwrites the previous body the delta is computed against.
+     .macro(recordPageVersion("*url", "*outcome"))
+     .macro(recordOutcome("*url", "*outcome"));
 
     // postDepot triggers a POST search to Exa based on the provided query.
     s.source("*postDepot").out("*searchRequest")
      .each((SearchRequest req) -> req.query, "*searchRequest").out("*query")
-     // eachAsync integrates arbitrary asynchronous work represented by a CompletableFuture within a topology. It ties
-     // the success/failure of the asynchronous task with the success/failure of the topology. So if the asynchronous
-     // work fails or times out, the topology will fail as well and the depot record will be retried. eachAsync is a
-     // non-blocking operation.
-     .eachAsync((AsyncHttpClientTaskGlobal client, SearchRequest req) -> {
-                 String apiKey = System.getenv("EXA_API_KEY");
-                 if(apiKey == null || apiKey.isEmpty()) {
-                   throw new IllegalStateException("EXA_API_KEY env var must be set for Exa search");
-                 }
-                 BoundRequestBuilder request = client.client.preparePost("https://api.exa.ai/search")
-                   .setHeader("accept", "application/json")
-                   .setHeader("content-type", "application/json")
-                   .setHeader("x-api-key", apiKey)
-                   .setBody(buildRequestBody(req));
-                 return request.execute().toCompletableFuture();
-               },
-               "*httpClient", "*searchRequest").out("*response")
-     .each((RamaFunction1<Response, String>) Response::getResponseBody, "*response").out("*body")
-     // This records the latest response in the PState.
-     .localTransform("$$responses", Path.key("*query").termVal("*body"));
+     .eachAsync((AsyncHttpClientTaskGlobal client, MetricsTaskGlobal metrics, SearchRequest req) ->
+                  metrics.timeAsync("http.search", () -> client.search(req)),
+                "*httpClient", "*metrics", "*searchRequest").out("*outcome")
+     .macro(recordOutcome("*query", "*outcome"));
+
+    // A batch fans out its searches with bounded concurrency inside a single eachAsync and gathers every outcome
+    // before writing, so a batch costs one topology event and one PState write regardless of its size.
+    s.source("*batchPostDepot").out("*batch")
+     .each((SearchBatch batch) -> batch.batchId, "*batch").out("*batchId")
+     .eachAsync((AsyncHttpClientTaskGlobal client, MetricsTaskGlobal metrics, SearchBatch batch) ->
+                  metrics.timeAsync("http.searchBatch", () -> client.searchAll(batch.requests, batch.maxConcurrency)),
+                "*httpClient", "*metrics", "*batch").out("*outcomes")
+     .each(RestAPIIntegrationModule::toBatchResult, "*batch", "*outcomes").out("*batchResult")
+     .localTransform("$$batchResponses", Path.key("*batchId").termVal("*batchResult"));
+
+    // Returns the page body as of the given time, or null if it hadn't been crawled yet. The window of versions
+    // ending at that time always includes the base they chain from, so this is a single PState read.
+    topologies.query("pageAsOf", "*url", "*asOfMillis").out("*body")
+              .hashPartition("*url")
+              .each((Long asOf) -> asOf + 1, "*asOfMillis").out("*endMillis")
+              .localSelect("$$pageVersions",
+                           Path.key("*url").sortedMapRangeTo("*endMillis", PageVersions.BASE_INTERVAL)).out("*window")
+              .each(PageVersions::reconstruct, "*window").out("*body")
+              .originPartition();
   }
 
-  private static String buildRequestBody(SearchRequest req) {
-    if(req.contents == null) {
-      req.contents = new HashMap<>();
+  private static BatchSearchResult toBatchResult(SearchBatch batch, List<FetchOutcome> outcomes) {
+    BatchSearchResult ret = new BatchSearchResult();
+    for(int i = 0; i < outcomes.size(); i++) {
+      String query = batch.requests.get(i).query;
+      FetchOutcome outcome = outcomes.get(i);
+      if(outcome.success) ret.results.put(query, outcome.body);
+      else ret.failures.put(query, outcome.toDeadLetter(query));
     }
-    if(!req.contents.containsKey("text")) {
-      req.contents.put("text", Boolean.TRUE);
-    }
-      Gson gson = new GsonBuilder().create();
-    return gson.toJson(req);
+    ret.completedAtMillis = System.currentTimeMillis();
+    return ret;
+  }
+
+  // Appends a version to the page's chain if the fetch succeeded and the body changed.
+  private static Block.Impl recordPageVersion(String urlVar, String outcomeVar) {
+    String previousVar = Helpers.genVar("previousBody");
+    String latestVar = Helpers.genVar("latestVersion");
+    String versionVar = Helpers.genVar("version");
+    String fetchedAtVar = Helpers.genVar("fetchedAt");
+    return Block.localSelect("$$responses", Path.key(urlVar)).out(previousVar)
+                .localSelect("$$pageVersions", Path.key(urlVar).sortedMapRangeTo(Long.MAX_VALUE, 1)).out(latestVar)
+                .each(PageVersions::nextVersion, outcomeVar, previousVar, latestVar).out(versionVar)
+                .ifTrue(new Expr(Ops.IS_NOT_NULL, versionVar),
+                  Block.each((PageVersion version) -> version.fetchedAtMillis, versionVar).out(fetchedAtVar)
+                       .localTransform("$$pageVersions", Path.key(urlVar, fetchedAtVar).termVal(versionVar)));
+  }
+
+  // Records the latest response body for the key on success, or a dead letter on failure.
+  private static Block.Impl recordOutcome(String keyVar, String outcomeVar) {
+    String successVar = Helpers.genVar("success");
+    String bodyVar = Helpers.genVar("body");
+    String deadLetterVar = Helpers.genVar("deadLetter");
+    return Block.each((FetchOutcome outcome) -> outcome.success, outcomeVar).out(successVar)
+                .ifTrue(successVar,
+                  Block.each((FetchOutcome outcome) -> outcome.body, outcomeVar).out(bodyVar)
+                       .localTransform("$$responses", Path.key(keyVar).termVal(bodyVar))
+                       .localTransform("$$deadLetters", Path.key(keyVar).termVoid()),
+                  Block.each((FetchOutcome outcome, String key) -> outcome.toDeadLetter(key), outcomeVar, keyVar).out(deadLetterVar)
+                       .localTransform("$$deadLetters", Path.key(keyVar).termVal(deadLetterVar)));
   }
 }
@@ -0,0 +1,37 @@
+package lof.restapi.exa;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.rpl.rama.RamaSerializable;
+
+/*
+ * Exponential backoff with "full jitter": the delay before retry n is uniformly random in
+ * [0, min(maxDelayMillis, baseDelayMillis * 2^(n-1))]. Randomizing the whole interval spreads out retries from many
+ * tasks that failed at the same moment, so a recovering upstream isn't hit by synchronized retry waves.
+ */
+public class RetryPolicy implements RamaSerializable {
+  public int maxAttempts = 4;
+  public long baseDelayMillis = 200;
+  public long maxDelayMillis = 5000;
+
+  public RetryPolicy() {}
+
+  public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+    this.maxAttempts = maxAttempts;
+    this.baseDelayMillis = baseDelayMillis;
+    this.maxDelayMillis = maxDelayMillis;
+  }
+
+  public boolean shouldRetry(int attempt) {
+    return attempt < maxAttempts;
+  }
+
+  /**
+   * Delay before the attempt following the given (1-based) attempt.
+   */
+  public long delayMillis(int attempt) {
+    int shift = Math.min(attempt - 1, 30);
+    long ceiling = Math.min(maxDelayMillis, baseDelayMillis << shift);
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+}
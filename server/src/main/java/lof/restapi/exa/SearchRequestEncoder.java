@@ -0,0 +1,187 @@
+package lof.restapi.exa;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import lof.restapi.exa.data.SearchRequest;
+
+/*
+ * Encodes SearchRequests into Exa request bodies.
+ *
+ * Gson instances are thread-safe and expensive to build, so a single instance is shared by every task thread. The
+ * SearchRequest adapter writes fields directly instead of going through Gson's reflective adapter, and applies the
+ * default "contents.text" setting while writing rather than by mutating the request. Each thread encodes into its
+ * own reusable buffer, so the only per-request allocations are the JsonWriter and the resulting String.
+ */
+public class SearchRequestEncoder {
+  private static final Gson GSON = new GsonBuilder()
+    .registerTypeAdapterFactory(new SearchRequestAdapterFactory())
+    .create();
+  private static final TypeAdapter<SearchRequest> ADAPTER = GSON.getAdapter(SearchRequest.class);
+
+  // Buffers that grew past this size are dropped rather than pinned to the thread forever.
+  private static final int MAX_RETAINED_BUFFER_CHARS = 64 * 1024;
+  private static final ThreadLocal<BufferWriter> BUFFER = ThreadLocal.withInitial(BufferWriter::new);
+
+  // The shared Gson, which also decodes SearchRequests.
+  public static Gson gson() {
+    return GSON;
+  }
+
+  public static String encode(SearchRequest req) {
+    BufferWriter buffer = BUFFER.get();
+    buffer.reset();
+    try {
+      JsonWriter writer = GSON.newJsonWriter(buffer);
+      ADAPTER.write(writer, req);
+      writer.flush();
+    } catch(IOException e) {
+      // BufferWriter never throws, so this can only be a bug in the adapter.
+      throw new IllegalStateException("Failed to encode search request", e);
+    }
+    String ret = buffer.toString();
+    if(buffer.capacity() > MAX_RETAINED_BUFFER_CHARS) {
+      BUFFER.remove();
+    }
+    return ret;
+  }
+
+  private static class SearchRequestAdapterFactory implements TypeAdapterFactory {
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      if(type.getRawType() != SearchRequest.class) return null;
+      TypeAdapter<SearchRequest> reflective = gson.getDelegateAdapter(this, TypeToken.get(SearchRequest.class));
+      return (TypeAdapter<T>) new SearchRequestAdapter(gson.getAdapter(Object.class), reflective);
+    }
+  }
+
+  /**
+   * Writes SearchRequest fields in declaration order, omitting nulls like Gson's default reflective adapter. Reading
+   * is left to the reflective adapter.
+   */
+  private static class SearchRequestAdapter extends TypeAdapter<SearchRequest> {
+    private final TypeAdapter<Object> _valueAdapter;
+    private final TypeAdapter<SearchRequest> _reflective;
+
+    SearchRequestAdapter(TypeAdapter<Object> valueAdapter, TypeAdapter<SearchRequest> reflective) {
+      _valueAdapter = valueAdapter;
+      _reflective = reflective;
+    }
+
+    @Override
+    public void write(JsonWriter out, SearchRequest req) throws IOException {
+      if(req == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      writeString(out, "query", req.query);
+      writeString(out, "type", req.type);
+      writeString(out, "category", req.category);
+      writeString(out, "userLocation", req.userLocation);
+      if(req.numResults != null) out.name("numResults").value(req.numResults);
+      writeStrings(out, "includeDomains", req.includeDomains);
+      writeStrings(out, "excludeDomains", req.excludeDomains);
+      writeString(out, "startCrawlDate", req.startCrawlDate);
+      writeString(out, "endCrawlDate", req.endCrawlDate);
+      writeString(out, "startPublishedDate", req.startPublishedDate);
+      writeString(out, "endPublishedDate", req.endPublishedDate);
+      writeStrings(out, "includeText", req.includeText);
+      writeStrings(out, "excludeText", req.excludeText);
+      if(req.context != null) out.name("context").value(req.context);
+      if(req.moderation != null) out.name("moderation").value(req.moderation);
+      writeContents(out, req.contents);
+      out.endObject();
+    }
+
+    // Exa only returns page text when asked, so "text" defaults to true unless the caller set it explicitly.
+    private void writeContents(JsonWriter out, Map<String, Object> contents) throws IOException {
+      out.name("contents").beginObject();
+      boolean hasText = false;
+      if(contents != null) {
+        for(Map.Entry<String, Object> e: contents.entrySet()) {
+          if("text".equals(e.getKey())) hasText = true;
+          out.name(e.getKey());
+          _valueAdapter.write(out, e.getValue());
+        }
+      }
+      if(!hasText) out.name("text").value(true);
+      out.endObject();
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+      if(value != null) out.name(name).value(value);
+    }
+
+    private static void writeStrings(JsonWriter out, String name, List<String> values) throws IOException {
+      if(values == null) return;
+      out.name(name).beginArray();
+      for(String v: values) {
+        out.value(v);
+      }
+      out.endArray();
+    }
+
+    @Override
+    public SearchRequest read(JsonReader in) throws IOException {
+      return _reflective.read(in);
+    }
+  }
+
+  /**
+   * Unsynchronized Writer over a StringBuilder. Unlike StringWriter it can be reset and reused.
+   */
+  private static class BufferWriter extends Writer {
+    private final StringBuilder _sb = new StringBuilder(1024);
+
+    void reset() {
+      _sb.setLength(0);
+    }
+
+    int capacity() {
+      return _sb.capacity();
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      _sb.append(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+      _sb.append(str, off, off + len);
+    }
+
+    @Override
+    public void write(int c) {
+      _sb.append((char) c);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+      _sb.append(csq);
+      return this;
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+
+    @Override
+    public String toString() {
+      return _sb.toString();
+    }
+  }
+}
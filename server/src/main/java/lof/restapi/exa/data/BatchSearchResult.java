@@ -0,0 +1,16 @@
+package lof.restapi.exa.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.rpl.rama.RamaSerializable;
+
+public class BatchSearchResult implements RamaSerializable {
+  // query -> response body
+  public Map<String, String> results = new HashMap<>();
+  // query -> failure details
+  public Map<String, DeadLetter> failures = new HashMap<>();
+  public Long completedAtMillis;
+
+  public BatchSearchResult() {}
+}
@@ -0,0 +1,26 @@
+package lof.restapi.exa.data;
+
+import com.rpl.rama.RamaSerializable;
+
+public class DeadLetter implements RamaSerializable {
+  public String key;
+  public String endpoint;
+  public String reason;
+  public Integer statusCode;
+  public Integer attempts;
+  public Boolean retryable;
+  public Long failedAtMillis;
+
+  public DeadLetter() {}
+
+  public DeadLetter(String key, String endpoint, String reason, Integer statusCode, Integer attempts,
+                    Boolean retryable, Long failedAtMillis) {
+    this.key = key;
+    this.endpoint = endpoint;
+    this.reason = reason;
+    this.statusCode = statusCode;
+    this.attempts = attempts;
+    this.retryable = retryable;
+    this.failedAtMillis = failedAtMillis;
+  }
+}
@@ -0,0 +1,21 @@
+package lof.restapi.exa.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.rpl.rama.RamaSerializable;
+
+// Replaces "deleted" lines of the previous version, starting at line "start", with "inserted".
+public class LineHunk implements RamaSerializable {
+  public Integer start;
+  public Integer deleted;
+  public List<String> inserted;
+
+  public LineHunk() {}
+
+  public LineHunk(Integer start, Integer deleted, List<String> inserted) {
+    this.start = start;
+    this.deleted = deleted;
+    this.inserted = new ArrayList<>(inserted);
+  }
+}
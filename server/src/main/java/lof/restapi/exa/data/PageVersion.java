@@ -0,0 +1,37 @@
+package lof.restapi.exa.data;
+
+import java.util.List;
+
+import com.rpl.rama.RamaSerializable;
+
+// One crawl of a page. A base version stores the full body; the versions after it store line-level hunks against
+// the version before them.
+public class PageVersion implements RamaSerializable {
+  public Long fetchedAtMillis;
+  // 0 for a base version
+  public Integer deltasSinceBase;
+  public String body;
+  public List<LineHunk> hunks;
+
+  public PageVersion() {}
+
+  public static PageVersion base(Long fetchedAtMillis, String body) {
+    PageVersion ret = new PageVersion();
+    ret.fetchedAtMillis = fetchedAtMillis;
+    ret.deltasSinceBase = 0;
+    ret.body = body;
+    return ret;
+  }
+
+  public static PageVersion delta(Long fetchedAtMillis, Integer deltasSinceBase, List<LineHunk> hunks) {
+    PageVersion ret = new PageVersion();
+    ret.fetchedAtMillis = fetchedAtMillis;
+    ret.deltasSinceBase = deltasSinceBase;
+    ret.hunks = hunks;
+    return ret;
+  }
+
+  public boolean isBase() {
+    return body != null;
+  }
+}
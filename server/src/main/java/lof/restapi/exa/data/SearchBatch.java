@@ -0,0 +1,20 @@
+package lof.restapi.exa.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.rpl.rama.RamaSerializable;
+
+public class SearchBatch implements RamaSerializable {
+  public String batchId;
+  public List<SearchRequest> requests;
+  // Upper bound on searches in flight at once for this batch. Defaults to the module's setting when null.
+  public Integer maxConcurrency;
+
+  public SearchBatch() {}
+
+  public SearchBatch(String batchId, List<SearchRequest> requests) {
+    this.batchId = batchId;
+    this.requests = new ArrayList<>(requests);
+  }
+}
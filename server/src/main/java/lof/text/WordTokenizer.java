@@ -0,0 +1,93 @@
+package lof.text;
+
+import com.rpl.rama.ops.OutputCollector;
+import com.rpl.rama.ops.RamaOperation1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Splits text into lowercase words, for use as a Rama operation:
+ *
+ *   .each(new WordTokenizer(), "*sentence").out("*word")
+ *
+ * A word is a run of letters, digits and combining marks in any script. Everything else separates words, including
+ * Unicode whitespace and punctuation, so runs of separators never produce empty words. An apostrophe between two
+ * letters stays in the word, as in "don't".
+ *
+ * The text is scanned once in place. The only allocation per word is the word itself, which is lowercased as it's
+ * copied out; a word already in lowercase is a plain substring.
+ */
+public class WordTokenizer implements RamaOperation1<String> {
+  @Override
+  public void invoke(String text, OutputCollector collector) {
+    tokenize(text, collector::emit);
+  }
+
+  public static List<String> tokens(CharSequence text) {
+    List<String> ret = new ArrayList<>();
+    tokenize(text, ret::add);
+    return ret;
+  }
+
+  public static void tokenize(CharSequence text, Consumer<String> words) {
+    if (text == null) return;
+    int length = text.length();
+    int start = -1;
+    boolean lowercase = true;
+    int i = 0;
+    while (i < length) {
+      int c = Character.codePointAt(text, i);
+      int next = i + Character.charCount(c);
+      boolean inWord = isWordChar(c)
+        || start >= 0 && isApostrophe(c) && next < length && Character.isLetter(Character.codePointAt(text, next));
+      if (inWord) {
+        if (start < 0) start = i;
+        if (lowercase && Character.toLowerCase(c) != c) lowercase = false;
+      } else if (start >= 0) {
+        words.accept(word(text, start, i, lowercase));
+        start = -1;
+        lowercase = true;
+      }
+      i = next;
+    }
+    if (start >= 0) words.accept(word(text, start, length, lowercase));
+  }
+
+  private static boolean isWordChar(int c) {
+    switch (Character.getType(c)) {
+      case Character.UPPERCASE_LETTER:
+      case Character.LOWERCASE_LETTER:
+      case Character.TITLECASE_LETTER:
+      case Character.MODIFIER_LETTER:
+      case Character.OTHER_LETTER:
+      case Character.DECIMAL_DIGIT_NUMBER:
+      case Character.LETTER_NUMBER:
+      case Character.OTHER_NUMBER:
+      case Character.NON_SPACING_MARK:
+      case Character.COMBINING_SPACING_MARK:
+      case Character.ENCLOSING_MARK:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isApostrophe(int c) {
+    return c == '\'' || c == '\u2019';
+  }
+
+  private static String word(CharSequence text, int start, int end, boolean lowercase) {
+    if (lowercase) return text.subSequence(start, end).toString();
+    char[] chars = new char[end - start];
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      // Letters outside the BMP are rare enough to take the slow path.
+      if (Character.isSurrogate(c)) return text.subSequence(start, end).toString().toLowerCase(Locale.ROOT);
+      chars[i - start] = Character.toLowerCase(c);
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,119 @@
+package lof.tracing;
+
+import com.rpl.rama.integration.*;
+import lof.tracing.data.Trace;
+import lof.tracing.data.TraceContext;
+import lof.tracing.data.TraceSpan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-task tracer, declared as "*tracer" by Tracing.declare.
+ *
+ * Every method takes and returns null for flows that aren't sampled, so an unsampled flow costs one random draw at
+ * its start and a null check per hop. Finished traces wait in a bounded queue until the traceFlush topology writes
+ * them to $$traces; when tracing can't keep up it drops traces rather than slow the flows it's tracing.
+ */
+public class TracerTaskGlobal implements TaskGlobalObject {
+  private static final long BASE_MICROS = System.currentTimeMillis() * 1000;
+  private static final long BASE_NANOS = System.nanoTime();
+
+  public final TracingConfig config;
+  // False for the tracer declared by Tracing.declareDisabled, which ignores trace IDs as well as sampling.
+  public final boolean enabled;
+
+  private int _taskId;
+  private ArrayBlockingQueue<Trace> _finished;
+  private AtomicLong _dropped;
+
+  public TracerTaskGlobal() {
+    this(new TracingConfig());
+  }
+
+  public TracerTaskGlobal(TracingConfig config) {
+    this(config, true);
+  }
+
+  private TracerTaskGlobal(TracingConfig config, boolean enabled) {
+    this.config = config;
+    this.enabled = enabled;
+  }
+
+  public static TracerTaskGlobal disabled() {
+    return new TracerTaskGlobal(new TracingConfig(), false);
+  }
+
+  @Override
+  public void prepareForTask(int taskId, TaskGlobalContext context) {
+    _taskId = taskId;
+    _finished = new ArrayBlockingQueue<>(config.pendingCapacity);
+    _dropped = new AtomicLong();
+  }
+
+  // Wall clock time in microseconds. Spans on different workers are only as comparable as the workers' clocks.
+  public static long nowMicros() {
+    return BASE_MICROS + (System.nanoTime() - BASE_NANOS) / 1000;
+  }
+
+  /**
+   * Starts a trace with the given ID, or samples whether to start one with a random ID when traceId is null.
+   */
+  public TraceContext start(String name, Long traceId) {
+    if (!enabled) return null;
+    if (traceId == null) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      if (random.nextDouble() >= config.sampleRate) return null;
+      traceId = random.nextLong();
+    }
+    TraceSpan root = new TraceSpan(ThreadLocalRandom.current().nextLong(), null, name, _taskId, null, nowMicros());
+    return new TraceContext(traceId, name, Collections.emptyList(), root);
+  }
+
+  public TraceContext sample(String name) {
+    return start(name, null);
+  }
+
+  // Called on the sending task just before a partitioner.
+  public TraceContext depart(TraceContext trace) {
+    if (trace == null) return null;
+    return trace.withCurrent(trace.current.ended(nowMicros()));
+  }
+
+  // Called on the receiving task just after a partitioner.
+  public TraceContext arrive(TraceContext trace, String spanName) {
+    if (trace == null) return null;
+    TraceSpan sent = trace.current;
+    TraceSpan span = new TraceSpan(ThreadLocalRandom.current().nextLong(), sent.spanId, spanName, _taskId,
+                                   sent.endMicros, nowMicros());
+    return trace.next(span);
+  }
+
+  public void finish(TraceContext trace) {
+    if (trace == null) return;
+    List<TraceSpan> spans = new ArrayList<>(trace.finished.size() + 1);
+    spans.addAll(trace.finished);
+    spans.add(trace.current.ended(nowMicros()));
+    if (!_finished.offer(new Trace(trace.traceId, trace.name, spans))) _dropped.incrementAndGet();
+  }
+
+  public List<Trace> drain() {
+    List<Trace> ret = new ArrayList<>();
+    _finished.drainTo(ret);
+    return ret;
+  }
+
+  public long dropped() {
+    return _dropped.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    // Nothing to release: pending traces are only held in memory.
+  }
+}
@@ -0,0 +1,139 @@
+package lof.tracing;
+
+import com.rpl.rama.*;
+import com.rpl.rama.module.*;
+import com.rpl.rama.ops.Ops;
+import lof.tracing.data.Trace;
+import lof.tracing.data.TraceSpan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opt-in sampled tracing of flows across partition hops. Call declare from define, then start a trace where a flow
+ * begins, replace each partitioner with its traced version and finish the trace where the flow ends:
+ *
+ *   .macro(Tracing.start("friendRequests", "*traceId", "*trace"))
+ *   ...
+ *   .macro(Tracing.hashPartition("*trace", "*incomingTrace", "incomingFriendRequests", "*toUserId"))
+ *   ...
+ *   .macro(Tracing.finish("*incomingTrace"))
+ *
+ * Each hop records a span: how long the hop took, and how long the flow then spent on the task it arrived at. Finished
+ * traces are flushed every flushMillis into $$traces, a ring buffer on each task holding its ringCapacity most recent
+ * traces. The trace query looks one up by ID and recentTraces lists what's there.
+ */
+public class Tracing {
+  public static void declare(Setup setup, Topologies topologies, TracingConfig config) {
+    setup.declareObject("*tracer", new TracerTaskGlobal(config));
+    setup.declareTickDepot("*tracesTick", config.flushMillis);
+
+    StreamTopology flush = topologies.stream("traceFlush");
+    // Ring slot -> Trace, and the number of traces ever written, whose remainder by ringCapacity is the next slot.
+    flush.pstate("$$traces", PState.mapSchema(Long.class, Trace.class));
+    flush.pstate("$$traceHead", Long.class).initialValue(0L);
+    flush.source("*tracesTick")
+         .allPartition()
+         .each((TracerTaskGlobal tracer) -> tracer.drain(), "*tracer").out("*finishedTraces")
+         .keepTrue(new Expr((List traces) -> !traces.isEmpty(), "*finishedTraces"))
+         .localSelect("$$traceHead", Path.stay()).out("*traceHead")
+         .each((Long head, List traces) -> head + traces.size(), "*traceHead", "*finishedTraces").out("*newTraceHead")
+         .localTransform("$$traceHead", Path.termVal("*newTraceHead"))
+         .each(Tracing::ringEntries, "*traceHead", "*finishedTraces", config.ringCapacity).out("*ringEntries")
+         .each(Ops.EXPLODE, "*ringEntries").out("*ringEntry")
+         .each(Ops.EXPAND, "*ringEntry").out("*ringSlot", "*trace")
+         .localTransform("$$traces", Path.key("*ringSlot").termVal("*trace"));
+
+    // The whole trace with the given ID, or null if it was never sampled or has been overwritten.
+    topologies.query("trace", "*traceId").out("*trace")
+              .allPartition()
+              .localSelect("$$traces", Path.mapVals()).out("*tracePath")
+              .keepTrue(new Expr((Trace t, Long traceId) -> t.traceId.equals(traceId), "*tracePath", "*traceId"))
+              .originPartition()
+              .agg(Agg.list("*tracePath")).out("*tracePaths")
+              .each(Tracing::merge, "*tracePaths").out("*trace");
+
+    // Up to limit of the most recently finished traces still in $$traces, newest first.
+    topologies.query("recentTraces", "*limit").out("*traces")
+              .allPartition()
+              .localSelect("$$traces", Path.mapVals()).out("*tracePath")
+              .originPartition()
+              .agg(Agg.list("*tracePath")).out("*tracePaths")
+              .each(Tracing::mergeAll, "*tracePaths", "*limit").out("*traces");
+  }
+
+  // Declares a *tracer that never starts a trace, and nothing else, for modules using the macros below with tracing
+  // off. Every traced partitioner is then a null check either side of the plain one.
+  public static void declareDisabled(Setup setup) {
+    setup.declareObject("*tracer", TracerTaskGlobal.disabled());
+  }
+
+  public static Block.Impl start(String name, String traceIdVar, String outTraceVar) {
+    return Block.each(TracerTaskGlobal::start, "*tracer", name, traceIdVar).out(outTraceVar);
+  }
+
+  // Starts a trace for the sampled fraction of flows, for flows with no trace ID of their own such as queries.
+  public static Block.Impl start(String name, String outTraceVar) {
+    return Block.each(TracerTaskGlobal::sample, "*tracer", name).out(outTraceVar);
+  }
+
+  public static Block.Impl hashPartition(String traceVar, String outTraceVar, String spanName, String keyVar) {
+    String departedVar = Helpers.genVar("departed");
+    return Block.each(TracerTaskGlobal::depart, "*tracer", traceVar).out(departedVar)
+                .hashPartition(keyVar)
+                .each(TracerTaskGlobal::arrive, "*tracer", departedVar, spanName).out(outTraceVar);
+  }
+
+  public static Block.Impl originPartition(String traceVar, String outTraceVar, String spanName) {
+    String departedVar = Helpers.genVar("departed");
+    return Block.each(TracerTaskGlobal::depart, "*tracer", traceVar).out(departedVar)
+                .originPartition()
+                .each(TracerTaskGlobal::arrive, "*tracer", departedVar, spanName).out(outTraceVar);
+  }
+
+  public static Block.Impl finish(String traceVar) {
+    return Block.each(TracerTaskGlobal::finish, "*tracer", traceVar);
+  }
+
+  // [slot, trace] for each trace in order, starting at the slot after head. Only the last ringCapacity can survive.
+  public static List<List<Object>> ringEntries(Long head, List<Trace> traces, Integer ringCapacity) {
+    List<List<Object>> ret = new ArrayList<>();
+    int skip = Math.max(0, traces.size() - ringCapacity);
+    for (int i = skip; i < traces.size(); i++) {
+      ret.add(Arrays.asList((head + i) % ringCapacity, traces.get(i)));
+    }
+    return ret;
+  }
+
+  /**
+   * Puts the paths of one trace back together. Spans shared by several paths appear once, with the latest end time
+   * any path recorded for them.
+   */
+  public static Trace merge(List<Trace> paths) {
+    if (paths == null || paths.isEmpty()) return null;
+    Map<Long, TraceSpan> spans = new LinkedHashMap<>();
+    for (Trace path : paths) {
+      for (TraceSpan s : path.spans) {
+        TraceSpan existing = spans.get(s.spanId);
+        if (existing == null || s.endMicros > existing.endMicros) spans.put(s.spanId, s);
+      }
+    }
+    List<TraceSpan> sorted = new ArrayList<>(spans.values());
+    sorted.sort(Comparator.comparing((TraceSpan s) -> s.startMicros));
+    Trace first = paths.get(0);
+    return new Trace(first.traceId, first.name, sorted);
+  }
+
+  public static List<Trace> mergeAll(List<Trace> paths, Integer limit) {
+    Map<Long, List<Trace>> byId = new LinkedHashMap<>();
+    for (Trace path : paths) byId.computeIfAbsent(path.traceId, id -> new ArrayList<>()).add(path);
+    List<Trace> ret = new ArrayList<>();
+    for (List<Trace> tracePaths : byId.values()) ret.add(merge(tracePaths));
+    ret.sort(Comparator.comparing((Trace t) -> t.endMicros).reversed());
+    return ret.size() > limit ? new ArrayList<>(ret.subList(0, limit)) : ret;
+  }
+}
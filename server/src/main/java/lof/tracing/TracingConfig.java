@@ -0,0 +1,23 @@
+package lof.tracing;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * Configuration for TracerTaskGlobal.
+ */
+public class TracingConfig implements RamaSerializable {
+  // Fraction of unrequested flows traced. Records or calls that carry a trace ID are always traced.
+  public double sampleRate = 0;
+  // Finished traces each task holds until the next flush. Traces finishing while it's full are dropped and counted.
+  public int pendingCapacity = 1024;
+  // Size of each task's ring buffer in $$traces.
+  public int ringCapacity = 256;
+  // How often each task flushes finished traces to $$traces.
+  public long flushMillis = 1000;
+
+  public TracingConfig() {}
+
+  public TracingConfig(double sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+}
@@ -0,0 +1,53 @@
+package lof.tracing.data;
+
+import com.rpl.rama.RamaSerializable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A finished trace, or one path of it. A flow that fans out finishes once per branch, and each branch's trace repeats
+ * the spans before the fan out; Tracing.merge puts the paths back together. Spans are in start order.
+ */
+public class Trace implements RamaSerializable {
+  public Long traceId;
+  public String name;
+  public Long startMicros;
+  public Long endMicros;
+  public List<TraceSpan> spans = new ArrayList<>();
+
+  public Trace() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public Trace(Long traceId, String name, List<TraceSpan> spans) {
+    this.traceId = traceId;
+    this.name = name;
+    this.spans = spans;
+    this.startMicros = spans.get(0).startMicros;
+    long end = startMicros;
+    for (TraceSpan s : spans) end = Math.max(end, s.endMicros);
+    this.endMicros = end;
+  }
+
+  public long durationMicros() {
+    return endMicros - startMicros;
+  }
+
+  // One line per span: offset from the start of the trace, hop time, time on the task, task ID and span name.
+  public String render() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("trace %016x %s %dus%n", traceId, name, durationMicros()));
+    for (TraceSpan s : spans) {
+      sb.append(String.format("  +%-8d hop %-6d took %-6d task %-4d %s%n",
+                              s.startMicros - startMicros, s.hopMicros(), s.durationMicros(), s.taskId, s.name));
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Trace{traceId=%016x, name=%s, durationMicros=%d, spans=%d}",
+                         traceId, name, durationMicros(), spans.size());
+  }
+}
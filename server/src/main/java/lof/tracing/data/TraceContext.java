@@ -0,0 +1,40 @@
+package lof.tracing.data;
+
+import com.rpl.rama.RamaSerializable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sampled flow in progress, carried from hop to hop in a dataflow var. Never modified in place, since a flow that
+ * fans out shares one context between all its branches.
+ */
+public class TraceContext implements RamaSerializable {
+  public Long traceId;
+  public String name;
+  public List<TraceSpan> finished;
+  public TraceSpan current;
+
+  public TraceContext() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public TraceContext(Long traceId, String name, List<TraceSpan> finished, TraceSpan current) {
+    this.traceId = traceId;
+    this.name = name;
+    this.finished = finished;
+    this.current = current;
+  }
+
+  public TraceContext withCurrent(TraceSpan span) {
+    return new TraceContext(traceId, name, finished, span);
+  }
+
+  // Finishes the current span, which must have ended, and starts next.
+  public TraceContext next(TraceSpan span) {
+    List<TraceSpan> spans = new ArrayList<>(finished.size() + 1);
+    spans.addAll(finished);
+    spans.add(current);
+    return new TraceContext(traceId, name, spans, span);
+  }
+}
@@ -0,0 +1,50 @@
+package lof.tracing.data;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * Time spent on one task between partition hops. sentAtMicros is when the previous span left its task, so
+ * startMicros - sentAtMicros is the time the hop itself took. Times are microseconds since the epoch.
+ */
+public class TraceSpan implements RamaSerializable {
+  public Long spanId;
+  public Long parentSpanId;
+  public String name;
+  public Integer taskId;
+  public Long sentAtMicros;
+  public Long startMicros;
+  public Long endMicros;
+
+  public TraceSpan() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public TraceSpan(Long spanId, Long parentSpanId, String name, Integer taskId, Long sentAtMicros, Long startMicros) {
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.name = name;
+    this.taskId = taskId;
+    this.sentAtMicros = sentAtMicros;
+    this.startMicros = startMicros;
+  }
+
+  public TraceSpan ended(long endMicros) {
+    TraceSpan ret = new TraceSpan(spanId, parentSpanId, name, taskId, sentAtMicros, startMicros);
+    ret.endMicros = endMicros;
+    return ret;
+  }
+
+  public long hopMicros() {
+    return sentAtMicros == null ? 0 : startMicros - sentAtMicros;
+  }
+
+  public long durationMicros() {
+    return endMicros == null ? 0 : endMicros - startMicros;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("TraceSpan{name=%s, taskId=%d, hopMicros=%d, durationMicros=%d}",
+                         name, taskId, hopMicros(), durationMicros());
+  }
+}
@@ -0,0 +1,113 @@
+package rama.examples.aggregators;
+
+import com.rpl.rama.RamaSerializable;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch of word counts: depth rows of width counters, with each word counted in one counter per row and
+ * estimated as the smallest of its counters.
+ *
+ * Estimates never undercount. With probability at least 1 - failureProbability() a word's estimate is at most
+ * errorBound() above its true count, where errorBound() is e / width of the total counted so far.
+ */
+public class CountMinSketch implements RamaSerializable {
+  public Integer width;
+  public Integer depth;
+  public Long total = 0L;
+  // Row-major, depth * width counters.
+  public long[] counters;
+
+  public CountMinSketch() {
+    // Default constructor required for RamaSerializable
+  }
+
+  public CountMinSketch(int width, int depth) {
+    this.width = width;
+    this.depth = depth;
+    this.counters = new long[width * depth];
+  }
+
+  public CountMinSketch copy() {
+    CountMinSketch ret = new CountMinSketch();
+    ret.width = width;
+    ret.depth = depth;
+    ret.total = total;
+    ret.counters = Arrays.copyOf(counters, counters.length);
+    return ret;
+  }
+
+  // Adds count occurrences of word and returns its new estimate.
+  public long add(String word, long count) {
+    long hash = hash(word);
+    long ret = Long.MAX_VALUE;
+    for(int row = 0; row < depth; row++) {
+      int i = index(hash, row);
+      counters[i] += count;
+      ret = Math.min(ret, counters[i]);
+    }
+    total += count;
+    return ret;
+  }
+
+  public long estimate(String word) {
+    long hash = hash(word);
+    long ret = Long.MAX_VALUE;
+    for(int row = 0; row < depth; row++) ret = Math.min(ret, counters[index(hash, row)]);
+    return ret;
+  }
+
+  public long errorBound() {
+    return (long) Math.ceil(Math.E / width * total);
+  }
+
+  public double failureProbability() {
+    return Math.exp(-depth);
+  }
+
+  // Sketches with the same width and depth can be merged, giving the sketch of everything either one counted.
+  public CountMinSketch merge(CountMinSketch other) {
+    if(!width.equals(other.width) || !depth.equals(other.depth)) {
+      throw new IllegalArgumentException("Can't merge a " + width + "x" + depth + " sketch with a " + other.width + "x"
+                                         + other.depth + " sketch");
+    }
+    CountMinSketch ret = copy();
+    for(int i = 0; i < counters.length; i++) ret.counters[i] += other.counters[i];
+    ret.total += other.total;
+    return ret;
+  }
+
+  // Smallest width whose error bound is at most epsilon of the total.
+  public static int widthFor(double epsilon) {
+    return (int) Math.ceil(Math.E / epsilon);
+  }
+
+  // Smallest depth whose failure probability is at most delta.
+  public static int depthFor(double delta) {
+    return (int) Math.ceil(Math.log(1 / delta));
+  }
+
+  // 64-bit FNV-1a over the word's chars. String.hashCode is too narrow: words that collide in it collide in every row.
+  private static long hash(String word) {
+    long h = 0xcbf29ce484222325L;
+    for(int i = 0; i < word.length(); i++) {
+      h ^= word.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+
+  // Each row remixes the hash with its own seed, so the rows behave as independent hash functions.
+  private int index(long hash, int row) {
+    long h = hash + (row + 1) * 0x9e3779b97f4a7c15L;
+    h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+    h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return row * width + (int) ((h >>> 1) % width);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CountMinSketch(width=%d, depth=%d, total=%d)", width, depth, total);
+  }
+}
@@ -0,0 +1,29 @@
+package rama.examples.aggregators;
+
+import com.rpl.rama.RamaSerializable;
+
+/**
+ * Configuration for TopNWordsModule's sketch mode.
+ */
+public class TopNSketchConfig implements RamaSerializable {
+  // Words each task tracks as its own top-K candidates. Needs to be at least the module's N.
+  public int candidatesPerPartition = 16;
+  // Count-Min sketch dimensions. The defaults overcount by at most 0.27% of the task's total, with 98% confidence, and
+  // make each task's sketch 32KB, which is rewritten once per microbatch.
+  public int sketchWidth = 1024;
+  public int sketchDepth = 4;
+
+  public TopNSketchConfig() {}
+
+  public TopNSketchConfig(int candidatesPerPartition) {
+    this.candidatesPerPartition = candidatesPerPartition;
+  }
+
+  // Sizes the sketch so estimates overcount by at most epsilon of the task's total with probability 1 - delta.
+  public static TopNSketchConfig withErrorBounds(int candidatesPerPartition, double epsilon, double delta) {
+    TopNSketchConfig ret = new TopNSketchConfig(candidatesPerPartition);
+    ret.sketchWidth = CountMinSketch.widthFor(epsilon);
+    ret.sketchDepth = CountMinSketch.depthFor(delta);
+    return ret;
+  }
+}
@@ -8,7 +8,30 @@ import com.rpl.rama.test.LaunchConfig;
 
 import java.util.*;
 
+/*
+ * Keeps the 3 most frequent words appended to *depot in $$topWords, as [word, count] tuples.
+ *
+ * By default every word is counted exactly in $$wordCounts and every count that changes in a microbatch is sent to
+ * the global partition, so that partition does work in proportion to the number of distinct words in the microbatch.
+ *
+ * In sketch mode each task instead counts its words in a Count-Min sketch and keeps its own top-K candidates, and
+ * only candidates whose estimates changed go to the global partition: at most K per task per microbatch. Since *depot
+ * is partitioned by word, each word is counted on a single task, so the global top N is the top N of the tasks'
+ * candidates as long as K >= N. $$topWords then holds [word, estimate, errorBound] tuples: the estimate is never below
+ * the word's count, and is above it by at most errorBound with probability 1 - e^-sketchDepth. $$maxCandidateUpdates
+ * records the most candidate updates any one microbatch has sent to the global partition.
+ */
 public class TopNWordsModule implements RamaModule {
+  private final TopNSketchConfig _sketch;
+
+  public TopNWordsModule() {
+    this(null);
+  }
+
+  public TopNWordsModule(TopNSketchConfig sketch) {
+    _sketch = sketch;
+  }
+
   private SubBatch wordCounts(String microbatchVar) {
     Block b = Block.explodeMicrobatch(microbatchVar).out("*word")
                    .hashPartition("*word")
@@ -19,13 +42,84 @@ public class TopNWordsModule implements RamaModule {
     return new SubBatch(b, "*word", "*count");
   }
 
+  // Runs on every task after the microbatch's words are counted into $$batchCounts on the tasks they were appended
+  // to: adds the task's counts to its sketch and emits the candidates whose estimates changed.
+  private Block.Impl candidateUpdates() {
+    return Block.allPartition()
+                .localSelect("$$batchCounts", Path.stay()).out("*batchCounts")
+                .keepTrue(new Expr((Map counts) -> counts != null && !counts.isEmpty(), "*batchCounts"))
+                .localSelect("$$wordSketch", Path.stay()).out("*wordSketch")
+                .localSelect("$$topCandidates", Path.stay()).out("*topCandidates")
+                .each(TopNWordsModule::updateCandidates, "*wordSketch", "*topCandidates", "*batchCounts",
+                      _sketch.candidatesPerPartition, _sketch.sketchWidth, _sketch.sketchDepth).out("*update")
+                .each(Ops.EXPAND, "*update").out("*newWordSketch", "*newTopCandidates", "*changed")
+                .localTransform("$$wordSketch", Path.termVal("*newWordSketch"))
+                .localTransform("$$topCandidates", Path.termVal("*newTopCandidates"))
+                .each(Ops.EXPLODE, "*changed").out("*tuple");
+  }
+
+  /**
+   * Adds a task's counts for one microbatch to its sketch and top-K candidates. Returns [sketch, candidates, changed]
+   * where changed has a [word, estimate, errorBound] tuple for each candidate added or updated.
+   *
+   * A candidate keeps the estimate it had when last updated: collisions with other words can raise its estimate in the
+   * sketch since, but its count can't have changed.
+   */
+  public static List<Object> updateCandidates(CountMinSketch sketch, Map<String, Long> candidates,
+                                              Map<String, Long> batchCounts, Integer k, Integer width,
+                                              Integer depth) {
+    CountMinSketch newSketch = sketch == null ? new CountMinSketch(width, depth) : sketch.copy();
+    Map<String, Long> newCandidates = candidates == null ? new HashMap<>() : new HashMap<>(candidates);
+    Set<String> changed = new HashSet<>();
+    String minWord = null;
+    for(Map.Entry<String, Long> e : batchCounts.entrySet()) {
+      String word = e.getKey();
+      long estimate = newSketch.add(word, e.getValue());
+      if(!newCandidates.containsKey(word) && newCandidates.size() >= k) {
+        // The least candidate only changes when it's evicted or updated, so it's found once per change rather than
+        // once per word.
+        if(minWord == null) minWord = leastCandidate(newCandidates);
+        if(estimate <= newCandidates.get(minWord)) continue;
+        newCandidates.remove(minWord);
+        changed.remove(minWord);
+        minWord = null;
+      } else if(word.equals(minWord)) {
+        minWord = null;
+      }
+      newCandidates.put(word, estimate);
+      changed.add(word);
+    }
+
+    long errorBound = newSketch.errorBound();
+    List<List<Object>> tuples = new ArrayList<>(changed.size());
+    for(String word : changed) tuples.add(Arrays.asList(word, newCandidates.get(word), errorBound));
+    return Arrays.asList(newSketch, newCandidates, tuples);
+  }
+
+  private static String leastCandidate(Map<String, Long> candidates) {
+    String ret = null;
+    long least = Long.MAX_VALUE;
+    for(Map.Entry<String, Long> e : candidates.entrySet()) {
+      if(e.getValue() < least) {
+        ret = e.getKey();
+        least = e.getValue();
+      }
+    }
+    return ret;
+  }
+
   @Override
   public void define(Setup setup, Topologies topologies) {
     setup.declareDepot("*depot", Depot.hashBy(Ops.IDENTITY));
 
     MicrobatchTopology mb = topologies.microbatch("topWords");
-    mb.pstate("$$wordCounts", PState.mapSchema(String.class, Long.class));
     mb.pstate("$$topWords", List.class).global();
+    if(_sketch == null) defineExact(mb);
+    else defineSketched(mb);
+  }
+
+  private void defineExact(MicrobatchTopology mb) {
+    mb.pstate("$$wordCounts", PState.mapSchema(String.class, Long.class));
 
     mb.source("*depot").out("*mb")
       .batchBlock(
@@ -39,6 +133,33 @@ public class TopNWordsModule implements RamaModule {
                      .sortValFunction(Ops.LAST)));
   }
 
+  private void defineSketched(MicrobatchTopology mb) {
+    mb.pstate("$$wordSketch", CountMinSketch.class);
+    // Word -> estimate, for this task's top K words.
+    mb.pstate("$$topCandidates", Map.class);
+    mb.pstate("$$maxCandidateUpdates", Long.class).global().initialValue(0L);
+
+    mb.source("*depot").out("*mb")
+      // No partitioner before the aggregation, so each task counts its own words into its own partition of the
+      // temporary $$batchCounts. Aggregating into a var instead would count every word on a single task.
+      .batchBlock(
+        Block.explodeMicrobatch("*mb").out("*word")
+             .compoundAgg(CompoundAgg.map("*word", Agg.count())).out("$$batchCounts"))
+      // Estimates only ever go up, so topMonotonic can keep the top N across microbatches.
+      .batchBlock(
+        candidateUpdates()
+             .globalPartition()
+             .agg("$$topWords",
+                  Agg.topMonotonic(3, "*tuple")
+                     .idFunction(Ops.FIRST)
+                     .sortValFunction((List tuple) -> tuple.get(1)))
+             .agg(Agg.count()).out("*candidateUpdates")
+             .localSelect("$$maxCandidateUpdates", Path.stay()).out("*maxCandidateUpdates")
+             .each((Long max, Long updates) -> Math.max(max, updates), "*maxCandidateUpdates", "*candidateUpdates")
+             .out("*newMaxCandidateUpdates")
+             .localTransform("$$maxCandidateUpdates", Path.termVal("*newMaxCandidateUpdates")));
+  }
+
   public static void main(String[] args) throws Exception {
     try(InProcessCluster cluster = InProcessCluster.create()) {
       RamaModule module = new TopNWordsModule();
@@ -2,6 +2,7 @@ package rama.examples.ramaspace;
 
 import com.rpl.rama.*;
 import com.rpl.rama.cluster.*;
+import lof.tracing.data.Trace;
 import rama.examples.ramaspace.data.*;
 import com.rpl.rama.ops.Ops;
 
@@ -23,6 +24,10 @@ public class RamaSpaceClient {
   private PState _profileViews;
 
   private QueryTopologyClient<Map<Long, ResolvedPost>> _resolvePosts;
+  // Only declared when the module is traced, so looked up on first use.
+  private ClusterManagerBase _cluster;
+  private QueryTopologyClient<Trace> _trace;
+  private QueryTopologyClient<List<Trace>> _recentTraces;
 
   public RamaSpaceClient(ClusterManagerBase cluster) {
     String moduleName = RamaSpaceModule.class.getName();
@@ -41,6 +46,7 @@ public class RamaSpaceClient {
     _profileViews = cluster.clusterPState(moduleName, "$$profileViews");
 
     _resolvePosts = cluster.clusterQuery(moduleName, "resolvePosts");
+    _cluster = cluster;
   }
 
 
@@ -87,6 +93,10 @@ public class RamaSpaceClient {
     _friendRequestsDepot.append(new FriendRequest(userId, toUserId));
   }
 
+  public void appendTracedFriendRequest(String userId, String toUserId, long traceId) {
+    _friendRequestsDepot.append(new FriendRequest(userId, toUserId).withTraceId(traceId));
+  }
+
   public void appendCancelFriendRequest(String userId, String toUserId) {
     _friendRequestsDepot.append(new CancelFriendRequest(userId, toUserId));
   }
@@ -160,4 +170,14 @@ public class RamaSpaceClient {
   public TreeMap<Long, ResolvedPost> resolvePosts(String userId, long index) {
     return new TreeMap(_resolvePosts.invoke(userId, index));
   }
+
+  public Trace getTrace(long traceId) {
+    if(_trace == null) _trace = _cluster.clusterQuery(RamaSpaceModule.class.getName(), "trace");
+    return _trace.invoke(traceId);
+  }
+
+  public List<Trace> getRecentTraces(int limit) {
+    if(_recentTraces == null) _recentTraces = _cluster.clusterQuery(RamaSpaceModule.class.getName(), "recentTraces");
+    return _recentTraces.invoke(limit);
+  }
 }
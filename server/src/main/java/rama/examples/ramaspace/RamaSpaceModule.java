@@ -4,12 +4,24 @@ import com.rpl.rama.*;
 import com.rpl.rama.helpers.TaskUniqueIdPState;
 import com.rpl.rama.helpers.TopologyUtils;
 import com.rpl.rama.module.*;
+import lof.tracing.Tracing;
+import lof.tracing.TracingConfig;
 import rama.examples.ramaspace.data.*;
 import com.rpl.rama.ops.Ops;
 
 import static com.rpl.rama.helpers.TopologyUtils.extractJavaFields;
 
 public class RamaSpaceModule implements RamaModule {
+  private final TracingConfig _tracing;
+
+  public RamaSpaceModule() {
+    this(null);
+  }
+
+  // tracing may be null, in which case nothing is traced and the traceFlush topology and its PStates aren't declared.
+  public RamaSpaceModule(TracingConfig tracing) {
+    _tracing = tracing;
+  }
 
   private static void declareUsersTopology(Topologies topologies) {
     StreamTopology users = topologies.stream("users");
@@ -63,35 +75,43 @@ public class RamaSpaceModule implements RamaModule {
         PState.setSchema(String.class).subindexed()));
 
     friends.source("*friendRequestsDepot").out("*request")
-           .macro(extractJavaFields("*request", "*userId", "*toUserId"))
+           .macro(extractJavaFields("*request", "*userId", "*toUserId", "*traceId"))
+           .macro(Tracing.start("friendRequests", "*traceId", "*trace"))
            .subSource("*request",
              SubSource.create(FriendRequest.class)
                       .compoundAgg("$$outgoingFriendRequests", CompoundAgg.map("*userId", Agg.set("*toUserId")))
-                      .hashPartition("*toUserId")
-                      .compoundAgg("$$incomingFriendRequests", CompoundAgg.map("*toUserId", Agg.set("*userId"))),
+                      .macro(Tracing.hashPartition("*trace", "*incomingTrace", "incomingFriendRequests", "*toUserId"))
+                      .compoundAgg("$$incomingFriendRequests", CompoundAgg.map("*toUserId", Agg.set("*userId")))
+                      .macro(Tracing.finish("*incomingTrace")),
              SubSource.create(CancelFriendRequest.class)
                       .compoundAgg("$$outgoingFriendRequests", CompoundAgg.map("*userId", Agg.setRemove("*toUserId")))
-                      .hashPartition("*toUserId")
-                      .compoundAgg("$$incomingFriendRequests", CompoundAgg.map("*toUserId", Agg.setRemove("*userId"))));
+                      .macro(Tracing.hashPartition("*trace", "*incomingTrace", "incomingFriendRequests", "*toUserId"))
+                      .compoundAgg("$$incomingFriendRequests", CompoundAgg.map("*toUserId", Agg.setRemove("*userId")))
+                      .macro(Tracing.finish("*incomingTrace")));
 
+    // Traced changes finish once per branch, as two paths of the same trace.
     friends.source("*friendshipChangesDepot").out("*change")
-           .macro(extractJavaFields("*change", "*userId1", "*userId2"))
+           .macro(extractJavaFields("*change", "*userId1", "*userId2", "*traceId"))
+           .macro(Tracing.start("friendshipChanges", "*traceId", "*trace"))
            .anchor("start")
            .compoundAgg("$$incomingFriendRequests", CompoundAgg.map("*userId1", Agg.setRemove("*userId2")))
            .compoundAgg("$$outgoingFriendRequests", CompoundAgg.map("*userId1", Agg.setRemove("*userId2")))
-           .hashPartition("*userId2")
+           .macro(Tracing.hashPartition("*trace", "*requestsTrace", "clearFriendRequests", "*userId2"))
            .compoundAgg("$$incomingFriendRequests", CompoundAgg.map("*userId2", Agg.setRemove("*userId1")))
            .compoundAgg("$$outgoingFriendRequests", CompoundAgg.map("*userId2", Agg.setRemove("*userId1")))
+           .macro(Tracing.finish("*requestsTrace"))
            .hook("start")
            .subSource("*change",
              SubSource.create(FriendshipAdd.class)
                       .compoundAgg("$$friends", CompoundAgg.map("*userId1", Agg.set("*userId2")))
-                      .hashPartition("*userId2")
-                      .compoundAgg("$$friends", CompoundAgg.map("*userId2", Agg.set("*userId1"))),
+                      .macro(Tracing.hashPartition("*trace", "*friendsTrace", "friends", "*userId2"))
+                      .compoundAgg("$$friends", CompoundAgg.map("*userId2", Agg.set("*userId1")))
+                      .macro(Tracing.finish("*friendsTrace")),
              SubSource.create(FriendshipRemove.class)
                       .compoundAgg("$$friends", CompoundAgg.map("*userId1", Agg.setRemove("*userId2")))
-                      .hashPartition("*userId2")
-                      .compoundAgg("$$friends", CompoundAgg.map("*userId2", Agg.setRemove("*userId1"))));
+                      .macro(Tracing.hashPartition("*trace", "*friendsTrace", "friends", "*userId2"))
+                      .compoundAgg("$$friends", CompoundAgg.map("*userId2", Agg.setRemove("*userId1")))
+                      .macro(Tracing.finish("*friendsTrace")));
   }
 
   private static void declarePostsTopology(Topologies topologies) {
@@ -159,21 +179,27 @@ public class RamaSpaceModule implements RamaModule {
     setup.declareDepot("*friendshipChangesDepot", Depot.hashBy(UserId1Extract.class));
     setup.declareDepot("*postsDepot", Depot.hashBy(ToUserIdExtract.class));
 
+    if(_tracing != null) Tracing.declare(setup, topologies, _tracing);
+    else Tracing.declareDisabled(setup);
+
     declareUsersTopology(topologies);
     declareFriendsTopology(topologies);
     declarePostsTopology(topologies);
     declareProfileViewsTopology(topologies);
 
+    // A sampled call is traced as one path per resolved post.
     topologies.query("resolvePosts", "*forUserId", "*startPostId").out("*resultMap")
-              .hashPartition("*forUserId")
+              .macro(Tracing.start("resolvePosts", "*trace"))
+              .macro(Tracing.hashPartition("*trace", "*postsTrace", "posts", "*forUserId"))
               .localSelect("$$posts", Path.key("*forUserId").sortedMapRangeFrom("*startPostId", 20)).out("*submap")
               .each(Ops.EXPLODE_MAP, "*submap").out("*i", "*post")
               .macro(extractJavaFields("*post", "*userId", "*content"))
-              .hashPartition("*userId")
+              .macro(Tracing.hashPartition("*postsTrace", "*profilesTrace", "profiles", "*userId"))
               .localSelect("$$profiles", Path.key("*userId", "displayName")).out("*displayName")
               .localSelect("$$profiles", Path.key("*userId", "profilePic")).out("*profilePic")
               .each(ResolvedPost::new, "*userId", "*content", "*displayName", "*profilePic").out("*resolvedPost")
-              .originPartition()
+              .macro(Tracing.originPartition("*profilesTrace", "*originTrace", "origin"))
+              .macro(Tracing.finish("*originTrace"))
               .compoundAgg(CompoundAgg.map("*i", Agg.last("*resolvedPost"))).out("*resultMap");
   }
 }
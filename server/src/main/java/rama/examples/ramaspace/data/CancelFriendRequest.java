@@ -5,9 +5,16 @@ import com.rpl.rama.RamaSerializable;
 public class CancelFriendRequest implements RamaSerializable {
   public String userId;
   public String toUserId;
+  // Optional, as in FriendRequest.
+  public Long traceId;
 
   public CancelFriendRequest(String userId, String toUserId) {
     this.userId = userId;
     this.toUserId = toUserId;
   }
-}
\ No newline at end of file
+
+  public CancelFriendRequest withTraceId(Long traceId) {
+    this.traceId = traceId;
+    return this;
+  }
+}
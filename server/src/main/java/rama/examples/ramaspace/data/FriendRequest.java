@@ -5,9 +5,16 @@ import com.rpl.rama.RamaSerializable;
 public class FriendRequest implements RamaSerializable {
   public String userId;
   public String toUserId;
+  // Set to trace this request through the friends topology, see lof.tracing.Tracing. Requests without one are sampled.
+  public Long traceId;
 
   public FriendRequest(String userId, String toUserId) {
     this.userId = userId;
     this.toUserId = toUserId;
   }
+
+  public FriendRequest withTraceId(Long traceId) {
+    this.traceId = traceId;
+    return this;
+  }
 }
@@ -5,9 +5,16 @@ import com.rpl.rama.RamaSerializable;
 public class FriendshipAdd implements RamaSerializable {
   public String userId1;
   public String userId2;
+  // Set to trace this change through the friends topology, see lof.tracing.Tracing. Changes without one are sampled.
+  public Long traceId;
 
   public FriendshipAdd(String userId1, String userId2) {
     this.userId1 = userId1;
     this.userId2 = userId2;
   }
-}
\ No newline at end of file
+
+  public FriendshipAdd withTraceId(Long traceId) {
+    this.traceId = traceId;
+    return this;
+  }
+}
@@ -5,9 +5,16 @@ import com.rpl.rama.RamaSerializable;
 public class FriendshipRemove implements RamaSerializable {
   public String userId1;
   public String userId2;
+  // Optional, as in FriendshipAdd.
+  public Long traceId;
 
   public FriendshipRemove(String userId1, String userId2) {
     this.userId1 = userId1;
     this.userId2 = userId2;
   }
-}
\ No newline at end of file
+
+  public FriendshipRemove withTraceId(Long traceId) {
+    this.traceId = traceId;
+    return this;
+  }
+}
@@ -1,8 +1,8 @@
 package rama.examples.wordcount;
 
 import com.rpl.rama.*;
-import com.rpl.rama.ops.*;
 import com.rpl.rama.module.*;
+import lof.text.WordTokenizer;
 
 public class WordCountModule implements RamaModule {
     @Override
@@ -13,11 +13,7 @@ public class WordCountModule implements RamaModule {
         wordCount.pstate("$$wordCounts", PState.mapSchema(String.class, Long.class));
 
         wordCount.source("*sentenceDepot").out("*sentence")
-                 .each((String sentence, OutputCollector collector) -> {
-                     for(String word: sentence.split(" ")) {
-                       collector.emit(word);
-                     }
-                 }, "*sentence").out("*word")
+                 .each(new WordTokenizer(), "*sentence").out("*word")
                  .hashPartition("*word")
                  .compoundAgg("$$wordCounts", CompoundAgg.map("*word", Agg.count()));
     }
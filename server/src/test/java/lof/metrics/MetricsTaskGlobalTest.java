@@ -0,0 +1,91 @@
+package lof.metrics;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import lof.metrics.data.HistogramSummary;
+import lof.metrics.data.MetricsSnapshot;
+
+public class MetricsTaskGlobalTest {
+  @Test
+  public void snapshotsCoverTheIntervalSinceTheLastOne() throws Exception {
+    MetricsTaskGlobal metrics = new MetricsTaskGlobal(new MetricsConfig("test"));
+    metrics.prepareForTask(3, null);
+    for(int i = 1; i <= 1000; i++) {
+      metrics.recordNanos("op", i * 1000L);
+    }
+    metrics.increment("records", 5);
+    metrics.increment("records");
+
+    CompletableFuture<String> pending = new CompletableFuture<>();
+    CompletableFuture<String> timed = metrics.timeAsync("fetch", () -> pending);
+    MetricsSnapshot first = metrics.snapshot();
+    assertEquals(3, (int) first.taskId);
+    assertEquals(6L, (long) first.counters.get("records"));
+    assertEquals(1L, (long) first.gauges.get("fetch.inFlight"));
+    HistogramSummary op = first.histograms.get("op");
+    assertEquals(1000, op.count);
+    assertEquals(500, op.p50, 5);
+    assertEquals(990, op.p99, 10);
+    assertEquals(1000, op.max, 10);
+
+    pending.complete("done");
+    assertEquals("done", timed.get());
+    MetricsSnapshot second = metrics.snapshot();
+    // Counters are totals, histograms only cover the new interval.
+    assertEquals(6L, (long) second.counters.get("records"));
+    assertEquals(0, second.histograms.get("op").count);
+    assertEquals(1, second.histograms.get("fetch").count);
+    assertEquals(0L, (long) second.gauges.get("fetch.inFlight"));
+    assertEquals(1L, (long) second.counters.get("fetch.calls"));
+    metrics.close();
+  }
+
+  @Test
+  public void scrapeEndpointServesTheLatestSnapshots() throws Exception {
+    int port;
+    try(ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    MetricsConfig config = new MetricsConfig("scrape");
+    config.scrapePort = port;
+    MetricsTaskGlobal task0 = new MetricsTaskGlobal(config);
+    MetricsTaskGlobal task1 = new MetricsTaskGlobal(config);
+    task0.prepareForTask(0, null);
+    task1.prepareForTask(1, null);
+    task0.increment("http.get.calls", 7);
+    task1.recordNanos("http.get", 2000000);
+    task0.snapshot();
+    task1.snapshot();
+
+    String body = scrape(port);
+    assertTrue(body, body.contains("lof_http_get_calls_total{namespace=\"scrape\",task=\"0\"} 7"));
+    assertTrue(body, body.contains("lof_http_get_count{namespace=\"scrape\",task=\"1\"} 1"));
+    assertTrue(body, body.contains("lof_http_get{namespace=\"scrape\",task=\"1\",quantile=\"0.99\"}"));
+
+    task0.close();
+    // Still served while any task is using it.
+    assertTrue(scrape(port).contains("task=\"1\""));
+    task1.close();
+  }
+
+  private static String scrape(int port) throws Exception {
+    HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/metrics").openConnection();
+    assertEquals(200, conn.getResponseCode());
+    try(InputStream in = conn.getInputStream()) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      int n;
+      while((n = in.read(buf)) != -1) out.write(buf, 0, n);
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+}
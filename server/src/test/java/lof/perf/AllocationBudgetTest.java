@@ -0,0 +1,115 @@
+package lof.perf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import com.rpl.rama.*;
+import com.rpl.rama.test.*;
+import lof.research.lab.RecordSeederModule;
+import lof.research.lab.SyntheticBibliography;
+import lof.research.lab.SyntheticBibliographyConfig;
+import lof.research.lab.data.Record;
+import rama.examples.tutorial.PageAnalyticsModule;
+import rama.examples.wordcount.WordCountModule;
+
+/*
+ * Allocation of the topologies' per-record code, in bytes per record processed. Each test runs a fixed, seeded
+ * workload and prints a report line. Only task threads are counted, so the figure covers the topology's code and
+ * Rama's task-side work per record.
+ *
+ * No budgets are enforced by default. Set one for a run with -Dalloc.budget.<name>=<bytes>, and size the workload
+ * with -Dalloc.records.
+ */
+public class AllocationBudgetTest {
+  private static final int RECORDS_PER_ROUND = Integer.getInteger("alloc.records", 2000);
+
+  private static final String[] WORDS = {
+    "the", "laws", "of", "form", "a", "distinction", "is", "drawn", "by", "arranging", "boundary", "with", "separate",
+    "sides", "so", "that", "point", "on", "one", "side", "cannot", "reach", "other", "without", "crossing"};
+
+  private static String sentence(Random random) {
+    StringBuilder sb = new StringBuilder();
+    int words = 6 + random.nextInt(12);
+    for(int i = 0; i < words; i++) {
+      if(i > 0) sb.append(' ');
+      sb.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return sb.toString();
+  }
+
+  private static void appendAll(Depot depot, List<?> data) {
+    List<CompletableFuture<?>> pending = new ArrayList<>(data.size());
+    for(Object o : data) pending.add(depot.appendAsync(o));
+    CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+  }
+
+  @Test
+  public void wordCount() throws Exception {
+    try(InProcessCluster ipc = InProcessCluster.create()) {
+      WordCountModule module = new WordCountModule();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+      Depot sentenceDepot = ipc.clusterDepot(module.getClass().getName(), "*sentenceDepot");
+
+      AllocationHarness.Result result = new AllocationHarness().measure("wordCount", round -> {
+        Random random = new Random(round);
+        List<String> sentences = new ArrayList<>();
+        for(int i = 0; i < RECORDS_PER_ROUND; i++) sentences.add(sentence(random));
+        // Stream appends complete once the topology has processed them.
+        appendAll(sentenceDepot, sentences);
+        return sentences.size();
+      });
+      AllocationHarness.assertWithinBudget(result);
+    }
+  }
+
+  @Test
+  public void pageAnalytics() throws Exception {
+    try(InProcessCluster ipc = InProcessCluster.create()) {
+      PageAnalyticsModule module = new PageAnalyticsModule();
+      ipc.launchModule(module, new LaunchConfig(1, 1));
+      Depot depot = ipc.clusterDepot(module.getClass().getName(), "*depot");
+
+      AllocationHarness.Result result = new AllocationHarness().measure("pageAnalytics", round -> {
+        Random random = new Random(round);
+        List<Map<String, Object>> visits = new ArrayList<>();
+        for(int i = 0; i < RECORDS_PER_ROUND; i++) {
+          Map<String, Object> visit = new HashMap<>();
+          visit.put("sessionId", "session" + random.nextInt(200));
+          visit.put("path", "/posts/" + random.nextInt(50));
+          visit.put("duration", random.nextInt(10000));
+          visits.add(visit);
+        }
+        appendAll(depot, visits);
+        return visits.size();
+      });
+      AllocationHarness.assertWithinBudget(result);
+    }
+  }
+
+  @Test
+  public void recordSeeder() throws Exception {
+    try(InProcessCluster ipc = InProcessCluster.create()) {
+      RecordSeederModule module = new RecordSeederModule();
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+      Depot recordsDepot = ipc.clusterDepot(moduleName, "*recordsDepot");
+      SyntheticBibliography bibliography = new SyntheticBibliography(new SyntheticBibliographyConfig());
+      long[] appended = {0};
+
+      AllocationHarness.Result result = new AllocationHarness().measure("recordSeeder", round -> {
+        List<Record> records = bibliography.next(RECORDS_PER_ROUND);
+        appendAll(recordsDepot, records);
+        appended[0] += records.size();
+        ipc.waitForMicrobatchProcessedCount(moduleName, "recordSeeder", (int) appended[0]);
+        return records.size();
+      });
+      AllocationHarness.assertWithinBudget(result);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package lof.perf;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/*
+ * Measures heap allocation per processed record while a module runs a fixed workload in an InProcessCluster, using the
+ * per-thread allocation counters of com.sun.management.ThreadMXBean. Bytes are summed over the threads threadFilter
+ * accepts, by default Rama's task threads, so what's counted is the topology code and the task-side work of running
+ * it, not the client or the cluster's RPC and replication threads. Warmup rounds run first so class loading and JIT
+ * compilation aren't counted.
+ *
+ * Counters of threads that exit during the measured rounds are lost, so measure with a cluster that's already running.
+ */
+public class AllocationHarness {
+  public interface Workload {
+    // Runs one round, returning once the module has processed it, and returns how many records it processed.
+    long run(int round) throws Exception;
+  }
+
+  public static class Result {
+    public final String name;
+    public final long records;
+    public final long allocatedBytes;
+    // Allocated bytes by thread name, for the threads that allocated the most.
+    public final Map<String, Long> topThreads;
+    // The same, over every thread but the client whether threadFilter accepted it or not, to check the filter by.
+    public final Map<String, Long> topUnfilteredThreads;
+
+    Result(String name, long records, long allocatedBytes, Map<String, Long> topThreads,
+           Map<String, Long> topUnfilteredThreads) {
+      this.name = name;
+      this.records = records;
+      this.allocatedBytes = allocatedBytes;
+      this.topThreads = topThreads;
+      this.topUnfilteredThreads = topUnfilteredThreads;
+    }
+
+    public double bytesPerRecord() {
+      return records == 0 ? 0 : (double) allocatedBytes / records;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %.0f bytes/record (%d bytes over %d records), top threads %s, top of all threads %s",
+                           name, bytesPerRecord(), allocatedBytes, records, topThreads, topUnfilteredThreads);
+    }
+  }
+
+  private static final int TOP_THREADS = 5;
+
+  // Task threads by name. Override the pattern with -Dalloc.threads=<regex> if they're named differently; the report
+  // line lists the top threads both with and without the filter.
+  public static final Predicate<String> TASK_THREADS =
+    Pattern.compile(System.getProperty("alloc.threads", "(?i)task")).asPredicate();
+
+  public int warmupRounds = 2;
+  public int measuredRounds = 3;
+  public Predicate<String> threadFilter = TASK_THREADS;
+
+  private final com.sun.management.ThreadMXBean _threads;
+
+  public AllocationHarness() {
+    _threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue("Thread allocation counters aren't supported by this JVM", _threads.isThreadAllocatedMemorySupported());
+    _threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  public Result measure(String name, Workload workload) throws Exception {
+    for(int i = 0; i < warmupRounds; i++) workload.run(i);
+
+    Map<Long, Long> before = allocatedBytes();
+    long records = 0;
+    for(int i = 0; i < measuredRounds; i++) records += workload.run(warmupRounds + i);
+    Map<Long, Long> after = allocatedBytes();
+
+    long self = Thread.currentThread().getId();
+    long total = 0;
+    Map<String, Long> byName = new HashMap<>();
+    Map<String, Long> unfiltered = new HashMap<>();
+    for(Map.Entry<Long, Long> e : after.entrySet()) {
+      long id = e.getKey();
+      if(id == self) continue;
+      String threadName = threadName(id);
+      if(threadName == null) continue;
+      long bytes = e.getValue() - before.getOrDefault(id, 0L);
+      if(bytes <= 0) continue;
+      unfiltered.merge(threadName, bytes, Long::sum);
+      if(!threadFilter.test(threadName)) continue;
+      total += bytes;
+      byName.merge(threadName, bytes, Long::sum);
+    }
+    return new Result(name, records, total, top(byName), top(unfiltered));
+  }
+
+  /*
+   * Prints the result, and fails if a budget is set for it with the system property alloc.budget.<name> and it's over
+   * that budget, or if no thread threadFilter accepts allocated anything, which would pass any budget. The budget is
+   * bytes per record. With none set the result is only reported.
+   */
+  public static void assertWithinBudget(Result result) {
+    String configured = System.getProperty("alloc.budget." + result.name);
+    System.out.println(result + (configured != null ? ", budget " + configured : ", no budget"));
+    if(configured == null) return;
+    double budget = Double.parseDouble(configured);
+    if(result.allocatedBytes == 0) {
+      fail(result.name + ": no thread accepted by the thread filter allocated anything. " + result);
+    }
+    if(result.bytesPerRecord() > budget) {
+      fail(String.format("%s allocated %.0f bytes/record, over its budget of %.0f. %s",
+                         result.name, result.bytesPerRecord(), budget, result));
+    }
+  }
+
+  private Map<Long, Long> allocatedBytes() {
+    long[] ids = _threads.getAllThreadIds();
+    long[] bytes = _threads.getThreadAllocatedBytes(ids);
+    Map<Long, Long> ret = new HashMap<>();
+    for(int i = 0; i < ids.length; i++) {
+      if(bytes[i] >= 0) ret.put(ids[i], bytes[i]);
+    }
+    return ret;
+  }
+
+  private String threadName(long id) {
+    ThreadInfo info = _threads.getThreadInfo(id);
+    return info == null ? null : info.getThreadName();
+  }
+
+  private static Map<String, Long> top(Map<String, Long> byName) {
+    List<Map.Entry<String, Long>> entries = new ArrayList<>(byName.entrySet());
+    entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+    Map<String, Long> ret = new LinkedHashMap<>();
+    for(Map.Entry<String, Long> e : entries.subList(0, Math.min(TOP_THREADS, entries.size()))) {
+      ret.put(e.getKey(), e.getValue());
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,169 @@
+package lof.research.lab;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.rpl.rama.*;
+import com.rpl.rama.ops.Ops;
+import com.rpl.rama.test.*;
+import lof.research.lab.data.CitationEdge;
+import lof.research.lab.data.RankState;
+
+public class CitationGraphModuleTest {
+  // x = (1 - ALPHA) + ALPHA * sum(x(u) / outDegree(u)) over the papers u citing each paper, by power iteration.
+  private static Map<String, Double> pageRank(Map<String, Set<String>> outLinks, Set<String> papers) {
+    Map<String, Double> ret = new HashMap<>();
+    for(String paper : papers) ret.put(paper, 1 - CitationRank.ALPHA);
+    for(int i = 0; i < 200; i++) {
+      Map<String, Double> next = new HashMap<>();
+      for(String paper : papers) next.put(paper, 1 - CitationRank.ALPHA);
+      for(Map.Entry<String, Set<String>> e : outLinks.entrySet()) {
+        double share = CitationRank.ALPHA * ret.get(e.getKey()) / e.getValue().size();
+        for(String cited : e.getValue()) next.merge(cited, share, Double::sum);
+      }
+      ret = next;
+    }
+    return ret;
+  }
+
+  @Test
+  public void citationsIndexedInBothDirections() throws Exception {
+    try(InProcessCluster ipc = InProcessCluster.create()) {
+      CitationGraphModule module = new CitationGraphModule();
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot citationsDepot = ipc.clusterDepot(moduleName, "*citationsDepot");
+      PState cites = ipc.clusterPState(moduleName, "$$cites");
+      PState citedBy = ipc.clusterPState(moduleName, "$$citedBy");
+
+      String source = "paper-0";
+      String target = null;
+      for(int i = 1; target == null; i++) {
+        if(CitationTraversal.taskFor(source, 4) != CitationTraversal.taskFor("paper-" + i, 4)) target = "paper-" + i;
+      }
+      String other = "other-source";
+
+      citationsDepot.append(new CitationEdge(source, target));
+      // Re-extracted citations don't add anything.
+      citationsDepot.append(new CitationEdge(source, target));
+      citationsDepot.append(new CitationEdge(source, "laws-of-form"));
+      citationsDepot.append(new CitationEdge(other, target));
+
+      assertEquals(new HashSet<>(Arrays.asList(target, "laws-of-form")),
+                   new HashSet<>(cites.select(Path.key(source).all())));
+      assertEquals(new HashSet<>(Arrays.asList(source, other)),
+                   new HashSet<>(citedBy.select(Path.key(target).all())));
+      assertEquals(2, (int) citedBy.selectOne(Path.key(target).view(Ops.SIZE)));
+      assertEquals(Arrays.asList(source), citedBy.select(Path.key("laws-of-form").all()));
+      assertEquals(Arrays.asList(target), cites.select(Path.key(other).all()));
+      // Edges are only indexed under their own endpoints.
+      assertTrue(cites.select(Path.key(target).all()).isEmpty());
+      assertTrue(citedBy.select(Path.key(source).all()).isEmpty());
+    }
+  }
+
+  @Test
+  public void citationNeighborhood() throws Exception {
+    try(InProcessCluster ipc = InProcessCluster.create()) {
+      CitationGraphModule module = new CitationGraphModule();
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot citationsDepot = ipc.clusterDepot(moduleName, "*citationsDepot");
+      QueryTopologyClient<Map<String, Integer>> neighborhood = ipc.clusterQuery(moduleName, "citationNeighborhood");
+
+      // s cites a and b, which both cite c, and so on down to e. c also cites s back.
+      List<CitationEdge> edges = Arrays.asList(
+        new CitationEdge("s", "a"),
+        new CitationEdge("s", "b"),
+        new CitationEdge("a", "c"),
+        new CitationEdge("b", "c"),
+        new CitationEdge("c", "d"),
+        new CitationEdge("c", "s"),
+        new CitationEdge("d", "e"));
+      for(CitationEdge edge : edges) citationsDepot.append(edge);
+
+      Map<String, Integer> expected = new HashMap<>();
+      expected.put("s", 0);
+      expected.put("a", 1);
+      expected.put("b", 1);
+      expected.put("c", 2);
+      expected.put("d", 3);
+      // c is reached through both a and b, and s again through c, but each keeps its shortest distance.
+      assertEquals(expected, neighborhood.invoke("s", 3, 100, false));
+
+      expected.put("e", 4);
+      assertEquals(expected, neighborhood.invoke("s", 10, 100, false));
+
+      Map<String, Integer> citers = new HashMap<>();
+      citers.put("e", 0);
+      citers.put("d", 1);
+      citers.put("c", 2);
+      assertEquals(citers, neighborhood.invoke("e", 2, 100, true));
+
+      // The cap stops the traversal part way through a hop.
+      Map<String, Integer> capped = neighborhood.invoke("s", 3, 2, false);
+      assertEquals(2, capped.size());
+      assertEquals(Integer.valueOf(0), capped.get("s"));
+      assertTrue(capped.containsKey("a") || capped.containsKey("b"));
+      assertEquals(3, neighborhood.invoke("s", 3, 3, false).size());
+    }
+  }
+
+  @Test
+  public void citationRankTracksPowerIteration() throws Exception {
+    try(InProcessCluster ipc = InProcessCluster.create()) {
+      CitationGraphModule module = new CitationGraphModule();
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot citationsDepot = ipc.clusterDepot(moduleName, "*citationsDepot");
+      PState citationRank = ipc.clusterPState(moduleName, "$$citationRank");
+
+      // Each batch is processed before the next is appended. The second batch gives p3, already ranked, a second
+      // out-link and repeats an edge, and the third closes a cycle through p0.
+      List<List<CitationEdge>> batches = Arrays.asList(
+        Arrays.asList(new CitationEdge("p1", "p0"), new CitationEdge("p2", "p0"), new CitationEdge("p3", "p1")),
+        Arrays.asList(new CitationEdge("p3", "p2"), new CitationEdge("p1", "p0"), new CitationEdge("p4", "p3")),
+        Arrays.asList(new CitationEdge("p0", "p4"), new CitationEdge("p5", "p0"), new CitationEdge("p4", "p3"),
+                      new CitationEdge("p3", "p5")));
+      Map<String, Set<String>> outLinks = new HashMap<>();
+      Set<String> papers = new HashSet<>();
+      int appended = 0;
+      for(List<CitationEdge> batch : batches) {
+        for(CitationEdge edge : batch) {
+          citationsDepot.append(edge);
+          outLinks.computeIfAbsent(edge.sourceId, k -> new HashSet<>()).add(edge.targetId);
+          papers.add(edge.sourceId);
+          papers.add(edge.targetId);
+        }
+        appended += batch.size();
+        ipc.waitForMicrobatchProcessedCount(moduleName, "citationRank", appended);
+      }
+
+      // x - rank = (I - ALPHA * P^T)^-1 residual, so the ranks are within sum(|residual|) / (1 - ALPHA) of x in total.
+      // Residuals are only left behind by pushes cut off at MAX_PUSH_DEPTH, so that sum is small.
+      Map<String, Double> expected = pageRank(outLinks, papers);
+      double totalError = 0;
+      double totalResidual = 0;
+      for(String paper : papers) {
+        RankState state = citationRank.selectOne(Path.key(paper));
+        assertNotNull(paper, state);
+        double error = Math.abs(expected.get(paper) - state.rank);
+        assertEquals(paper, expected.get(paper), state.rank, 0.05);
+        totalError += error;
+        totalResidual += Math.abs(state.residual);
+      }
+      assertTrue("residual " + totalResidual, totalResidual < 0.1);
+      assertTrue("error " + totalError, totalError <= totalResidual / (1 - CitationRank.ALPHA) + 1e-9);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package lof.research.lab;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import com.rpl.rama.*;
+import com.rpl.rama.test.*;
+import lof.research.lab.data.ParsedReference;
+import lof.research.lab.data.Record;
+import lof.research.lab.data.ReferenceMatch;
+
+public class CitationMatcherTest {
+  @Test
+  public void parsesCommonReferenceStyles() {
+    ParsedReference apa = CitationMatcher.parse("Spencer-Brown, G. (1969). Laws of Form. London: Allen and Unwin.");
+    assertEquals("spencerbrown", apa.surname);
+    assertEquals(1969, (int) apa.year);
+    assertEquals(Arrays.asList("laws", "form"), apa.titleTokens);
+
+    ParsedReference quoted = CitationMatcher.parse("G. Spencer-Brown, \"Laws of Form\", Allen and Unwin, 1969.");
+    assertEquals("spencerbrown", quoted.surname);
+    assertEquals(1969, (int) quoted.year);
+    assertEquals(Arrays.asList("laws", "form"), quoted.titleTokens);
+
+    ParsedReference undated = CitationMatcher.parse("Kauffman, L. H. On Knots. Princeton University Press.");
+    assertEquals("kauffman", undated.surname);
+    assertNull(undated.year);
+    assertEquals("kauffman-nodate", CitationMatcher.blockingKey(undated));
+  }
+
+  @Test
+  public void blocksReferencesWithTheirRecords() {
+    Record record = new Record(Arrays.asList("Spencer-Brown, G."), "Laws of Form", 1969, null, null);
+    ParsedReference ref = CitationMatcher.parse("Spencer-Brown, G. (1969). Laws of form.");
+    assertEquals(CitationMatcher.blockingKey(record), CitationMatcher.blockingKey(ref));
+    assertTrue(record.canonicalId.startsWith(CitationMatcher.blockingKey(record)));
+  }
+
+  @Test
+  public void blocksFirstNameLastNameAuthorsOnSurname() {
+    Record record = new Record(Arrays.asList("Louis H. Kauffman"), "Knots and Physics", 1991, null, null);
+    ParsedReference ref = CitationMatcher.parse("Kauffman, L. H. (1991). Knots and Physics.");
+    assertEquals("kauffman-1991", CitationMatcher.blockingKey(record));
+    assertEquals(CitationMatcher.blockingKey(record), CitationMatcher.blockingKey(ref));
+    // The canonical ID keeps its existing form.
+    assertEquals("louishkauffman-1991-knots-and-physics", record.canonicalId);
+  }
+
+  @Test
+  public void parsesFirstNameLastNameReferences() {
+    ParsedReference ref = CitationMatcher.parse("Louis H. Kauffman (1991). Knots and Physics. World Scientific.");
+    assertEquals("kauffman", ref.surname);
+    assertEquals(1991, (int) ref.year);
+    assertEquals(Arrays.asList("knots", "physics"), ref.titleTokens);
+    Record record = new Record(Arrays.asList("Louis H. Kauffman"), "Knots and Physics", 1991, null, null);
+    assertEquals(CitationMatcher.blockingKey(record), CitationMatcher.blockingKey(ref));
+
+    // A surname of several words is kept whole when initials follow the comma, as it is on the record side.
+    ref = CitationMatcher.parse("van der Berg, J. (2001). Forms of Re-entry.");
+    assertEquals("vanderberg", ref.surname);
+    record = new Record(Arrays.asList("van der Berg, J."), "Forms of Re-entry", 2001, null, null);
+    assertEquals(CitationMatcher.blockingKey(record), CitationMatcher.blockingKey(ref));
+  }
+
+  @Test
+  public void resolveReference() throws Exception {
+    try(InProcessCluster ipc = InProcessCluster.create()) {
+      RecordSeederModule module = new RecordSeederModule();
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot recordsDepot = ipc.clusterDepot(moduleName, "*recordsDepot");
+      QueryTopologyClient<ReferenceMatch> resolveReference = ipc.clusterQuery(moduleName, "resolveReference");
+
+      Record laws = new Record(Arrays.asList("Spencer-Brown, G."), "Laws of Form", 1969, null, null);
+      Record probability = new Record(Arrays.asList("Spencer-Brown, G."), "Probability and Scientific Inference",
+                                      1969, null, null);
+      Record knots = new Record(Arrays.asList("Kauffman, Louis H."), "On Knots", 1987, null, null);
+      recordsDepot.append(laws);
+      recordsDepot.append(probability);
+      recordsDepot.append(knots);
+      ipc.waitForMicrobatchProcessedCount(moduleName, "recordSeeder", 3);
+
+      ReferenceMatch match = resolveReference.invoke("Spencer-Brown, G. (1969). Laws of form. London: Allen & Unwin.");
+      assertEquals(laws.canonicalId, match.canonicalId);
+      match = resolveReference.invoke("G. Spencer-Brown, \"Probability and scientific inference\", Longmans, 1969.");
+      assertEquals(probability.canonicalId, match.canonicalId);
+      match = resolveReference.invoke("Kauffman, L. H. (1987). On knots. Princeton University Press.");
+      assertEquals(knots.canonicalId, match.canonicalId);
+
+      // Same block, but no title is similar enough.
+      assertNull(resolveReference.invoke("Spencer-Brown, G. (1969). Only Two Can Play This Game."));
+      // No record in the block at all.
+      assertNull(resolveReference.invoke("Maturana, H. (1970). Biology of Cognition."));
+    }
+  }
+}
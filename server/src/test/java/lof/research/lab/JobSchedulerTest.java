@@ -0,0 +1,95 @@
+package lof.research.lab;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lof.research.lab.data.Admission;
+import lof.research.lab.data.OwnerStats;
+import lof.research.lab.data.QueuedJob;
+
+public class JobSchedulerTest {
+  private static JobScheduler scheduler(SchedulerConfig config) {
+    JobScheduler ret = new JobScheduler(config);
+    ret.prepareForTask(0, null);
+    return ret;
+  }
+
+  private static int admitted(List<Admission> admissions, String owner, boolean interactive) {
+    int ret = 0;
+    for(Admission a: admissions) {
+      if(a.owner.equals(owner) && a.interactive == interactive) ret += a.count;
+    }
+    return ret;
+  }
+
+  @Test
+  public void batchSlotsAreSharedByWeight() {
+    SchedulerConfig config = new SchedulerConfig();
+    config.maxRunning = 40;
+    config.interactiveReserved = 10;
+    config.maxRunningPerOwner = 100;
+    config.ownerWeights.put("heavy", 2.0);
+    JobScheduler scheduler = scheduler(config);
+
+    Map<String, OwnerStats> stats = new HashMap<>();
+    stats.put("heavy", new OwnerStats(0, 1000, 0));
+    stats.put("light", new OwnerStats(0, 1000, 0));
+    List<Admission> admissions = scheduler.admit(stats);
+    // 30 batch slots outside the interactive reserve, split 2:1.
+    assertEquals(20, admitted(admissions, "heavy", false));
+    assertEquals(10, admitted(admissions, "light", false));
+  }
+
+  @Test
+  public void interactiveJobsUseReservedSlots() {
+    SchedulerConfig config = new SchedulerConfig();
+    config.maxRunning = 10;
+    config.interactiveReserved = 2;
+    config.maxRunningPerOwner = 10;
+    JobScheduler scheduler = scheduler(config);
+
+    // Batch work has filled everything it's allowed to.
+    Map<String, OwnerStats> stats = new HashMap<>();
+    stats.put("batch", new OwnerStats(0, 500, 8));
+    stats.put("alice", new OwnerStats(1, 0, 0));
+    List<Admission> admissions = scheduler.admit(stats);
+    assertEquals(1, admitted(admissions, "alice", true));
+    assertEquals(0, admitted(admissions, "batch", false));
+  }
+
+  @Test
+  public void perOwnerAndGlobalCaps() {
+    SchedulerConfig config = new SchedulerConfig();
+    config.maxRunning = 12;
+    config.interactiveReserved = 0;
+    config.maxRunningPerOwner = 5;
+    JobScheduler scheduler = scheduler(config);
+
+    Map<String, OwnerStats> stats = new HashMap<>();
+    stats.put("a", new OwnerStats(10, 10, 3));
+    stats.put("b", new OwnerStats(0, 10, 0));
+    stats.put("c", new OwnerStats(0, 10, 0));
+    List<Admission> admissions = scheduler.admit(stats);
+    assertEquals(2, admitted(admissions, "a", true) + admitted(admissions, "a", false));
+    int total = 0;
+    for(Admission a: admissions) total += a.count;
+    assertEquals(9, total);
+    assertTrue(admitted(admissions, "b", false) <= 5);
+    assertTrue(admitted(admissions, "c", false) <= 5);
+  }
+
+  @Test
+  public void statsTrackQueuedAndRunning() {
+    Map<String, OwnerStats> stats = JobScheduler.onEnqueued(null, new QueuedJob("j1", "alice", true));
+    assertEquals(1, (int) stats.get("alice").queuedInteractive);
+    stats = JobScheduler.onAdmitted(stats, "alice", true);
+    assertEquals(0, (int) stats.get("alice").queuedInteractive);
+    assertEquals(1, (int) stats.get("alice").running);
+    stats = JobScheduler.onCompleted(stats, "alice");
+    assertFalse(stats.containsKey("alice"));
+  }
+}
@@ -0,0 +1,95 @@
+package lof.research.lab;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import lof.research.lab.data.CachedCompletion;
+import lof.research.lab.data.LlmRequest;
+import lof.restapi.exa.StubHttpServer;
+
+public class LlmCacheTest {
+  @Test
+  public void fingerprintCoversModelParamsAndPrompt() {
+    LlmRequest a = new LlmRequest("m1", "What is a distinction?");
+    a.params.put("temperature", 0);
+    a.params.put("max_tokens", 100);
+    LlmRequest b = new LlmRequest("m1", "What is a distinction?");
+    b.params.put("max_tokens", 100);
+    b.params.put("temperature", 0);
+    assertEquals(LlmCache.fingerprint(a), LlmCache.fingerprint(b));
+    assertEquals(64, LlmCache.fingerprint(a).length());
+
+    b.params.put("temperature", 1);
+    assertNotEquals(LlmCache.fingerprint(a), LlmCache.fingerprint(b));
+    assertNotEquals(LlmCache.fingerprint(a), LlmCache.fingerprint(new LlmRequest("m2", a.prompt)));
+    assertNotEquals(LlmCache.fingerprint(a), LlmCache.fingerprint(new LlmRequest("m1", a.prompt + "?")));
+  }
+
+  @Test
+  public void evictsOldestWhenOverSizeOrExpired() {
+    LlmConfig config = new LlmConfig();
+    config.cacheMaxEntriesPerPartition = 3;
+    config.cacheTtlMillis = 60000;
+    LlmTaskGlobal llm = new LlmTaskGlobal(config);
+    long now = System.currentTimeMillis();
+
+    SortedMap<String, String> oldest = new TreeMap<>();
+    for(int i = 0; i < 5; i++) {
+      CachedCompletion entry = new CachedCompletion("fp" + i, "r", now - 1000 + i, now + 59000);
+      oldest.put(LlmCache.orderKey(entry), "fp" + i);
+    }
+    List<List<String>> evictions = LlmCache.evictions(llm, oldest, 5);
+    assertEquals(2, evictions.size());
+    assertEquals("fp0", evictions.get(0).get(1));
+    assertEquals("fp1", evictions.get(1).get(1));
+
+    oldest.put(LlmCache.orderKey(new CachedCompletion("stale", "r", now - 120000, now - 60000)), "stale");
+    evictions = LlmCache.evictions(llm, oldest, 3);
+    assertEquals(1, evictions.size());
+    assertEquals("stale", evictions.get(0).get(1));
+
+    CachedCompletion expired = new CachedCompletion("fp", "r", now - 2000, now - 1000);
+    assertNull(LlmCache.freshResponse(expired));
+    assertEquals("r", LlmCache.freshResponse(new CachedCompletion("fp", "r", now, now + 1000)));
+  }
+
+  @Test
+  public void concurrentMissesShareOneCall() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer()) {
+      stub.latencyMillis = 100;
+      LlmTaskGlobal llm = new LlmTaskGlobal(LlmConfig.forEndpoint(stub.completionsUrl(), "test-key"));
+      llm.prepareForTask(0, null);
+      try {
+        LlmRequest request = new LlmRequest("stub", "Summarize Laws of Form");
+        String fingerprint = LlmCache.fingerprint(request);
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        for(int i = 0; i < 10; i++) {
+          calls.add(llm.complete(fingerprint, request));
+        }
+        String first = calls.get(0).get();
+        assertTrue(first.startsWith("stub completion"));
+        for(CompletableFuture<String> call: calls) {
+          assertEquals(first, call.get());
+        }
+        assertEquals(1, stub.completionCount());
+        assertEquals(9, llm.coalescedCount());
+
+        // Once the call completes, the next miss goes to the model again; caching is the PState's job.
+        llm.complete(fingerprint, request).get();
+        assertEquals(2, stub.completionCount());
+
+        // Failures complete with null.
+        stub.errorRate = 1.0;
+        assertNull(llm.complete(fingerprint, request).get());
+      } finally {
+        llm.close();
+      }
+    }
+  }
+}
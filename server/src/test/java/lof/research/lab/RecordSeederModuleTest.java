@@ -0,0 +1,144 @@
+package lof.research.lab;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.rpl.rama.*;
+import com.rpl.rama.ops.Ops;
+import com.rpl.rama.test.*;
+import lof.research.lab.data.MicrobatchBucket;
+import lof.research.lab.data.MicrobatchStats;
+import lof.research.lab.data.Record;
+
+public class RecordSeederModuleTest {
+  private static Record laws(String doi) {
+    return new Record(Arrays.asList("Spencer-Brown, G."), "Laws of Form", 1969, doi, null);
+  }
+
+  @Test
+  public void recordAsOf() throws Exception {
+    try(InProcessCluster ipc = InProcessCluster.create()) {
+      RecordSeederModule module = new RecordSeederModule(3, RecordVersions.DEFAULT_RETENTION_MILLIS);
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot recordsDepot = ipc.clusterDepot(moduleName, "*recordsDepot");
+      PState recordsById = ipc.clusterPState(moduleName, "$$recordsById");
+      PState paperVersions = ipc.clusterPState(moduleName, "$$paperVersions");
+      QueryTopologyClient<Record> recordAsOf = ipc.clusterQuery(moduleName, "recordAsOf");
+
+      String id = laws(null).canonicalId;
+      long beforeAll = System.currentTimeMillis() - 1;
+      long[] writtenBy = new long[5];
+      for(int i = 0; i < 5; i++) {
+        recordsDepot.append(laws("10.0/v" + i));
+        ipc.waitForMicrobatchProcessedCount(moduleName, "recordSeeder", i + 1);
+        writtenBy[i] = System.currentTimeMillis();
+        Thread.sleep(5);
+      }
+
+      assertEquals("10.0/v4", ((Record) recordsById.selectOne(Path.key(id))).doi);
+      assertNull(recordAsOf.invoke(id, beforeAll));
+      assertEquals("10.0/v4", recordAsOf.invoke(id, writtenBy[4]).doi);
+      assertEquals("10.0/v3", recordAsOf.invoke(id, writtenBy[3]).doi);
+      assertEquals("10.0/v2", recordAsOf.invoke(id, writtenBy[2]).doi);
+
+      // Only the three newest snapshots are retained.
+      assertEquals(3, (int) paperVersions.selectOne(Path.key(id).view(Ops.SIZE)));
+    }
+  }
+
+  @Test
+  public void retentionKeepsSnapshotInEffectAtHorizon() {
+    SortedMap<Long, Record> versions = new TreeMap<>();
+    versions.put(100L, laws("a"));
+    versions.put(200L, laws("b"));
+    versions.put(300L, laws("c"));
+    versions.put(900L, laws("d"));
+
+    // Horizon is 250: 100 was superseded before it and can go, 200 was still in effect at it and stays.
+    List<Long> expired = RecordVersions.expiredVersions(versions, 4, 1000L, 10, 750L);
+    assertEquals(Arrays.asList(100L), expired);
+
+    // Horizon is past everything but the latest snapshot, which is always kept.
+    expired = RecordVersions.expiredVersions(versions, 4, 10000L, 10, 10L);
+    assertEquals(Arrays.asList(100L, 200L, 300L), expired);
+
+    // Over the count limit, the oldest go first.
+    expired = RecordVersions.expiredVersions(versions, 4, 1000L, 2, 100000L);
+    assertEquals(Arrays.asList(100L, 200L), expired);
+  }
+
+  @Test
+  public void microbatchTelemetry() throws Exception {
+    try(InProcessCluster ipc = InProcessCluster.create()) {
+      RecordSeederModule module = new RecordSeederModule();
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot recordsDepot = ipc.clusterDepot(moduleName, "*recordsDepot");
+      PState seederOffsets = ipc.clusterPState(moduleName, "$$seederOffsets");
+      QueryTopologyClient<SortedMap<Long, MicrobatchBucket>> seederTelemetry =
+        ipc.clusterQuery(moduleName, "seederTelemetry");
+
+      long start = System.currentTimeMillis();
+      SyntheticBibliography bibliography = new SyntheticBibliography(new SyntheticBibliographyConfig());
+      for(Record r : bibliography.next(50)) recordsDepot.append(r);
+      ipc.waitForMicrobatchProcessedCount(moduleName, "recordSeeder", 50);
+
+      SortedMap<Long, MicrobatchBucket> buckets =
+        seederTelemetry.invoke(SeederTelemetry.bucketOf(start), System.currentTimeMillis() + 1);
+      long batches = 0, records = 0, writes = 0;
+      for(MicrobatchBucket b : buckets.values()) {
+        batches += b.batches;
+        records += b.records;
+        writes += b.pstateWrites;
+        assertTrue(b.maxPartitionsTouched >= 1 && b.maxPartitionsTouched <= 4);
+        assertTrue(b.slowest.processingMillis >= 0);
+      }
+      assertTrue(batches >= 1);
+      assertEquals(50, records);
+      // Three writes per record, plus any compaction deletes.
+      assertTrue(writes >= 150);
+
+      Map<Integer, Long> offsets = seederOffsets.selectOne(Path.stay());
+      SortedMap<Integer, Long> lag = SeederTelemetry.offsetLag(recordsDepot, offsets, 4);
+      for(long l : lag.values()) assertEquals(0, l);
+    }
+  }
+
+  @Test
+  public void telemetryBucketsRollUpBatches() {
+    long bucket = SeederTelemetry.bucketOf(125000L);
+    assertEquals(120000L, bucket);
+
+    MicrobatchBucket b = SeederTelemetry.addBatch(null, new MicrobatchStats(125000L, 40L, 10L, 30L, 2));
+    b = SeederTelemetry.addBatch(b, new MicrobatchStats(130000L, 90L, 4L, 12L, 3));
+    assertEquals(120000L, (long) b.bucketStartMillis);
+    assertEquals(2, (long) b.batches);
+    assertEquals(14, (long) b.records);
+    assertEquals(10, (long) b.maxRecords);
+    assertEquals(3, (int) b.maxPartitionsTouched);
+    assertEquals(90, (long) b.slowest.processingMillis);
+    assertEquals(65.0, b.meanProcessingMillis(), 0.0001);
+
+    // Buckets older than the retained window fall behind the horizon.
+    long horizon = SeederTelemetry.retentionHorizon(bucket);
+    assertEquals(bucket - (SeederTelemetry.RETAINED_BUCKETS - 1) * SeederTelemetry.BUCKET_MILLIS, horizon);
+
+    SeederTelemetry.TaskSetCombiner combiner = new SeederTelemetry.TaskSetCombiner();
+    Set<Integer> touched = combiner.zeroVal();
+    touched = combiner.combine(touched, SeederTelemetry.touched(1, 3));
+    touched = combiner.combine(touched, SeederTelemetry.touched(3, 3));
+    touched = combiner.combine(touched, SeederTelemetry.touched(2, 2));
+    assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), touched);
+  }
+}
@@ -0,0 +1,281 @@
+package lof.research.lab;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import com.rpl.rama.*;
+import com.rpl.rama.ops.Ops;
+import com.rpl.rama.test.*;
+import lof.research.lab.data.AdvanceJob;
+import lof.research.lab.data.Artifact;
+import lof.research.lab.data.JobState;
+import lof.research.lab.data.OwnerStats;
+import lof.research.lab.data.ResearchJob;
+import lof.research.lab.data.SubmitJob;
+import lof.restapi.exa.HttpClientConfig;
+import lof.restapi.exa.RestAPIIntegrationModule.AsyncHttpClientTaskGlobal;
+import lof.restapi.exa.RetryPolicy;
+import lof.restapi.exa.StubHttpServer;
+
+public class ResearchJobModuleTest {
+  private static ResearchJob awaitState(PState researchJobs, String jobId, JobState state) throws Exception {
+    long deadline = System.currentTimeMillis() + 30000;
+    while(true) {
+      ResearchJob job = researchJobs.selectOne(Path.key(jobId));
+      if(job != null && job.state == state) return job;
+      if(System.currentTimeMillis() > deadline) fail("job " + jobId + " did not reach " + state + ", last: " + job);
+      Thread.sleep(20);
+    }
+  }
+
+  @Test
+  public void jobRunsToCompletion() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      stub.latencyMillis = 10;
+      HttpClientConfig config = HttpClientConfig.forEndpoint(stub.searchUrl(), "test-key");
+      config.retryPolicy = new RetryPolicy(3, 10, 50);
+      ResearchJobModule module = new ResearchJobModule(new AsyncHttpClientTaskGlobal(config), 4);
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot researchJobsDepot = ipc.clusterDepot(moduleName, "*researchJobsDepot");
+      PState researchJobs = ipc.clusterPState(moduleName, "$$researchJobs");
+      PState jobResults = ipc.clusterPState(moduleName, "$$jobResults");
+
+      SubmitJob submission = new SubmitJob("job-1", "What is the calculus of indications?");
+      for(int i = 0; i < 10; i++) {
+        submission.queries.add("Laws of Form topic " + i);
+      }
+      submission.urls.add(stub.baseUrl() + "/lof50");
+      submission.urls.add(stub.baseUrl() + "/archive");
+      researchJobsDepot.append(submission);
+
+      ResearchJob job = awaitState(researchJobs, "job-1", JobState.COMPLETE);
+      assertEquals(12, job.steps.size());
+      // Submit, plan, 3 gathering waves of 4, the empty wave that moves to synthesis, synthesize.
+      assertEquals(6, (int) job.version);
+      assertEquals(13, (int) jobResults.selectOne(Path.key("job-1").view(Ops.SIZE)));
+      Artifact synthesis = jobResults.selectOne(Path.key("job-1", ResearchJobs.SYNTHESIS_KEY));
+      assertTrue(synthesis.content.contains("Sources: 12 gathered, 0 failed"));
+      assertTrue(((Artifact) jobResults.selectOne(Path.key("job-1", "search:Laws of Form topic 3"))).succeeded());
+      long requests = stub.requestCount();
+      assertEquals(12, requests);
+
+      // Stale transitions and resubmissions don't rerun anything.
+      researchJobsDepot.append(new AdvanceJob("job-1", 2));
+      researchJobsDepot.append(submission);
+      assertEquals(6, (int) ((ResearchJob) researchJobs.selectOne(Path.key("job-1"))).version);
+      assertEquals(requests, stub.requestCount());
+    }
+  }
+
+  @Test
+  public void restartResumesFromCheckpoint() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      stub.pathLatencyMillis.put("/slow", 3000L);
+      HttpClientConfig config = HttpClientConfig.forEndpoint(stub.searchUrl(), "test-key");
+      ResearchJobModule module = new ResearchJobModule(new AsyncHttpClientTaskGlobal(config), 4);
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot researchJobsDepot = ipc.clusterDepot(moduleName, "*researchJobsDepot");
+      PState researchJobs = ipc.clusterPState(moduleName, "$$researchJobs");
+      PState jobResults = ipc.clusterPState(moduleName, "$$jobResults");
+
+      SubmitJob submission = new SubmitJob("job-1", "What is re-entry?");
+      for(int i = 0; i < 3; i++) submission.urls.add(stub.baseUrl() + "/fast-" + i);
+      submission.urls.add(stub.baseUrl() + "/slow");
+      researchJobsDepot.append(submission);
+      long submitted = System.currentTimeMillis();
+
+      // Read back the checkpoint once the fast steps of the wave are in and the slow one is still in flight.
+      long deadline = submitted + 30000;
+      while((int) jobResults.selectOne(Path.key("job-1").view(Ops.SIZE)) < 3) {
+        if(System.currentTimeMillis() > deadline) fail("fast steps were not checkpointed");
+        Thread.sleep(20);
+      }
+      ResearchJob checkpointed = researchJobs.selectOne(Path.key("job-1"));
+      assertEquals(JobState.GATHERING, checkpointed.state);
+      assertNull(jobResults.selectOne(Path.key("job-1", ResearchJobs.FETCH_PREFIX + stub.baseUrl() + "/slow")));
+
+      // A restarted worker retries the depot record of the step it was running.
+      stub.pathLatencyMillis.put("/slow", 0L);
+      researchJobsDepot.append(new AdvanceJob("job-1", checkpointed.version));
+      ResearchJob job = awaitState(researchJobs, "job-1", JobState.COMPLETE);
+      Artifact synthesis = jobResults.selectOne(Path.key("job-1", ResearchJobs.SYNTHESIS_KEY));
+      assertTrue(synthesis.content.contains("Sources: 4 gathered, 0 failed"));
+
+      // Only the step without an artifact ran again.
+      for(int i = 0; i < 3; i++) assertEquals(1, stub.requestCount("/fast-" + i));
+      assertEquals(2, stub.requestCount("/slow"));
+
+      // The slow request from before the restart completing late doesn't move the job back.
+      Thread.sleep(Math.max(0, submitted + 3500 - System.currentTimeMillis()));
+      ResearchJob after = researchJobs.selectOne(Path.key("job-1"));
+      assertEquals(JobState.COMPLETE, after.state);
+      assertEquals(job.version, after.version);
+      assertEquals(5, (int) jobResults.selectOne(Path.key("job-1").view(Ops.SIZE)));
+    }
+  }
+
+  @Test
+  public void manyConcurrentJobs() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      stub.latencyMillis = 50;
+      HttpClientConfig config = HttpClientConfig.forEndpoint(stub.searchUrl(), "test-key");
+      ResearchJobModule module = new ResearchJobModule(new AsyncHttpClientTaskGlobal(config), 8);
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(2, 1));
+
+      Depot researchJobsDepot = ipc.clusterDepot(moduleName, "*researchJobsDepot");
+      PState researchJobs = ipc.clusterPState(moduleName, "$$researchJobs");
+
+      int jobs = 200;
+      for(int i = 0; i < jobs; i++) {
+        SubmitJob submission = new SubmitJob("job-" + i, "question " + i);
+        for(int q = 0; q < 8; q++) submission.queries.add("job " + i + " query " + q);
+        researchJobsDepot.appendAsync(submission);
+      }
+      for(int i = 0; i < jobs; i++) {
+        awaitState(researchJobs, "job-" + i, JobState.COMPLETE);
+      }
+      assertEquals(jobs * 8, stub.requestCount());
+    }
+  }
+
+  @Test
+  public void interactiveJobsAreNotStarvedByBatchBacklog() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      stub.latencyMillis = 50;
+      HttpClientConfig config = HttpClientConfig.forEndpoint(stub.searchUrl(), "test-key");
+      SchedulerConfig schedulerConfig = new SchedulerConfig();
+      schedulerConfig.maxRunning = 6;
+      schedulerConfig.maxRunningPerOwner = 4;
+      schedulerConfig.interactiveReserved = 2;
+      ResearchJobModule module = new ResearchJobModule(new AsyncHttpClientTaskGlobal(config), 2, schedulerConfig);
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot researchJobsDepot = ipc.clusterDepot(moduleName, "*researchJobsDepot");
+      PState researchJobs = ipc.clusterPState(moduleName, "$$researchJobs");
+      PState schedulerStats = ipc.clusterPState(moduleName, "$$schedulerStats");
+
+      for(int i = 0; i < 40; i++) {
+        SubmitJob submission = new SubmitJob("batch-" + i, "crawler", "batch question " + i);
+        for(int q = 0; q < 6; q++) submission.queries.add("batch " + i + " query " + q);
+        researchJobsDepot.append(submission);
+      }
+      Map<String, OwnerStats> stats = schedulerStats.selectOne(Path.stay());
+      assertTrue(stats.get("crawler").running <= 4);
+      assertTrue(stats.get("crawler").queuedBatch >= 30);
+
+      researchJobsDepot.append(new SubmitJob("alice-1", "alice", "What is a mark?"));
+      awaitState(researchJobs, "alice-1", JobState.COMPLETE);
+      // The crawler's backlog is still mostly queued when the interactive job is done.
+      int completedBatch = 0;
+      for(int i = 0; i < 40; i++) {
+        ResearchJob job = researchJobs.selectOne(Path.key("batch-" + i));
+        if(job.state == JobState.COMPLETE) completedBatch++;
+      }
+      assertTrue("completed batch jobs: " + completedBatch, completedBatch < 20);
+
+      for(int i = 0; i < 40; i++) {
+        awaitState(researchJobs, "batch-" + i, JobState.COMPLETE);
+      }
+      stats = schedulerStats.selectOne(Path.stay());
+      assertTrue(stats.isEmpty());
+    }
+  }
+
+  @Test
+  public void synthesisReusesCachedModelResponses() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      stub.latencyMillis = 20;
+      HttpClientConfig config = HttpClientConfig.forEndpoint(stub.searchUrl(), "test-key");
+      LlmTaskGlobal llm = new LlmTaskGlobal(LlmConfig.forEndpoint(stub.completionsUrl(), "test-key"));
+      ResearchJobModule module = new ResearchJobModule(new AsyncHttpClientTaskGlobal(config), 4,
+                                                       new SchedulerConfig(), llm);
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot researchJobsDepot = ipc.clusterDepot(moduleName, "*researchJobsDepot");
+      PState researchJobs = ipc.clusterPState(moduleName, "$$researchJobs");
+      PState jobResults = ipc.clusterPState(moduleName, "$$jobResults");
+
+      // Identical inputs under different job IDs produce the same prompt.
+      for(int i = 0; i < 3; i++) {
+        SubmitJob submission = new SubmitJob("rerun-" + i, "What is re-entry?");
+        submission.queries.add("re-entry in Laws of Form");
+        submission.queries.add("imaginary Boolean values");
+        researchJobsDepot.append(submission);
+        awaitState(researchJobs, "rerun-" + i, JobState.COMPLETE);
+      }
+      assertEquals(1, stub.completionCount());
+      String first = ((Artifact) jobResults.selectOne(Path.key("rerun-0", ResearchJobs.SYNTHESIS_KEY))).content;
+      assertTrue(first.startsWith("stub completion"));
+      for(int i = 1; i < 3; i++) {
+        assertEquals(first, ((Artifact) jobResults.selectOne(Path.key("rerun-" + i, ResearchJobs.SYNTHESIS_KEY))).content);
+      }
+
+      SubmitJob different = new SubmitJob("other", "What is a mark?");
+      researchJobsDepot.append(different);
+      awaitState(researchJobs, "other", JobState.COMPLETE);
+      assertEquals(2, stub.completionCount());
+    }
+  }
+
+  @Test
+  public void largeArtifactsAreChunkedAndShared() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      HttpClientConfig config = HttpClientConfig.forEndpoint(stub.searchUrl(), "test-key");
+      ResearchJobModule module = new ResearchJobModule(new AsyncHttpClientTaskGlobal(config), 4);
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot researchJobsDepot = ipc.clusterDepot(moduleName, "*researchJobsDepot");
+      PState researchJobs = ipc.clusterPState(moduleName, "$$researchJobs");
+      PState jobResults = ipc.clusterPState(moduleName, "$$jobResults");
+      PState artifactChunks = ipc.clusterPState(moduleName, "$$artifactChunks");
+
+      StringBuilder sb = new StringBuilder();
+      for(int i = 0; sb.length() < 2 * ArtifactStore.CHUNK_BYTES + 1000; i++) {
+        sb.append("line ").append(i).append(" of the archived proceedings on re-entry \u2aeb\n");
+      }
+      String page = sb.toString();
+      stub.pages.put("/proceedings", page);
+
+      for(int i = 0; i < 2; i++) {
+        SubmitJob submission = new SubmitJob("big-" + i, "What was said about re-entry?");
+        submission.urls.add(stub.baseUrl() + "/proceedings");
+        researchJobsDepot.append(submission);
+        awaitState(researchJobs, "big-" + i, JobState.COMPLETE);
+      }
+
+      String step = ResearchJobs.FETCH_PREFIX + stub.baseUrl() + "/proceedings";
+      Artifact first = jobResults.selectOne(Path.key("big-0", step));
+      Artifact second = jobResults.selectOne(Path.key("big-1", step));
+      assertNull(first.content);
+      assertNotNull(first.manifest);
+      assertEquals(first.manifest.contentHash, second.manifest.contentHash);
+      assertTrue(page.startsWith(first.preview));
+      assertTrue(first.manifest.chunkCount > 1);
+      assertEquals(page, ArtifactStore.readFully(artifactChunks, first));
+
+      // Both jobs' artifacts point at the one copy of the chunks.
+      assertEquals((int) first.manifest.chunkCount,
+                   (int) artifactChunks.selectOne(Path.key(first.manifest.contentHash).view(Ops.SIZE)));
+      // The synthesis quotes from the preview and is small enough to stay inline.
+      Artifact synthesis = jobResults.selectOne(Path.key("big-0", ResearchJobs.SYNTHESIS_KEY));
+      assertNull(synthesis.manifest);
+      assertTrue(synthesis.content.contains("line 0 of the archived proceedings"));
+    }
+  }
+}
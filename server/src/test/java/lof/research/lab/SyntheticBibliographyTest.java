@@ -0,0 +1,81 @@
+package lof.research.lab;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lof.research.lab.data.Record;
+import lof.research.lab.parsers.ZoteroXmlParser;
+
+public class SyntheticBibliographyTest {
+  @Test
+  public void seedDeterminesOutput() {
+    SyntheticBibliographyConfig config = new SyntheticBibliographyConfig();
+    List<Record> a = new SyntheticBibliography(config).next(1000);
+    List<Record> b = new SyntheticBibliography(config).next(1000);
+    config.seed = 7;
+    List<Record> c = new SyntheticBibliography(config).next(1000);
+    for(int i = 0; i < a.size(); i++) {
+      assertEquals(a.get(i).toString(), b.get(i).toString());
+    }
+    assertNotEquals(a.get(0).canonicalId, c.get(0).canonicalId);
+  }
+
+  @Test
+  public void zoteroXmlParsesBackToTheSameRecords() throws Exception {
+    SyntheticBibliographyConfig config = new SyntheticBibliographyConfig();
+    File file = File.createTempFile("synthetic-bib", ".xml");
+    file.deleteOnExit();
+    new SyntheticBibliography(config).writeZoteroXml(file, 2000);
+
+    List<Record> parsed = ZoteroXmlParser.parseXmlFile(file.getPath(), Integer.MAX_VALUE);
+    List<Record> generated = new SyntheticBibliography(config).next(2000);
+    assertEquals(generated.size(), parsed.size());
+    for(int i = 0; i < generated.size(); i++) {
+      Record g = generated.get(i);
+      Record p = parsed.get(i);
+      assertEquals(g.canonicalId, p.canonicalId);
+      assertEquals(g.authors, p.authors);
+      assertEquals(g.title, p.title);
+      assertEquals(g.year, p.year);
+      assertEquals(g.doi, p.doi);
+      assertEquals(g.url, p.url);
+    }
+  }
+
+  @Test
+  public void duplicatesAndCollisionsFollowTheirRates() {
+    SyntheticBibliographyConfig config = new SyntheticBibliographyConfig();
+    config.duplicateRate = 0;
+    config.idCollisionRate = 0;
+    int n = 5000;
+    assertTrue(distinctIds(new SyntheticBibliography(config).next(n)) > n * 0.99);
+
+    config.duplicateRate = 0.1;
+    config.idCollisionRate = 0.1;
+    List<Record> records = new SyntheticBibliography(config).next(n);
+    int distinct = distinctIds(records);
+    assertTrue("distinct: " + distinct, distinct > n * 0.75 && distinct < n * 0.85);
+
+    // Collisions share an ID but not a title.
+    Map<String, String> titles = new HashMap<>();
+    int collisions = 0;
+    for(Record r: records) {
+      String title = titles.putIfAbsent(r.canonicalId, r.title);
+      if(title != null && !title.equals(r.title)) collisions++;
+    }
+    assertTrue("collisions: " + collisions, collisions > n * 0.05);
+  }
+
+  private static int distinctIds(List<Record> records) {
+    Set<String> ids = new HashSet<>();
+    for(Record r: records) ids.add(r.canonicalId);
+    return ids.size();
+  }
+}
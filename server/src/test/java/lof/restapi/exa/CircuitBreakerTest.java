@@ -0,0 +1,101 @@
+package lof.restapi.exa;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import lof.restapi.exa.CircuitBreaker.State;
+
+public class CircuitBreakerTest {
+  private long _now = 1000;
+
+  private CircuitBreaker breaker() {
+    return new CircuitBreaker(3, 500, () -> _now);
+  }
+
+  @Test
+  public void opensAfterConsecutiveFailures() {
+    CircuitBreaker breaker = breaker();
+    breaker.recordFailure();
+    breaker.recordFailure();
+    breaker.recordSuccess();
+    breaker.recordFailure();
+    breaker.recordFailure();
+    assertEquals(State.CLOSED, breaker.getState());
+    assertTrue(breaker.tryAcquire());
+
+    breaker.recordFailure();
+    assertEquals(State.OPEN, breaker.getState());
+    assertFalse(breaker.tryAcquire());
+    assertFalse(breaker.isAvailable());
+    assertEquals(500, breaker.millisUntilAvailable());
+    _now += 200;
+    assertEquals(300, breaker.millisUntilAvailable());
+    assertFalse(breaker.tryAcquire());
+  }
+
+  @Test
+  public void halfOpenProbeClosesCircuit() {
+    CircuitBreaker breaker = breaker();
+    for(int i = 0; i < 3; i++) breaker.recordFailure();
+    _now += 500;
+    assertTrue(breaker.isAvailable());
+    assertEquals(0, breaker.millisUntilAvailable());
+
+    assertTrue(breaker.tryAcquire());
+    assertEquals(State.HALF_OPEN, breaker.getState());
+    // Only one probe at a time.
+    assertFalse(breaker.tryAcquire());
+    assertFalse(breaker.isAvailable());
+    assertEquals(50, breaker.millisUntilAvailable());
+
+    breaker.recordSuccess();
+    assertEquals(State.CLOSED, breaker.getState());
+    assertTrue(breaker.tryAcquire());
+    assertTrue(breaker.tryAcquire());
+    assertEquals(0, breaker.millisUntilAvailable());
+  }
+
+  @Test
+  public void releasedProbeLeavesStateAlone() {
+    CircuitBreaker breaker = breaker();
+    for(int i = 0; i < 3; i++) breaker.recordFailure();
+    _now += 500;
+    assertTrue(breaker.tryAcquire());
+    assertFalse(breaker.tryAcquire());
+
+    // The circuit stays half-open and the next probe can go.
+    breaker.releaseProbe();
+    assertEquals(State.HALF_OPEN, breaker.getState());
+    assertEquals(0, breaker.millisUntilAvailable());
+    assertTrue(breaker.tryAcquire());
+    breaker.recordFailure();
+    assertEquals(State.OPEN, breaker.getState());
+
+    // Closed, it doesn't reset the failure count.
+    breaker = breaker();
+    breaker.recordFailure();
+    breaker.recordFailure();
+    assertTrue(breaker.tryAcquire());
+    breaker.releaseProbe();
+    breaker.recordFailure();
+    assertEquals(State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void failedProbeReopensCircuit() {
+    CircuitBreaker breaker = breaker();
+    for(int i = 0; i < 3; i++) breaker.recordFailure();
+    _now += 600;
+    assertTrue(breaker.tryAcquire());
+
+    // A single failure is enough in the half-open state.
+    breaker.recordFailure();
+    assertEquals(State.OPEN, breaker.getState());
+    assertEquals(500, breaker.millisUntilAvailable());
+    assertFalse(breaker.tryAcquire());
+
+    _now += 500;
+    assertTrue(breaker.tryAcquire());
+    assertEquals(State.HALF_OPEN, breaker.getState());
+  }
+}
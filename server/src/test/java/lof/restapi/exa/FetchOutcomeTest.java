@@ -0,0 +1,76 @@
+package lof.restapi.exa;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+import org.asynchttpclient.Response;
+
+public class FetchOutcomeTest {
+  // Only the status code and body are read by classify.
+  private static Response response(int status, String body) {
+    return (Response) Proxy.newProxyInstance(
+      Response.class.getClassLoader(),
+      new Class<?>[] {Response.class},
+      (proxy, method, args) -> {
+        if(method.getName().equals("getStatusCode")) return status;
+        if(method.getName().equals("getResponseBody")) return body;
+        throw new UnsupportedOperationException(method.getName());
+      });
+  }
+
+  @Test
+  public void successCarriesBody() {
+    FetchOutcome outcome = FetchOutcome.classify("api", 2, response(200, "{}"), null);
+    assertTrue(outcome.success);
+    assertFalse(outcome.retryable);
+    assertEquals("{}", outcome.body);
+    assertEquals(Integer.valueOf(200), outcome.statusCode);
+    assertEquals(2, outcome.attempts);
+  }
+
+  @Test
+  public void throttlingAndServerErrorsAreRetryable() {
+    for(int status : new int[] {429, 500, 503}) {
+      FetchOutcome outcome = FetchOutcome.classify("api", 1, response(status, "error"), null);
+      assertFalse(outcome.success);
+      assertTrue(String.valueOf(status), outcome.retryable);
+      assertEquals("HTTP " + status, outcome.reason);
+      assertNull(outcome.body);
+    }
+  }
+
+  @Test
+  public void clientErrorsAreTerminal() {
+    for(int status : new int[] {400, 401, 404}) {
+      FetchOutcome outcome = FetchOutcome.classify("api", 1, response(status, "error"), null);
+      assertFalse(outcome.success);
+      assertFalse(String.valueOf(status), outcome.retryable);
+    }
+  }
+
+  @Test
+  public void connectionErrorsAndTimeoutsAreRetryable() {
+    assertTrue(FetchOutcome.classify("api", 1, null, new ConnectException("refused")).retryable);
+    assertTrue(FetchOutcome.classify("api", 1, null, new TimeoutException()).retryable);
+    // Errors from composed futures arrive wrapped.
+    FetchOutcome wrapped = FetchOutcome.classify("api", 1, null, new CompletionException(new IOException("reset")));
+    assertTrue(wrapped.retryable);
+    assertTrue(wrapped.reason.contains("reset"));
+    assertFalse(FetchOutcome.classify("api", 1, null, new IllegalArgumentException("bad")).retryable);
+  }
+
+  @Test
+  public void circuitOpenCountsOnlySentRequests() {
+    FetchOutcome outcome = FetchOutcome.circuitOpen("api", 0);
+    assertFalse(outcome.success);
+    assertTrue(outcome.retryable);
+    assertEquals(0, outcome.attempts);
+    assertEquals("circuit open", outcome.reason);
+  }
+}
@@ -0,0 +1,78 @@
+package lof.restapi.exa;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import lof.restapi.exa.data.LineHunk;
+
+public class PageVersionsTest {
+  private static String page(int lines, Random random, int edits) {
+    StringBuilder sb = new StringBuilder();
+    for(int i = 0; i < lines; i++) {
+      if(i > 0) sb.append('\n');
+      sb.append("line ").append(i);
+      if(edits > 0 && random.nextInt(lines) < edits) sb.append(" edited ").append(random.nextInt());
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void diffRoundTrips() {
+    Random random = new Random(7);
+    for(int round = 0; round < 50; round++) {
+      String before = page(200, random, 20);
+      String after = page(180 + random.nextInt(40), random, 20);
+      assertEquals(after, PageVersions.apply(before, PageVersions.diff(before, after)));
+    }
+    assertEquals("", PageVersions.apply("a\nb", PageVersions.diff("a\nb", "")));
+    assertEquals("a\n\nb\n", PageVersions.apply("a\nb", PageVersions.diff("a\nb", "a\n\nb\n")));
+  }
+
+  @Test
+  public void smallChangesProduceSmallDeltas() {
+    String before = page(1000, new Random(1), 0);
+    String after = before.replace("line 10\n", "line 10 changed\n").replace("line 900\n", "");
+    List<LineHunk> hunks = PageVersions.diff(before, after);
+    assertEquals(2, hunks.size());
+    assertEquals(10, (int) hunks.get(0).start);
+    assertEquals(1, (int) hunks.get(0).deleted);
+    assertEquals("line 10 changed", hunks.get(0).inserted.get(0));
+    assertEquals(900, (int) hunks.get(1).start);
+    assertEquals(1, (int) hunks.get(1).deleted);
+    assertTrue(hunks.get(1).inserted.isEmpty());
+  }
+
+  // Brute-force LCS length, to check the diff keeps as many lines as possible.
+  private static int lcsLength(String[] a, String[] b) {
+    int[][] lcs = new int[a.length + 1][b.length + 1];
+    for(int i = a.length - 1; i >= 0; i--) {
+      for(int j = b.length - 1; j >= 0; j--) {
+        lcs[i][j] = a[i].equals(b[j]) ? lcs[i + 1][j + 1] + 1 : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+      }
+    }
+    return lcs[0][0];
+  }
+
+  @Test
+  public void diffIsMinimal() {
+    Random random = new Random(3);
+    for(int round = 0; round < 200; round++) {
+      StringBuilder before = new StringBuilder();
+      StringBuilder after = new StringBuilder();
+      // Few distinct lines, so there are many ways to align them.
+      for(int i = 0, n = random.nextInt(30); i < n; i++) before.append(random.nextInt(4)).append('\n');
+      for(int i = 0, n = random.nextInt(30); i < n; i++) after.append(random.nextInt(4)).append('\n');
+      String[] a = before.toString().split("\n", -1);
+      String[] b = after.toString().split("\n", -1);
+
+      List<LineHunk> hunks = PageVersions.diff(before.toString(), after.toString());
+      assertEquals(after.toString(), PageVersions.apply(before.toString(), hunks));
+      int deleted = 0;
+      for(LineHunk hunk : hunks) deleted += hunk.deleted;
+      assertEquals(a.length - lcsLength(a, b), deleted);
+    }
+  }
+}
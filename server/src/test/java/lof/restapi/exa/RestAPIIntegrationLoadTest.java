@@ -0,0 +1,100 @@
+package lof.restapi.exa;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.rpl.rama.*;
+import com.rpl.rama.test.*;
+import lof.restapi.exa.RestAPIIntegrationModule.AsyncHttpClientTaskGlobal;
+import lof.restapi.exa.data.SearchRequest;
+
+/*
+ * Drives *getDepot and *postDepot at a fixed rate against the stub server and reports end-to-end latency percentiles
+ * and throughput. Stream topology appends complete once the topology has processed the record, so the latency of an
+ * async append is the full depot -> HTTP call -> PState write path.
+ *
+ * Defaults are small enough to run with the regular test suite. Tune with system properties, e.g.
+ *   mvn test -Dtest=RestAPIIntegrationLoadTest -Dload.rate=2000 -Dload.seconds=30 -Dload.latencyMillis=20
+ */
+public class RestAPIIntegrationLoadTest {
+  private static final int RATE = Integer.getInteger("load.rate", 200);
+  private static final int SECONDS = Integer.getInteger("load.seconds", 3);
+  private static final int LATENCY_MILLIS = Integer.getInteger("load.latencyMillis", 5);
+  private static final int PAYLOAD_BYTES = Integer.getInteger("load.payloadBytes", 2048);
+  private static final double ERROR_RATE = Double.parseDouble(System.getProperty("load.errorRate", "0.01"));
+  private static final int TASKS = Integer.getInteger("load.tasks", 4);
+  private static final int THREADS = Integer.getInteger("load.threads", 2);
+
+  @Test
+  public void loadTest() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      stub.latencyMillis = LATENCY_MILLIS;
+      stub.latencyJitterMillis = LATENCY_MILLIS;
+      stub.payloadBytes = PAYLOAD_BYTES;
+      stub.errorRate = ERROR_RATE;
+
+      HttpClientConfig config = HttpClientConfig.forEndpoint(stub.searchUrl(), "test-key");
+      config.retryPolicy = new RetryPolicy(3, 10, 100);
+      AsyncHttpClientTaskGlobal httpClient = new AsyncHttpClientTaskGlobal(config);
+      RestAPIIntegrationModule module = new RestAPIIntegrationModule(httpClient);
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(TASKS, THREADS));
+
+      Depot getDepot = ipc.clusterDepot(moduleName, "*getDepot");
+      Depot postDepot = ipc.clusterDepot(moduleName, "*postDepot");
+
+      int total = RATE * SECONDS;
+      long[] latenciesNanos = new long[total];
+      AtomicLong failures = new AtomicLong();
+      List<CompletableFuture<?>> pending = new ArrayList<>(total);
+      long intervalNanos = TimeUnit.SECONDS.toNanos(1) / RATE;
+      long start = System.nanoTime();
+      for(int i = 0; i < total; i++) {
+        // Open-loop pacing: each append is scheduled at a fixed offset from the start, so a slow response doesn't
+        // delay the requests behind it and latency isn't hidden by coordinated omission.
+        long scheduled = start + i * intervalNanos;
+        long wait = scheduled - System.nanoTime();
+        if(wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+
+        final int idx = i;
+        CompletableFuture<?> f = i % 2 == 0
+          ? getDepot.appendAsync(stub.baseUrl() + "/page/" + i)
+          : postDepot.appendAsync(new SearchRequest("load query " + i));
+        pending.add(f.whenComplete((r, e) -> {
+          latenciesNanos[idx] = System.nanoTime() - scheduled;
+          if(e != null) failures.incrementAndGet();
+        }));
+      }
+      CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).exceptionally(e -> null).get(2, TimeUnit.MINUTES);
+      double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+      Arrays.sort(latenciesNanos);
+      System.out.println("=== RestAPIIntegrationModule load test ===");
+      System.out.println(String.format("target rate: %d/s, duration: %ds, tasks/threads: %d/%d, stub latency: %d+%dms, error rate: %.2f",
+                                       RATE, SECONDS, TASKS, THREADS, LATENCY_MILLIS, LATENCY_MILLIS, ERROR_RATE));
+      System.out.println(String.format("appends: %d, failed: %d, throughput: %.1f/s, stub requests: %d, stub errors: %d",
+                                       total, failures.get(), total / elapsedSeconds, stub.requestCount(), stub.errorCount()));
+      System.out.println(String.format("latency ms p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f",
+                                       percentileMillis(latenciesNanos, 0.50),
+                                       percentileMillis(latenciesNanos, 0.90),
+                                       percentileMillis(latenciesNanos, 0.99),
+                                       percentileMillis(latenciesNanos, 0.999),
+                                       latenciesNanos[total - 1] / 1e6));
+
+      assertEquals(0, failures.get());
+    }
+  }
+
+  private static double percentileMillis(long[] sortedNanos, double p) {
+    int idx = (int) Math.ceil(p * sortedNanos.length) - 1;
+    return sortedNanos[Math.max(0, Math.min(idx, sortedNanos.length - 1))] / 1e6;
+  }
+}
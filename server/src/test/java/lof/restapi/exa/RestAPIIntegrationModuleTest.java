@@ -3,17 +3,38 @@ package lof.restapi.exa;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import com.rpl.rama.*;
+import com.rpl.rama.ops.Ops;
 import com.rpl.rama.test.*;
+import lof.restapi.exa.RestAPIIntegrationModule.AsyncHttpClientTaskGlobal;
+import lof.restapi.exa.data.BatchSearchResult;
+import lof.restapi.exa.data.DeadLetter;
+import lof.restapi.exa.data.PageVersion;
+import lof.restapi.exa.data.SearchBatch;
 import lof.restapi.exa.data.SearchRequest;
 
 public class RestAPIIntegrationModuleTest {
+  // The external REST API calls are served by an in-process stub, injected through the HTTP task global, so these
+  // tests run offline and can make real assertions.
+  private static RestAPIIntegrationModule moduleFor(StubHttpServer stub) {
+    HttpClientConfig config = HttpClientConfig.forEndpoint(stub.searchUrl(), "test-key");
+    config.retryPolicy = new RetryPolicy(3, 10, 50);
+    AsyncHttpClientTaskGlobal httpClient = new AsyncHttpClientTaskGlobal(config);
+    return new RestAPIIntegrationModule(httpClient);
+  }
+
   @Test
   public void test() throws Exception {
     // InProcessCluster simulates a full Rama cluster in-process and is an ideal environment for experimentation and
     // unit-testing.
-    try(InProcessCluster ipc = InProcessCluster.create()) {
-      RestAPIIntegrationModule module = new RestAPIIntegrationModule();
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      RestAPIIntegrationModule module = moduleFor(stub);
       // By default a module's name is the same as its class name.
       String moduleName = module.getClass().getName();
       ipc.launchModule(module, new LaunchConfig(4, 2));
@@ -23,51 +44,254 @@ public class RestAPIIntegrationModuleTest {
       Depot getDepot = ipc.clusterDepot(moduleName, "*getDepot");
       PState responses = ipc.clusterPState(moduleName, "$$responses");
 
-      String url = "https://official-joke-api.appspot.com/random_joke";
+      String url = stub.baseUrl() + "/random_joke";
 
-      // This checks the behavior of the module by appending a few URLs and printing the responses recorded in the
-      // PState. To write a real test with actual assertions, it's best to test the behavior of the module with
-      // the external REST API calls mocked out by using some sort of dependency injection.
+      // Stream topology appends return once the topology has processed the record, so the response is
+      // already in the PState.
       getDepot.append(url);
-      System.out.println("Response 1: " + responses.selectOne(Path.key(url)));
-      getDepot.append(url);
-      System.out.println("Response 2: " + responses.selectOne(Path.key(url)));
+      String body = responses.selectOne(Path.key(url));
+      assertNotNull(body);
+      assertTrue(body.contains("/random_joke"));
+      assertEquals(1, stub.requestCount());
     }
   }
 
   @Test
   public void testExaSearchPost() throws Exception {
-    try(InProcessCluster ipc = InProcessCluster.create()) {
-      RestAPIIntegrationModule module = new RestAPIIntegrationModule();
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      RestAPIIntegrationModule module = moduleFor(stub);
       String moduleName = module.getClass().getName();
       ipc.launchModule(module, new LaunchConfig(4, 2));
 
       Depot postDepot = ipc.clusterDepot(moduleName, "*postDepot");
       PState responses = ipc.clusterPState(moduleName, "$$responses");
 
-      String apiKey = System.getenv("EXA_API_KEY");
-      if(apiKey == null || apiKey.isEmpty()) {
-        throw new IllegalStateException("EXA_API_KEY must be set to run Exa integration test");
-      }
-
       String query = "Laws of Form cybernetics overview";
       SearchRequest req = new SearchRequest(query);
       req.type = "fast";
       req.numResults = 2;
-
-      System.out.println("Search request: " + req.query);
       postDepot.append(req);
 
-      String responseBody = null;
-      for(int i = 0; i < 30; i++) {
-        responseBody = (String) responses.selectOne(Path.key(query));
-        if(responseBody != null) break;
-        Thread.sleep(500);
+      String responseBody = responses.selectOne(Path.key(query));
+      assertNotNull("Did not receive search response", responseBody);
+      assertTrue("Response should include results array", responseBody.contains("\"results\""));
+    }
+  }
+
+  @Test
+  public void searchWithoutApiKeyIsDeadLettered() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      HttpClientConfig config = HttpClientConfig.forEndpoint(stub.searchUrl(), null);
+      config.apiKeyEnvVar = "LOF_TEST_UNSET_API_KEY";
+      RestAPIIntegrationModule module = new RestAPIIntegrationModule(new AsyncHttpClientTaskGlobal(config));
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot postDepot = ipc.clusterDepot(moduleName, "*postDepot");
+      Depot batchPostDepot = ipc.clusterDepot(moduleName, "*batchPostDepot");
+      PState deadLetters = ipc.clusterPState(moduleName, "$$deadLetters");
+      PState batchResponses = ipc.clusterPState(moduleName, "$$batchResponses");
+
+      // Both appends return, rather than the records being retried forever.
+      postDepot.append(new SearchRequest("no key"));
+      DeadLetter deadLetter = deadLetters.selectOne(Path.key("no key"));
+      assertNotNull(deadLetter);
+      assertFalse(deadLetter.retryable);
+      assertTrue(deadLetter.reason.contains("LOF_TEST_UNSET_API_KEY"));
+
+      List<SearchRequest> requests = Arrays.asList(new SearchRequest("a"), new SearchRequest("b"));
+      batchPostDepot.append(new SearchBatch("no-key-batch", requests));
+      BatchSearchResult result = batchResponses.selectOne(Path.key("no-key-batch"));
+      assertTrue(result.results.isEmpty());
+      assertEquals(2, result.failures.size());
+      assertEquals(0, stub.requestCount());
+    }
+  }
+
+  @Test
+  public void retriesAndDeadLetters() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      RestAPIIntegrationModule module = moduleFor(stub);
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot getDepot = ipc.clusterDepot(moduleName, "*getDepot");
+      PState responses = ipc.clusterPState(moduleName, "$$responses");
+      PState deadLetters = ipc.clusterPState(moduleName, "$$deadLetters");
+
+      // Retryable failures are retried up to the policy's max attempts and then dead-lettered.
+      stub.errorRate = 1.0;
+      stub.errorStatus = 503;
+      String flaky = stub.baseUrl() + "/flaky";
+      getDepot.append(flaky);
+      DeadLetter dl = deadLetters.selectOne(Path.key(flaky));
+      assertNotNull(dl);
+      assertTrue(dl.retryable);
+      assertEquals(503, (int) dl.statusCode);
+      assertEquals(3, (int) dl.attempts);
+      assertNull(responses.selectOne(Path.key(flaky)));
+
+      // Terminal failures are not retried.
+      stub.errorStatus = 404;
+      String missing = stub.baseUrl() + "/missing";
+      long before = stub.requestCount();
+      getDepot.append(missing);
+      dl = deadLetters.selectOne(Path.key(missing));
+      assertFalse(dl.retryable);
+      assertEquals(1, (int) dl.attempts);
+      assertEquals(before + 1, stub.requestCount());
+
+      // A later success clears the dead letter.
+      stub.errorRate = 0;
+      getDepot.append(missing);
+      assertNull(deadLetters.selectOne(Path.key(missing)));
+      assertNotNull(responses.selectOne(Path.key(missing)));
+    }
+  }
+
+  @Test
+  public void searchLoadBalancesAcrossEndpointPool() throws Exception {
+    try(StubHttpServer healthy = new StubHttpServer(1);
+        StubHttpServer down = new StubHttpServer(2);
+        InProcessCluster ipc = InProcessCluster.create()) {
+      down.errorRate = 1.0;
+      HttpClientConfig config = new HttpClientConfig(Arrays.asList(healthy.searchUrl(), down.searchUrl()), "test-key");
+      config.retryPolicy = new RetryPolicy(3, 10, 50);
+      config.breakerFailureThreshold = 2;
+      RestAPIIntegrationModule module = new RestAPIIntegrationModule(new AsyncHttpClientTaskGlobal(config));
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(2, 2));
+
+      Depot postDepot = ipc.clusterDepot(moduleName, "*postDepot");
+      PState responses = ipc.clusterPState(moduleName, "$$responses");
+
+      // Retries move to the next endpoint in the pool, so every search succeeds even though one endpoint is down.
+      // Once the failing endpoint's circuit opens it is skipped entirely.
+      for(int i = 0; i < 20; i++) {
+        String query = "query " + i;
+        postDepot.append(new SearchRequest(query));
+        assertNotNull(responses.selectOne(Path.key(query)));
       }
+      assertTrue(down.requestCount() > 0);
+      assertTrue(down.requestCount() < 10);
+    }
+  }
+
+  @Test
+  public void searchesWaitOutOpenCircuit() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      stub.errorRate = 1.0;
+      HttpClientConfig config = HttpClientConfig.forEndpoint(stub.searchUrl(), "test-key");
+      config.retryPolicy = new RetryPolicy(3, 10, 50);
+      config.breakerFailureThreshold = 2;
+      config.breakerOpenMillis = 300;
+      RestAPIIntegrationModule module = new RestAPIIntegrationModule(new AsyncHttpClientTaskGlobal(config));
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(1, 1));
+
+      Depot postDepot = ipc.clusterDepot(moduleName, "*postDepot");
+      PState responses = ipc.clusterPState(moduleName, "$$responses");
+      PState deadLetters = ipc.clusterPState(moduleName, "$$deadLetters");
+
+      List<CompletableFuture<?>> appends = new ArrayList<>();
+      for(int i = 0; i < 10; i++) appends.add(postDepot.appendAsync(new SearchRequest("outage " + i)));
+      // The outage outlasts every search's retry attempts, but searches that find the circuit open wait for it
+      // instead of spending attempts, so they all succeed once the endpoint recovers.
+      Thread.sleep(500);
+      stub.errorRate = 0;
+      CompletableFuture.allOf(appends.toArray(new CompletableFuture[0])).join();
+
+      for(int i = 0; i < 10; i++) {
+        assertNotNull(responses.selectOne(Path.key("outage " + i)));
+        assertNull(deadLetters.selectOne(Path.key("outage " + i)));
+      }
+      // Only the probes reach the endpoint while its circuit is open.
+      assertTrue(String.valueOf(stub.errorCount()), stub.errorCount() < 8);
+    }
+  }
+
+  @Test
+  public void batchSearch() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      stub.latencyMillis = 20;
+      RestAPIIntegrationModule module = moduleFor(stub);
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot batchPostDepot = ipc.clusterDepot(moduleName, "*batchPostDepot");
+      PState batchResponses = ipc.clusterPState(moduleName, "$$batchResponses");
 
-      System.out.println("Search response: " + responseBody);
-      // assertNotNull("Did not receive search response from Exa", responseBody);
-      // assertTrue("Response should include results array", responseBody.contains("\"results\""));
+      List<SearchRequest> requests = new ArrayList<>();
+      for(int i = 0; i < 24; i++) {
+        requests.add(new SearchRequest("Laws of Form topic " + i));
+      }
+      SearchBatch batch = new SearchBatch("plan-1", requests);
+      batch.maxConcurrency = 6;
+      batchPostDepot.append(batch);
+
+      BatchSearchResult result = batchResponses.selectOne(Path.key("plan-1"));
+      assertEquals(24, result.results.size());
+      assertTrue(result.failures.isEmpty());
+      assertTrue(result.results.get("Laws of Form topic 7").contains("\"results\""));
+      assertEquals(24, stub.requestCount());
+      // The stub's latency keeps requests overlapping, so the peak shows the fan-out running up to its bound.
+      int peak = stub.peakConcurrentRequests();
+      assertTrue("peak " + peak, peak > 1 && peak <= 6);
+    }
+  }
+
+  @Test
+  public void pageVersions() throws Exception {
+    try(StubHttpServer stub = new StubHttpServer();
+        InProcessCluster ipc = InProcessCluster.create()) {
+      RestAPIIntegrationModule module = moduleFor(stub);
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+
+      Depot getDepot = ipc.clusterDepot(moduleName, "*getDepot");
+      PState pageVersions = ipc.clusterPState(moduleName, "$$pageVersions");
+      QueryTopologyClient<String> pageAsOf = ipc.clusterQuery(moduleName, "pageAsOf");
+
+      String url = stub.baseUrl() + "/paper";
+      StringBuilder sb = new StringBuilder();
+      for(int i = 0; i < 200; i++) {
+        sb.append("paragraph ").append(i).append(" of a long page about Laws of Form\n");
+      }
+      String original = sb.toString();
+      long beforeCrawl = System.currentTimeMillis() - 1;
+
+      // Crawl the page 40 times, changing one line each time, plus one crawl where nothing changed.
+      int crawls = 40;
+      String[] bodies = new String[crawls];
+      long[] crawledBy = new long[crawls];
+      for(int i = 0; i < crawls; i++) {
+        bodies[i] = original.replace("paragraph 17 ", "paragraph 17 revision " + i + " ");
+        stub.pages.put("/paper", bodies[i]);
+        getDepot.append(url);
+        if(i == 5) getDepot.append(url);
+        crawledBy[i] = System.currentTimeMillis();
+        Thread.sleep(2);
+      }
+
+      assertEquals(crawls, (int) pageVersions.selectOne(Path.key(url).view(Ops.SIZE)));
+      assertNull(pageAsOf.invoke(url, beforeCrawl));
+      for(int i = 0; i < crawls; i++) {
+        assertEquals(bodies[i], pageAsOf.invoke(url, crawledBy[i]));
+      }
+
+      // Only every BASE_INTERVAL-th version stores the full body.
+      List<PageVersion> versions = pageVersions.select(Path.key(url).mapVals());
+      int bases = 0;
+      for(PageVersion v: versions) {
+        if(v.isBase()) bases++;
+        else assertEquals(1, v.hunks.size());
+      }
+      assertEquals((crawls + PageVersions.BASE_INTERVAL - 1) / PageVersions.BASE_INTERVAL, bases);
     }
   }
 }
@@ -0,0 +1,67 @@
+package lof.restapi.exa;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import lof.restapi.exa.data.SearchRequest;
+
+public class SearchRequestEncoderTest {
+  @Test
+  public void encodesWithoutMutatingRequest() {
+    SearchRequest req = new SearchRequest("Laws of Form");
+    req.type = "fast";
+    req.numResults = 2;
+    req.includeDomains = Arrays.asList("lof50.com");
+    req.contents.remove("text");
+
+    JsonObject json = JsonParser.parseString(SearchRequestEncoder.encode(req)).getAsJsonObject();
+    assertEquals("Laws of Form", json.get("query").getAsString());
+    assertEquals("fast", json.get("type").getAsString());
+    assertEquals(2, json.get("numResults").getAsInt());
+    assertEquals("lof50.com", json.getAsJsonArray("includeDomains").get(0).getAsString());
+    assertFalse(json.has("category"));
+    assertTrue(json.getAsJsonObject("contents").get("text").getAsBoolean());
+
+    // The default is applied on the wire only.
+    assertFalse(req.contents.containsKey("text"));
+  }
+
+  @Test
+  public void keepsExplicitContentsAndMatchesReflectiveGson() {
+    SearchRequest req = new SearchRequest("cybernetics");
+    req.contents.put("highlights", Boolean.TRUE);
+    req.context = Boolean.TRUE;
+
+    String encoded = SearchRequestEncoder.encode(req);
+    JsonObject json = JsonParser.parseString(encoded).getAsJsonObject();
+    assertFalse(json.getAsJsonObject("contents").get("text").getAsBoolean());
+    assertTrue(json.getAsJsonObject("contents").get("highlights").getAsBoolean());
+
+    JsonObject reflective = new com.google.gson.Gson().toJsonTree(req).getAsJsonObject();
+    assertEquals(reflective, json);
+
+    // Reusing the thread's buffer must not leak the previous request into the next one.
+    String second = SearchRequestEncoder.encode(new SearchRequest("x"));
+    assertEquals("{\"query\":\"x\",\"contents\":{\"text\":false}}", second);
+    Map<String, Object> contents = req.contents;
+    assertEquals(2, contents.size());
+  }
+
+  @Test
+  public void sharedGsonDecodesWhatItEncodes() {
+    SearchRequest req = new SearchRequest("Laws of Form");
+    req.numResults = 3;
+    req.excludeDomains = Arrays.asList("example.com");
+
+    SearchRequest decoded = SearchRequestEncoder.gson().fromJson(SearchRequestEncoder.encode(req), SearchRequest.class);
+    assertEquals("Laws of Form", decoded.query);
+    assertEquals(Integer.valueOf(3), decoded.numResults);
+    assertEquals(Arrays.asList("example.com"), decoded.excludeDomains);
+    assertEquals(Boolean.FALSE, decoded.contents.get("text"));
+  }
+}
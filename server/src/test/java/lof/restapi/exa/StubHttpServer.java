@@ -0,0 +1,180 @@
+package lof.restapi.exa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * In-process stand-in for the external APIs used by RestAPIIntegrationModule. Every GET returns a page body, every
+ * POST to /v1/chat/completions returns an OpenAI-shaped completion derived from the request, and every other POST
+ * returns an Exa-shaped search result list. Latency, error rate and payload size are configurable so tests
+ * can exercise retries and dead-lettering and load tests can measure the module without the network in the way.
+ */
+public class StubHttpServer implements AutoCloseable {
+  public volatile long latencyMillis = 0;
+  public volatile long latencyJitterMillis = 0;
+  public volatile double errorRate = 0;
+  public volatile int errorStatus = 503;
+  public volatile int payloadBytes = 256;
+  public volatile int resultsPerSearch = 2;
+  // GET bodies by path. Paths not in here get a generated JSON body.
+  public final Map<String, String> pages = new ConcurrentHashMap<>();
+  // Latency by path, used instead of latencyMillis and latencyJitterMillis for the paths in here.
+  public final Map<String, Long> pathLatencyMillis = new ConcurrentHashMap<>();
+
+  private final HttpServer _server;
+  private final ExecutorService _executor;
+  private final Random _random;
+  private final AtomicLong _requests = new AtomicLong();
+  private final AtomicLong _errors = new AtomicLong();
+  private final AtomicLong _completions = new AtomicLong();
+  private final Map<String, AtomicLong> _requestsByPath = new ConcurrentHashMap<>();
+  private final AtomicInteger _inFlight = new AtomicInteger();
+  private final AtomicInteger _peakInFlight = new AtomicInteger();
+
+  public StubHttpServer() throws IOException {
+    this(42);
+  }
+
+  public StubHttpServer(long seed) throws IOException {
+    _random = new Random(seed);
+    _server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    // Latency is simulated by sleeping, so handlers need their own threads.
+    _executor = Executors.newCachedThreadPool();
+    _server.setExecutor(_executor);
+    _server.createContext("/", this::handle);
+    _server.start();
+  }
+
+  public String baseUrl() {
+    return "http://127.0.0.1:" + _server.getAddress().getPort();
+  }
+
+  public String searchUrl() {
+    return baseUrl() + "/search";
+  }
+
+  public String completionsUrl() {
+    return baseUrl() + "/v1/chat/completions";
+  }
+
+  public long requestCount() {
+    return _requests.get();
+  }
+
+  public long requestCount(String path) {
+    AtomicLong ret = _requestsByPath.get(path);
+    return ret == null ? 0 : ret.get();
+  }
+
+  public long errorCount() {
+    return _errors.get();
+  }
+
+  public long completionCount() {
+    return _completions.get();
+  }
+
+  // Most requests ever being handled at once.
+  public int peakConcurrentRequests() {
+    return _peakInFlight.get();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    _requests.incrementAndGet();
+    _requestsByPath.computeIfAbsent(exchange.getRequestURI().getPath(), k -> new AtomicLong()).incrementAndGet();
+    _peakInFlight.accumulateAndGet(_inFlight.incrementAndGet(), Math::max);
+    try {
+      serve(exchange);
+    } finally {
+      _inFlight.decrementAndGet();
+    }
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+    try(InputStream in = exchange.getRequestBody()) {
+      byte[] buf = new byte[4096];
+      int n;
+      while((n = in.read(buf)) >= 0) requestBody.write(buf, 0, n);
+    }
+    long delay;
+    boolean fail;
+    Long pathLatency = pathLatencyMillis.get(exchange.getRequestURI().getPath());
+    synchronized(_random) {
+      delay = latencyMillis + (latencyJitterMillis > 0 ? (long) (_random.nextDouble() * latencyJitterMillis) : 0);
+      if(pathLatency != null) delay = pathLatency;
+      fail = _random.nextDouble() < errorRate;
+    }
+    if(delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if(fail) {
+      _errors.incrementAndGet();
+      respond(exchange, errorStatus, "{\"error\":\"injected failure\"}");
+    } else if(exchange.getRequestURI().getPath().endsWith("/chat/completions")) {
+      _completions.incrementAndGet();
+      String content = "stub completion of a " + requestBody.size() + " byte request, hash "
+                       + Integer.toHexString(requestBody.toString("UTF-8").hashCode());
+      respond(exchange, 200, "{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"" + content + "\"}}]}");
+    } else if("POST".equals(exchange.getRequestMethod())) {
+      respond(exchange, 200, searchBody());
+    } else if(pages.containsKey(exchange.getRequestURI().getPath())) {
+      respond(exchange, 200, pages.get(exchange.getRequestURI().getPath()));
+    } else {
+      respond(exchange, 200, "{\"path\":\"" + exchange.getRequestURI().getPath() + "\",\"text\":\"" + filler(payloadBytes) + "\"}");
+    }
+  }
+
+  private String searchBody() {
+    StringBuilder sb = new StringBuilder("{\"results\":[");
+    int textBytes = Math.max(0, payloadBytes / Math.max(1, resultsPerSearch));
+    for(int i = 0; i < resultsPerSearch; i++) {
+      if(i > 0) sb.append(',');
+      sb.append("{\"title\":\"Result ").append(i)
+        .append("\",\"url\":\"https://example.org/").append(i)
+        .append("\",\"text\":\"").append(filler(textBytes)).append("\"}");
+    }
+    return sb.append("]}").toString();
+  }
+
+  private static String filler(int n) {
+    StringBuilder sb = new StringBuilder(n);
+    for(int i = 0; i < n; i++) {
+      sb.append((char) ('a' + (i % 26)));
+    }
+    return sb.toString();
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("content-type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try(OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  @Override
+  public void close() {
+    _server.stop(0);
+    _executor.shutdownNow();
+  }
+}
@@ -0,0 +1,45 @@
+package lof.text;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.rpl.rama.test.MockOutputCollector;
+import com.rpl.rama.test.MockOutputCollector.CapturedEmit;
+
+public class WordTokenizerTest {
+  @Test
+  public void separatorsNeverProduceEmptyWords() {
+    assertEquals(Arrays.asList("hello", "world", "again"), WordTokenizer.tokens("  hello \t world\n\nagain  "));
+    assertEquals(Collections.emptyList(), WordTokenizer.tokens(" \t -- ... "));
+    assertEquals(Collections.emptyList(), WordTokenizer.tokens(""));
+    assertEquals(Collections.emptyList(), WordTokenizer.tokens(null));
+    // No-break and ideographic spaces separate words like any other whitespace.
+    assertEquals(Arrays.asList("laws", "of", "form"), WordTokenizer.tokens("laws\u00a0of\u3000form"));
+  }
+
+  @Test
+  public void punctuationSeparatesAndCaseIsFolded() {
+    assertEquals(Arrays.asList("laws", "of", "form", "the", "calculus", "of", "re", "entry", "1969"),
+                 WordTokenizer.tokens("\u201cLaws of Form\u201d: The Calculus of Re-entry (1969)."));
+    assertEquals(Arrays.asList("don't", "stop", "don", "quoted"), WordTokenizer.tokens("DON'T stop, don' 'quoted'"));
+    assertEquals(Arrays.asList("don\u2019t"), WordTokenizer.tokens("Don\u2019t"));
+    // Letters and combining marks in any script are part of words.
+    assertEquals(Arrays.asList("\u00e9tude", "cafe\u0301", "\u043c\u0438\u0440"),
+                 WordTokenizer.tokens("\u00c9TUDE Cafe\u0301 \u041c\u0438\u0440!"));
+  }
+
+  @Test
+  public void emitsOneWordPerEmit() {
+    MockOutputCollector collector = new MockOutputCollector();
+    new WordTokenizer().invoke("Say hello,  hello!", collector);
+    List<CapturedEmit> emits = collector.getEmits();
+    assertEquals(3, emits.size());
+    assertEquals(Arrays.asList("say"), emits.get(0).getValues());
+    assertEquals(Arrays.asList("hello"), emits.get(1).getValues());
+    assertEquals(Arrays.asList("hello"), emits.get(2).getValues());
+  }
+}
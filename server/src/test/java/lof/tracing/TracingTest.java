@@ -0,0 +1,101 @@
+package lof.tracing;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lof.tracing.data.Trace;
+import lof.tracing.data.TraceContext;
+import lof.tracing.data.TraceSpan;
+
+public class TracingTest {
+  private static List<String> spanNames(Trace trace) {
+    List<String> ret = new ArrayList<>();
+    for(TraceSpan s : trace.spans) ret.add(s.name);
+    return ret;
+  }
+
+  @Test
+  public void unsampledFlowsCarryNull() {
+    TracerTaskGlobal tracer = new TracerTaskGlobal(new TracingConfig(0.0));
+    tracer.prepareForTask(0, null);
+    TraceContext trace = tracer.sample("query");
+    assertNull(trace);
+    assertNull(tracer.arrive(tracer.depart(trace), "next"));
+    tracer.finish(trace);
+    assertTrue(tracer.drain().isEmpty());
+
+    // A requested trace ID is traced whatever the sample rate.
+    assertEquals(7L, (long) tracer.start("query", 7L).traceId);
+  }
+
+  @Test
+  public void disabledTracerIgnoresTraceIds() {
+    assertEquals(0.0, new TracingConfig().sampleRate, 0.0);
+    TracerTaskGlobal tracer = TracerTaskGlobal.disabled();
+    tracer.prepareForTask(0, null);
+    assertNull(tracer.start("query", 7L));
+    assertNull(tracer.sample("query"));
+    assertTrue(tracer.drain().isEmpty());
+  }
+
+  @Test
+  public void pathsOfAFanOutMergeIntoOneTrace() {
+    TracerTaskGlobal source = new TracerTaskGlobal(new TracingConfig(1.0));
+    source.prepareForTask(0, null);
+    TracerTaskGlobal target = new TracerTaskGlobal(new TracingConfig(1.0));
+    target.prepareForTask(1, null);
+
+    TraceContext root = source.start("request", 99L);
+    TraceContext departed = source.depart(root);
+    // Two branches leave from the same span.
+    target.finish(target.arrive(departed, "a"));
+    target.finish(target.arrive(departed, "b"));
+    List<Trace> paths = target.drain();
+    assertEquals(2, paths.size());
+    assertEquals(Arrays.asList("request", "a"), spanNames(paths.get(0)));
+
+    Trace merged = Tracing.merge(paths);
+    assertEquals(99L, (long) merged.traceId);
+    assertEquals(3, merged.spans.size());
+    assertEquals("request", merged.spans.get(0).name);
+    assertEquals(0, (int) merged.spans.get(0).taskId);
+    for(TraceSpan s : merged.spans.subList(1, 3)) {
+      assertEquals(1, (int) s.taskId);
+      assertEquals(merged.spans.get(0).spanId, s.parentSpanId);
+      assertTrue(s.hopMicros() >= 0);
+      assertTrue(s.durationMicros() >= 0);
+    }
+    assertTrue(merged.render().contains("request"));
+  }
+
+  @Test
+  public void pendingTracesAreBounded() {
+    TracingConfig config = new TracingConfig(1.0);
+    config.pendingCapacity = 2;
+    TracerTaskGlobal tracer = new TracerTaskGlobal(config);
+    tracer.prepareForTask(0, null);
+    for(long i = 0; i < 5; i++) tracer.finish(tracer.start("t", i));
+    assertEquals(2, tracer.drain().size());
+    assertEquals(3, tracer.dropped());
+  }
+
+  @Test
+  public void ringEntriesWrapAround() {
+    List<Trace> traces = new ArrayList<>();
+    TracerTaskGlobal tracer = new TracerTaskGlobal(new TracingConfig(1.0));
+    tracer.prepareForTask(0, null);
+    for(long i = 0; i < 5; i++) tracer.finish(tracer.start("t", i));
+    traces.addAll(tracer.drain());
+
+    List<List<Object>> entries = Tracing.ringEntries(6L, traces, 4);
+    // Only the last four can survive, in slots 3, 0, 1, 2 of a ring of four.
+    assertEquals(4, entries.size());
+    assertEquals(3L, entries.get(0).get(0));
+    assertEquals(1L, (long) ((Trace) entries.get(0).get(1)).traceId);
+    assertEquals(2L, entries.get(3).get(0));
+  }
+}
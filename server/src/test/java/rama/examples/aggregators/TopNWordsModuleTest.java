@@ -0,0 +1,132 @@
+package rama.examples.aggregators;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import com.rpl.rama.*;
+import com.rpl.rama.test.*;
+import lof.research.lab.SyntheticBibliography.Zipf;
+
+public class TopNWordsModuleTest {
+  private static Map<String, Long> zipfCounts(int distinct, int occurrences, long seed) {
+    Zipf zipf = new Zipf(distinct, 1.0);
+    Random random = new Random(seed);
+    Map<String, Long> ret = new HashMap<>();
+    for(int i = 0; i < occurrences; i++) ret.merge("word" + zipf.sample(random), 1L, Long::sum);
+    return ret;
+  }
+
+  @Test
+  public void sketchEstimatesWithinErrorBound() {
+    Map<String, Long> counts = zipfCounts(5000, 100000, 1);
+    CountMinSketch sketch = new CountMinSketch(CountMinSketch.widthFor(0.001), CountMinSketch.depthFor(0.01));
+    for(Map.Entry<String, Long> e : counts.entrySet()) sketch.add(e.getKey(), e.getValue());
+
+    assertEquals(100000L, (long) sketch.total);
+    assertEquals(100L, sketch.errorBound());
+    int outOfBounds = 0;
+    for(Map.Entry<String, Long> e : counts.entrySet()) {
+      long estimate = sketch.estimate(e.getKey());
+      assertTrue(e.getKey(), estimate >= e.getValue());
+      if(estimate > e.getValue() + sketch.errorBound()) outOfBounds++;
+    }
+    assertTrue("out of bounds: " + outOfBounds, outOfBounds <= counts.size() * sketch.failureProbability());
+  }
+
+  @Test
+  public void mergedSketchEqualsSketchOfBoth() {
+    CountMinSketch a = new CountMinSketch(64, 3);
+    CountMinSketch b = new CountMinSketch(64, 3);
+    CountMinSketch both = new CountMinSketch(64, 3);
+    for(Map.Entry<String, Long> e : zipfCounts(500, 2000, 2).entrySet()) {
+      a.add(e.getKey(), e.getValue());
+      both.add(e.getKey(), e.getValue());
+    }
+    for(Map.Entry<String, Long> e : zipfCounts(500, 2000, 3).entrySet()) {
+      b.add(e.getKey(), e.getValue());
+      both.add(e.getKey(), e.getValue());
+    }
+    CountMinSketch merged = a.merge(b);
+    assertEquals(both.total, merged.total);
+    assertArrayEquals(both.counters, merged.counters);
+  }
+
+  @Test
+  public void candidateUpdatesBoundedByK() {
+    CountMinSketch sketch = null;
+    Map<String, Long> candidates = null;
+    for(int batch = 0; batch < 20; batch++) {
+      Map<String, Long> batchCounts = zipfCounts(2000, 5000, batch);
+      List<Object> update = TopNWordsModule.updateCandidates(sketch, candidates, batchCounts, 8, 1024, 4);
+      sketch = (CountMinSketch) update.get(0);
+      candidates = (Map<String, Long>) update.get(1);
+      List<List<Object>> changed = (List<List<Object>>) update.get(2);
+
+      assertEquals(8, candidates.size());
+      assertTrue(changed.size() <= 8);
+      for(List<Object> tuple : changed) {
+        assertEquals(candidates.get(tuple.get(0)), tuple.get(1));
+        assertEquals(sketch.errorBound(), tuple.get(2));
+      }
+    }
+    // The most frequent Zipf words are always among the candidates.
+    for(int rank = 0; rank < 3; rank++) assertTrue(candidates.containsKey("word" + rank));
+  }
+
+  @Test
+  public void sketchModeFindsHeavyHitters() throws Exception {
+    try(InProcessCluster ipc = InProcessCluster.create()) {
+      TopNWordsModule module = new TopNWordsModule(new TopNSketchConfig(8));
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+      Depot depot = ipc.clusterDepot(moduleName, "*depot");
+      PState topWords = ipc.clusterPState(moduleName, "$$topWords");
+      PState maxCandidateUpdates = ipc.clusterPState(moduleName, "$$maxCandidateUpdates");
+
+      // Paused so the first microbatch has every task's share of the words.
+      ipc.pauseMicrobatchTopology(moduleName, "topWords");
+      Zipf zipf = new Zipf(2000, 1.0);
+      Random random = new Random(11);
+      Map<String, Long> expected = new HashMap<>();
+      List<CompletableFuture<?>> appends = new ArrayList<>();
+      int words = 5000;
+      for(int i = 0; i < words; i++) {
+        String word = "word" + zipf.sample(random);
+        expected.merge(word, 1L, Long::sum);
+        appends.add(depot.appendAsync(word));
+      }
+      CompletableFuture.allOf(appends.toArray(new CompletableFuture[0])).join();
+      ipc.resumeMicrobatchTopology(moduleName, "topWords");
+      ipc.waitForMicrobatchProcessedCount(moduleName, "topWords", words);
+
+      // Each of the 4 tasks sends at most its 8 candidates per microbatch. More than 8 means the candidates were kept
+      // on more than one task.
+      long updates = maxCandidateUpdates.selectOne(Path.stay());
+      assertTrue("candidate updates " + updates, updates > 8 && updates <= 8 * 4);
+
+      List<List<Object>> top = topWords.selectOne(Path.stay());
+      assertEquals(3, top.size());
+      Set<String> found = new HashSet<>();
+      for(List<Object> tuple : top) {
+        String word = (String) tuple.get(0);
+        long estimate = (Long) tuple.get(1);
+        long errorBound = (Long) tuple.get(2);
+        found.add(word);
+        assertTrue(word, estimate >= expected.get(word));
+        assertTrue(word, estimate <= expected.get(word) + errorBound);
+      }
+      Set<String> heaviest = new HashSet<>();
+      for(int rank = 0; rank < 3; rank++) heaviest.add("word" + rank);
+      assertEquals(heaviest, found);
+    }
+  }
+}
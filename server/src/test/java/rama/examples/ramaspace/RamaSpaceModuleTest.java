@@ -2,6 +2,9 @@ package rama.examples.ramaspace;
 
 import com.rpl.rama.test.*;
 import org.junit.Test;
+import lof.tracing.TracingConfig;
+import lof.tracing.data.Trace;
+import lof.tracing.data.TraceSpan;
 import rama.examples.ramaspace.data.*;
 
 import java.util.*;
@@ -47,4 +50,54 @@ public class RamaSpaceModuleTest {
       assertEquals(4, page2.size());
     }
   }
+
+  private static List<String> spanNames(Trace trace) {
+    List<String> ret = new ArrayList<>();
+    for(TraceSpan s : trace.spans) ret.add(s.name);
+    return ret;
+  }
+
+  @Test
+  public void tracingTest() throws Exception {
+    TracingConfig tracing = new TracingConfig(1.0);
+    tracing.flushMillis = 50;
+    try(InProcessCluster ipc = InProcessCluster.create()) {
+      RamaSpaceModule ramaspace = new RamaSpaceModule(tracing);
+      String moduleName = ramaspace.getClass().getName();
+      ipc.launchModule(ramaspace, new LaunchConfig(4, 4));
+      RamaSpaceClient client = new RamaSpaceClient(ipc);
+
+      assertTrue(client.appendUserRegistration("alice", "alice@gmail.com", "Alice Alice", 1));
+      assertTrue(client.appendUserRegistration("bob", "bob@gmail.com", "Bobby", 2));
+      client.appendPost("bob", "alice", "hello");
+      client.appendPost("alice", "alice", "hi");
+      ipc.waitForMicrobatchProcessedCount(moduleName, "posts", 2);
+      assertEquals(2, client.resolvePosts("alice", 0).size());
+
+      client.appendTracedFriendRequest("alice", "bob", 42L);
+      Trace trace = null;
+      for(int i = 0; i < 200 && trace == null; i++) {
+        trace = client.getTrace(42L);
+        if(trace == null) Thread.sleep(50);
+      }
+      assertNotNull(trace);
+      assertEquals(Arrays.asList("friendRequests", "incomingFriendRequests"), spanNames(trace));
+      assertTrue(trace.spans.get(1).hopMicros() >= 0);
+
+      // Every query is sampled at this rate. The resolvePosts trace has one path per post, merged back together.
+      Trace resolve = null;
+      for(int i = 0; i < 200 && resolve == null; i++) {
+        for(Trace t : client.getRecentTraces(10)) {
+          if(t.name.equals("resolvePosts")) resolve = t;
+        }
+        if(resolve == null) Thread.sleep(50);
+      }
+      assertNotNull(resolve);
+      List<String> names = spanNames(resolve);
+      assertEquals("resolvePosts", names.get(0));
+      assertEquals(1, Collections.frequency(names, "posts"));
+      assertEquals(2, Collections.frequency(names, "profiles"));
+      assertEquals(2, Collections.frequency(names, "origin"));
+    }
+  }
 }
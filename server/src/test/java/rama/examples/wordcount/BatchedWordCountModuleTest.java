@@ -0,0 +1,88 @@
+package rama.examples.wordcount;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import com.rpl.rama.*;
+import com.rpl.rama.test.*;
+import lof.metrics.MetricsConfig;
+import lof.metrics.data.MetricsSnapshot;
+import lof.research.lab.SyntheticBibliography.Zipf;
+import lof.text.WordTokenizer;
+
+public class BatchedWordCountModuleTest {
+  private static long counter(List<MetricsSnapshot> snapshots, String name) {
+    long ret = 0;
+    for(MetricsSnapshot s : snapshots) ret += s.counters.getOrDefault(name, 0L);
+    return ret;
+  }
+
+  @Test
+  public void countsMatchAndShuffleIsPreAggregated() throws Exception {
+    MetricsConfig metrics = new MetricsConfig("batchedWordCount");
+    metrics.snapshotMillis = 100;
+    try(InProcessCluster ipc = InProcessCluster.create()) {
+      BatchedWordCountModule module = new BatchedWordCountModule(metrics);
+      String moduleName = module.getClass().getName();
+      ipc.launchModule(module, new LaunchConfig(4, 2));
+      Depot sentenceDepot = ipc.clusterDepot(moduleName, "*sentenceDepot");
+      PState wordCounts = ipc.clusterPState(moduleName, "$$wordCounts");
+      QueryTopologyClient<List<MetricsSnapshot>> metricsQuery = ipc.clusterQuery(moduleName, "metrics");
+
+      // Skewed like natural language: a few words make up most of the occurrences. Paragraphs are long enough that
+      // even a microbatch of one paragraph per task has far fewer distinct words than occurrences.
+      Zipf zipf = new Zipf(50, 1.0);
+      Random random = new Random(7);
+      Map<String, Long> expected = new HashMap<>();
+      List<CompletableFuture<?>> appends = new ArrayList<>();
+      long words = 0;
+      int paragraphs = 300;
+      for(int i = 0; i < paragraphs; i++) {
+        StringBuilder sb = new StringBuilder();
+        for(int w = 0; w < 200; w++) {
+          if(w > 0) sb.append(w % 8 == 0 ? ". " : " ");
+          sb.append("Word").append(zipf.sample(random));
+        }
+        for(String word : WordTokenizer.tokens(sb)) {
+          expected.merge(word, 1L, Long::sum);
+          words++;
+        }
+        appends.add(sentenceDepot.appendAsync(sb.toString()));
+      }
+      CompletableFuture.allOf(appends.toArray(new CompletableFuture[0])).join();
+      ipc.waitForMicrobatchProcessedCount(moduleName, "batchedWordCount", paragraphs);
+
+      for(Map.Entry<String, Long> e : expected.entrySet()) {
+        assertEquals(e.getKey(), e.getValue(), wordCounts.selectOne(Path.key(e.getKey())));
+      }
+
+      List<MetricsSnapshot> snapshots = metricsQuery.invoke();
+      for(int i = 0; i < 100 && counter(snapshots, "batchedWordCount.words") < words; i++) {
+        Thread.sleep(50);
+        snapshots = metricsQuery.invoke();
+      }
+      assertEquals(words, counter(snapshots, "batchedWordCount.words"));
+      long shuffled = counter(snapshots, "batchedWordCount.shuffled");
+      // At most one partial count per distinct word, per task, per microbatch.
+      assertTrue("shuffled " + shuffled + " of " + words, shuffled * 4 < words);
+      // Partial counts are sent from the tasks that counted the words, not gathered onto one task first.
+      Set<Integer> counting = new HashSet<>();
+      Set<Integer> shuffling = new HashSet<>();
+      for(MetricsSnapshot s : snapshots) {
+        if(s.counters.getOrDefault("batchedWordCount.words", 0L) > 0) counting.add(s.taskId);
+        if(s.counters.getOrDefault("batchedWordCount.shuffled", 0L) > 0) shuffling.add(s.taskId);
+      }
+      assertTrue("counting tasks " + counting, counting.size() > 1);
+      assertEquals(counting, shuffling);
+    }
+  }
+}